@@ -0,0 +1,34 @@
+package edu.udo.bytifier.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**<p>
+ * Runs the {@link PayloadBenchmark} with the GC profiler so that the throughput, the
+ * percentiles of the time per operation and the allocation rate are reported for every
+ * payload. The results are also written as JSON so that the runs of two releases can be
+ * compared.
+ * <p>
+ * Usage: {@code BenchmarkSuite [include regex] [result file]}. The defaults are
+ * {@code PayloadBenchmark} and {@code bytifier-benchmarks.json}.
+ */
+public class BenchmarkSuite {
+	
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : PayloadBenchmark.class.getSimpleName();
+		String resultFile = args.length > 1 ? args[1] : "bytifier-benchmarks.json";
+		
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+		new Runner(options).run();
+	}
+	
+}
@@ -0,0 +1,443 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.ValueType;
+import edu.udo.bytifier.protocols.ArrayListProtocol;
+
+/**<p>
+ * Compares the Bytifier with java.io serialization via {@link ObjectOutputStream} and
+ * with a hand written encoding via {@link DataOutputStream}. The same object graphs of
+ * copies of the models used in the tests and examples are round tripped through all three
+ * formats. The copies implement {@link Serializable} so that the models themselves do not
+ * need to.
+ * <p>
+ * Run with {@code -prof gc} to report the allocation per operation. The number of bytes
+ * produced per format does not change between runs and is printed by {@link #main(String[])}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonBenchmark {
+	
+	public static enum Model {
+		/** The {@link Person} defined with a PerClassBuilder. */
+		PERSON {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.setStringEncodingCharset(StandardCharsets.UTF_8)
+						.defineEnum(EmployeeType.class)
+						.defineForClass(Person.class)
+							.addConstructorString(Person::getName)
+							.addConstructorInt(Person::getAge)
+							.addFieldDouble(Person::getSalary, Person::setSalary)
+							.addFieldReferencedObject(Person::getType, Person::setType)
+							.endDefinition()
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				Person[] arr = new Person[size];
+				EmployeeType[] types = EmployeeType.values();
+				for (int i = 0; i < size; i++) {
+					arr[i] = new Person("Person "+i, 20 + i % 40);
+					arr[i].setSalary(1000 + i * 0.5);
+					arr[i].setType(types[i % types.length]);
+				}
+				return arr;
+			}
+			@Override
+			void write(DataOutputStream out, Object graph) throws IOException {
+				Person[] arr = (Person[]) graph;
+				out.writeInt(arr.length);
+				for (Person person : arr) {
+					out.writeUTF(person.getName());
+					out.writeInt(person.getAge());
+					out.writeDouble(person.getSalary());
+					out.writeByte(person.getType() == null ? -1 : person.getType().ordinal());
+				}
+			}
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				Person[] arr = new Person[in.readInt()];
+				EmployeeType[] types = EmployeeType.values();
+				for (int i = 0; i < arr.length; i++) {
+					arr[i] = new Person(in.readUTF(), in.readInt());
+					arr[i].setSalary(in.readDouble());
+					int type = in.readByte();
+					arr[i].setType(type < 0 ? null : types[type]);
+				}
+				return arr;
+			}
+		},
+		/** A single chain of LinkedClass objects defined via reflection. */
+		LINKED {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.defineViaReflection(LinkedClass.class)
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				LinkedClass head = null;
+				for (int i = 0; i < size; i++) {
+					LinkedClass node = new LinkedClass();
+					node.next = head;
+					head = node;
+				}
+				return head;
+			}
+			@Override
+			void write(DataOutputStream out, Object graph) throws IOException {
+				int length = 0;
+				for (LinkedClass node = (LinkedClass) graph; node != null; node = node.next) {
+					length++;
+				}
+				out.writeInt(length);
+			}
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				return createGraph(in.readInt());
+			}
+		},
+		/** ClassWithPrimitiveAttributes objects defined via reflection. */
+		PRIMITIVES {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.defineViaReflection(ClassWithPrimitiveAttributes.class)
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				ClassWithPrimitiveAttributes[] arr = new ClassWithPrimitiveAttributes[size];
+				for (int i = 0; i < size; i++) {
+					arr[i] = new ClassWithPrimitiveAttributes();
+					arr[i].i = i;
+					arr[i].l = i * 1_000_003L;
+				}
+				return arr;
+			}
+			@Override
+			void write(DataOutputStream out, Object graph) throws IOException {
+				ClassWithPrimitiveAttributes[] arr = (ClassWithPrimitiveAttributes[]) graph;
+				out.writeInt(arr.length);
+				for (ClassWithPrimitiveAttributes obj : arr) {
+					out.writeInt(obj.i);
+					out.writeFloat(obj.f);
+					out.writeLong(obj.l);
+					out.writeDouble(obj.d);
+				}
+			}
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				ClassWithPrimitiveAttributes[] arr = new ClassWithPrimitiveAttributes[in.readInt()];
+				for (int i = 0; i < arr.length; i++) {
+					arr[i] = new ClassWithPrimitiveAttributes();
+					arr[i].i = in.readInt();
+					arr[i].f = in.readFloat();
+					arr[i].l = in.readLong();
+					arr[i].d = in.readDouble();
+				}
+				return arr;
+			}
+		},
+		/** A list of contacts with the protocol of the SaveToFileExample. */
+		CONTACT {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.setStringEncodingCharset(StandardCharsets.UTF_8)
+						.defineForClass(ArrayList.class, new ArrayListProtocol())
+						.defineForClass(Contact.class)
+							.addFieldString(Contact::getNicName, Contact::setNicName)
+							.addFieldString(Contact::getFirstName, Contact::setFirstName)
+							.addFieldString(Contact::getLastName, Contact::setLastName)
+							.addFieldString(Contact::getAdress, Contact::setAdress)
+							.addFieldString(Contact::getHomeNumber, Contact::setHomeNumber)
+							.addFieldString(Contact::getMobileNumber, Contact::setMobileNumber)
+							.endDefinition()
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				List<Contact> list = new ArrayList<>();
+				for (int i = 0; i < size; i++) {
+					Contact con = new Contact();
+					con.nicName = i % 3 == 0 ? "" : "Nic"+i;
+					con.firstName = "First"+i;
+					con.lastName = "Last"+i;
+					con.adress = i+" Main Street";
+					con.homeNumber = "0231 "+(100000 + i);
+					con.mobileNumber = "0171 "+(200000 + i);
+					list.add(con);
+				}
+				return list;
+			}
+			@Override
+			void write(DataOutputStream out, Object graph) throws IOException {
+				@SuppressWarnings("unchecked")
+				List<Contact> list = (List<Contact>) graph;
+				out.writeInt(list.size());
+				for (Contact con : list) {
+					out.writeUTF(con.nicName);
+					out.writeUTF(con.firstName);
+					out.writeUTF(con.lastName);
+					out.writeUTF(con.adress);
+					out.writeUTF(con.homeNumber);
+					out.writeUTF(con.mobileNumber);
+				}
+			}
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				int size = in.readInt();
+				List<Contact> list = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					Contact con = new Contact();
+					con.nicName = in.readUTF();
+					con.firstName = in.readUTF();
+					con.lastName = in.readUTF();
+					con.adress = in.readUTF();
+					con.homeNumber = in.readUTF();
+					con.mobileNumber = in.readUTF();
+					list.add(con);
+				}
+				return list;
+			}
+		},
+		;
+		
+		abstract Bytifier createBytifier();
+		
+		abstract Object createGraph(int size);
+		
+		abstract void write(DataOutputStream out, Object graph) throws IOException;
+		
+		abstract Object read(DataInputStream in) throws IOException;
+	}
+	
+	/**<p>
+	 * A copy of the Person of the PersonTest.
+	 */
+	@SuppressWarnings("serial")
+	public static class Person implements Serializable {
+		@ValueType String name;
+		int age;
+		double salary;
+		EmployeeType type;
+		public Person() {
+			this(null, 0);
+		}
+		public Person(String name, int age) {
+			this.name = name;
+			this.age = age;
+		}
+		public String getName() {
+			return name;
+		}
+		public int getAge() {
+			return age;
+		}
+		public void setSalary(double salary) {
+			this.salary = salary;
+		}
+		public double getSalary() {
+			return salary;
+		}
+		public void setType(EmployeeType type) {
+			this.type = type;
+		}
+		public EmployeeType getType() {
+			return type;
+		}
+	}
+	
+	public static enum EmployeeType {
+		PERMANENT,
+		TEMPORARY,
+		;
+	}
+	
+	/**<p>
+	 * A copy of the LinkedClass of the tests.
+	 */
+	@SuppressWarnings("serial")
+	public static class LinkedClass implements Serializable {
+		public LinkedClass next;
+	}
+	
+	/**<p>
+	 * A copy of the ClassWithPrimitiveAttributes of the tests.
+	 */
+	@SuppressWarnings("serial")
+	public static class ClassWithPrimitiveAttributes implements Serializable {
+		public int i = 42;
+		public float f = 4.2f;
+		public long l = 21L;
+		public double d = 2.1;
+	}
+	
+	/**<p>
+	 * A copy of the contact of the SaveToFileExample which is not accessible from this package.
+	 */
+	@SuppressWarnings("serial")
+	public static class Contact implements Serializable {
+		String nicName = "";
+		String firstName = "", lastName = "", adress = "";
+		String homeNumber = "", mobileNumber = "";
+		public String getNicName() {
+			return nicName;
+		}
+		public void setNicName(String nicName) {
+			this.nicName = nicName;
+		}
+		public String getFirstName() {
+			return firstName;
+		}
+		public void setFirstName(String firstName) {
+			this.firstName = firstName;
+		}
+		public String getLastName() {
+			return lastName;
+		}
+		public void setLastName(String lastName) {
+			this.lastName = lastName;
+		}
+		public String getAdress() {
+			return adress;
+		}
+		public void setAdress(String adress) {
+			this.adress = adress;
+		}
+		public String getHomeNumber() {
+			return homeNumber;
+		}
+		public void setHomeNumber(String homeNumber) {
+			this.homeNumber = homeNumber;
+		}
+		public String getMobileNumber() {
+			return mobileNumber;
+		}
+		public void setMobileNumber(String mobileNumber) {
+			this.mobileNumber = mobileNumber;
+		}
+	}
+	
+	@Param
+	Model model;
+	
+	@Param({"100"})
+	int size;
+	
+	Object graph;
+	Bytifier bytifier;
+	EncodeData encodeData;
+	DecodeData decodeData;
+	ByteArrayOutputStream buffer;
+	byte[] bytifierBytes;
+	byte[] javaBytes;
+	byte[] dataBytes;
+	
+	@Setup
+	public void setup() throws IOException {
+		graph = model.createGraph(size);
+		bytifier = model.createBytifier();
+		encodeData = bytifier.createEncodeData();
+		decodeData = bytifier.createDecodeData();
+		buffer = new ByteArrayOutputStream(1024 * 4);
+		bytifierBytes = bytifierEncode();
+		javaBytes = javaEncode();
+		dataBytes = dataEncode();
+	}
+	
+	@Benchmark
+	public byte[] bytifierEncode() {
+		return bytifier.encode(encodeData, graph);
+	}
+	
+	@Benchmark
+	public Object bytifierDecode() {
+		return bytifier.decode(decodeData, bytifierBytes);
+	}
+	
+	@Benchmark
+	public byte[] javaEncode() throws IOException {
+		buffer.reset();
+		try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+			out.writeObject(graph);
+		}
+		return buffer.toByteArray();
+	}
+	
+	@Benchmark
+	public Object javaDecode() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaBytes))) {
+			return in.readObject();
+		}
+	}
+	
+	@Benchmark
+	public byte[] dataEncode() throws IOException {
+		buffer.reset();
+		try (DataOutputStream out = new DataOutputStream(buffer)) {
+			model.write(out, graph);
+		}
+		return buffer.toByteArray();
+	}
+	
+	@Benchmark
+	public Object dataDecode() throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(dataBytes))) {
+			return model.read(in);
+		}
+	}
+	
+	/**<p>
+	 * Prints the number of bytes each format produces for every model.
+	 */
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		System.out.println("model\tsize\tbytifier\tjava\tdata");
+		for (Model model : Model.values()) {
+			ComparisonBenchmark bench = new ComparisonBenchmark();
+			bench.model = model;
+			bench.size = size;
+			bench.setup();
+			System.out.println(model+"\t"+size+"\t"+bench.bytifierBytes.length
+					+"\t"+bench.javaBytes.length+"\t"+bench.dataBytes.length);
+		}
+	}
+	
+}
@@ -0,0 +1,74 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.benchmarks.PayloadBenchmark.Payload;
+
+/**<p>
+ * Measures the throughput of a single {@link Bytifier} which is shared by all benchmark
+ * threads. Every thread encodes and decodes its own object graph with the per-thread
+ * sessions of {@link Bytifier#encode(Object)} and {@link Bytifier#decode(byte[])}.
+ * <p>
+ * Run with an increasing number of threads, for example {@code -t 1}, {@code -t 4} and
+ * {@code -t max}. The throughput should grow linearly with the number of cores since
+ * the threads do not share any mutable state.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBenchmark {
+	
+	@State(Scope.Benchmark)
+	public static class Shared {
+		@Param({"FLAT", "REFLECTION", "UNKNOWN"})
+		Payload payload;
+		
+		Bytifier bytifier;
+		
+		@Setup
+		public void setup() {
+			bytifier = payload.createBytifier();
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class PerThread {
+		@Param({"100"})
+		int size;
+		
+		Object graph;
+		byte[] encoded;
+		
+		@Setup
+		public void setup(Shared shared) {
+			graph = shared.payload.createGraph(size);
+			encoded = shared.bytifier.encode(graph);
+		}
+	}
+	
+	@Benchmark
+	public byte[] encode(Shared shared, PerThread state) {
+		return shared.bytifier.encode(state.graph);
+	}
+	
+	@Benchmark
+	public Object decode(Shared shared, PerThread state) {
+		return shared.bytifier.decode(state.encoded);
+	}
+	
+}
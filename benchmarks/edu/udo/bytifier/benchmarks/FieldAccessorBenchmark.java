@@ -0,0 +1,169 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.ClassProtocol;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.protocols.FieldAccessor;
+import edu.udo.bytifier.protocols.ReflectionClassProtocol;
+import edu.udo.bytifier.protocols.ReflectionProtocolGenerator;
+
+/**<p>
+ * Compares the ways a protocol defined via reflection can access the fields of an object:
+ * <ul>
+ * <li>{@code REFLECTIVE}: reflective {@link FieldAccessor FieldAccessors} based on
+ * {@link Field#getInt(Object)}, {@link Field#setInt(Object, int)} and so on</li>
+ * <li>{@code ACCESSOR}: the FieldAccessors of a {@link ReflectionClassProtocol} which are
+ * generated per field by the {@link edu.udo.bytifier.protocols.FieldAccessorGenerator} and
+ * access the field directly. Each field is still accessed through a virtual call of its
+ * accessor.</li>
+ * <li>{@code GENERATED}: a protocol generated as a hidden class by the
+ * {@link ReflectionProtocolGenerator} which accesses the fields directly</li>
+ * </ul>
+ * All fields of {@link #objectCount} objects are written to an {@link EncodeData} and read
+ * back from a {@link DecodeData} without any chunks around them; the encoded bytes are the
+ * same in all three cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessorBenchmark {
+	
+	public static enum Access {
+		REFLECTIVE,
+		ACCESSOR,
+		GENERATED,
+		;
+		ClassProtocol createProtocol(Class<?> cls) {
+			ReflectionClassProtocol protocol = ReflectionClassProtocol.allFieldsOf(cls);
+			switch (this) {
+			case ACCESSOR:
+				return protocol;
+			case GENERATED:
+				return ReflectionProtocolGenerator.generate(protocol);
+			default:
+				return new ReflectiveProtocol(cls);
+			}
+		}
+	}
+	
+	/**<p>
+	 * Accesses the fields in the same order as a ReflectionClassProtocol, but only through
+	 * {@link FieldAccessor#reflective(Field) reflective} accessors.
+	 */
+	static class ReflectiveProtocol implements ClassProtocol {
+		final FieldAccessor[] accessors;
+		ReflectiveProtocol(Class<?> cls) {
+			Field[] fields = cls.getDeclaredFields();
+			Arrays.sort(fields, Comparator.comparing(Field::getName));
+			accessors = new FieldAccessor[fields.length];
+			for (int i = 0; i < accessors.length; i++) {
+				accessors[i] = FieldAccessor.reflective(fields[i]);
+			}
+		}
+		@Override
+		public void write(Bytifier bytifier, EncodeData data, Object input) {
+			for (FieldAccessor accessor : accessors) {
+				accessor.write(bytifier, data, input);
+			}
+		}
+		@Override
+		public Object create(Bytifier bytifier, DecodeData data) {
+			return new Sample();
+		}
+		@Override
+		public void read(Bytifier bytifier, DecodeData data, Object object) {
+			for (FieldAccessor accessor : accessors) {
+				accessor.read(bytifier, data, object);
+			}
+		}
+	}
+	
+	public static class Sample {
+		int id;
+		long time;
+		double value;
+		float weight;
+		boolean valid;
+		short count;
+		char code;
+		String name;
+	}
+	
+	@Param({"1000"})
+	int objectCount;
+	
+	@Param({"REFLECTIVE", "ACCESSOR", "GENERATED"})
+	Access access;
+	
+	Sample[] samples;
+	Sample[] targets;
+	ClassProtocol protocol;
+	Bytifier bytifier;
+	EncodeData encodeData;
+	byte[] encoded;
+	
+	@Setup
+	public void setup() {
+		samples = new Sample[objectCount];
+		targets = new Sample[objectCount];
+		for (int i = 0; i < objectCount; i++) {
+			Sample s = new Sample();
+			s.id = i;
+			s.time = i * 1000L;
+			s.value = i * 0.5;
+			s.weight = i * 0.25f;
+			s.valid = i % 2 == 0;
+			s.count = (short) i;
+			s.code = (char) ('a' + i % 26);
+			s.name = "sample";
+			samples[i] = s;
+			targets[i] = new Sample();
+		}
+		protocol = access.createProtocol(Sample.class);
+		bytifier = new ProtocolBuilder().build();
+		encodeData = new EncodeData(bytifier, 1024 * 64, true, true);
+		encode();
+		encoded = encodeData.getBytes();
+	}
+	
+	@Benchmark
+	public int encode() {
+		encodeData.reset();
+		for (Sample sample : samples) {
+			protocol.write(bytifier, encodeData, sample);
+		}
+		return encodeData.getByteCount();
+	}
+	
+	@Benchmark
+	public Object decode() {
+		DecodeData data = new DecodeData(encoded);
+		for (Sample target : targets) {
+			protocol.read(bytifier, data, target);
+		}
+		return targets;
+	}
+	
+}
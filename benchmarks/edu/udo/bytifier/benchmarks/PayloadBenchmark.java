@@ -0,0 +1,290 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.UnknownObjectTypeReaction;
+
+/**<p>
+ * Measures {@link Bytifier#encode(EncodeData, Object)} and
+ * {@link Bytifier#decode(DecodeData, byte[])} for a number of typical payloads. Each
+ * {@link Payload} defines its own protocol and object graph. The EncodeData and
+ * DecodeData are reused between invocations like a long running service would do.
+ * <p>
+ * Both the throughput and the distribution of the time per operation are reported.
+ * Run with {@code -prof gc} or via {@link BenchmarkSuite} to also report the allocation
+ * rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+	
+	public static enum Payload {
+		/** Small objects with primitive fields defined with a PerClassBuilder. */
+		FLAT {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.defineForClass(Flat.class)
+							.addFieldInt(Flat::getId, Flat::setId)
+							.addFieldLong(Flat::getTime, Flat::setTime)
+							.addFieldDouble(Flat::getValue, Flat::setValue)
+							.addFieldBool(Flat::isValid, Flat::setValid)
+							.endDefinition()
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				Flat[] arr = new Flat[size];
+				for (int i = 0; i < size; i++) {
+					arr[i] = new Flat(i);
+				}
+				return arr;
+			}
+		},
+		/** Objects with primitive, string and reference fields defined via reflection. */
+		REFLECTION {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.defineViaReflection(Node.class)
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				Node[] arr = new Node[size];
+				for (int i = 0; i < size; i++) {
+					arr[i] = new Node(i, null);
+				}
+				return arr;
+			}
+		},
+		/** The same objects as {@link #REFLECTION} which are not part of the protocol. */
+		UNKNOWN {
+			@Override
+			Bytifier createBytifier() {
+				Bytifier bytifier = new ProtocolBuilder().build();
+				bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.WRITE);
+				return bytifier;
+			}
+			@Override
+			Object createGraph(int size) {
+				// an array of an unknown component type would itself be written as an unknown object
+				Object[] arr = new Object[size];
+				System.arraycopy(REFLECTION.createGraph(size), 0, arr, 0, size);
+				return arr;
+			}
+		},
+		/** A few large arrays of primitive values. */
+		PRIMITIVE_ARRAYS {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder().build();
+			}
+			@Override
+			Object createGraph(int size) {
+				int length = size * 100;
+				int[] ints = new int[length];
+				long[] longs = new long[length];
+				double[] doubles = new double[length];
+				byte[] bytes = new byte[length];
+				for (int i = 0; i < length; i++) {
+					ints[i] = i * 31;
+					longs[i] = i * 1_000_003L;
+					doubles[i] = i * 0.25;
+					bytes[i] = (byte) i;
+				}
+				return new Object[] {ints, longs, doubles, bytes};
+			}
+		},
+		/** Short chains of nodes; every node is referenced by its successor. */
+		DEEP_GRAPH {
+			@Override
+			Bytifier createBytifier() {
+				return REFLECTION.createBytifier();
+			}
+			@Override
+			Object createGraph(int size) {
+				int depth = 100;
+				Node[] chains = new Node[Math.max(1, size / depth)];
+				for (int c = 0; c < chains.length; c++) {
+					Node node = null;
+					for (int i = 0; i < depth; i++) {
+						node = new Node(c * depth + i, node);
+					}
+					chains[c] = node;
+				}
+				return chains;
+			}
+		},
+		/** A ring of nodes in which every node also points back to the ring's first node. */
+		CYCLIC_GRAPH {
+			@Override
+			Bytifier createBytifier() {
+				return REFLECTION.createBytifier();
+			}
+			@Override
+			Object createGraph(int size) {
+				Node first = new Node(0, null);
+				Node[] arr = new Node[size];
+				arr[0] = first;
+				for (int i = 1; i < size; i++) {
+					arr[i] = new Node(i, first);
+				}
+				first.next = arr[size - 1];
+				return arr;
+			}
+		},
+		/** Many short strings of different lengths, some of them not ASCII. */
+		STRINGS {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder().build();
+			}
+			@Override
+			Object createGraph(int size) {
+				String[] arr = new String[size];
+				for (int i = 0; i < size; i++) {
+					arr[i] = (i % 10 == 0 ? "M\u00FCller-" : "name-")+i;
+				}
+				return arr;
+			}
+		},
+		/** A list of maps from strings to strings. */
+		COLLECTIONS {
+			@Override
+			Bytifier createBytifier() {
+				return new ProtocolBuilder()
+						.defineCollection(ArrayList.class, ArrayList::new)
+						.defineMap(HashMap.class, HashMap::new)
+						.build();
+			}
+			@Override
+			Object createGraph(int size) {
+				List<Map<String, String>> list = new ArrayList<>();
+				for (int i = 0; i < size / 10; i++) {
+					Map<String, String> map = new HashMap<>();
+					for (int j = 0; j < 10; j++) {
+						map.put("key"+j, "value"+i+"/"+j);
+					}
+					list.add(map);
+				}
+				return list;
+			}
+		},
+		;
+		
+		abstract Bytifier createBytifier();
+		
+		abstract Object createGraph(int size);
+	}
+	
+	public static class Flat {
+		int id;
+		long time;
+		double value;
+		boolean valid;
+		public Flat() {
+		}
+		public Flat(int i) {
+			id = i;
+			time = i * 1000L;
+			value = i * 0.5;
+			valid = i % 2 == 0;
+		}
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public long getTime() {
+			return time;
+		}
+		public void setTime(long time) {
+			this.time = time;
+		}
+		public double getValue() {
+			return value;
+		}
+		public void setValue(double value) {
+			this.value = value;
+		}
+		public boolean isValid() {
+			return valid;
+		}
+		public void setValid(boolean valid) {
+			this.valid = valid;
+		}
+	}
+	
+	public static class Node {
+		int id;
+		double weight;
+		String label;
+		Node next;
+		public Node() {
+		}
+		public Node(int i, Node next) {
+			id = i;
+			weight = i * 0.5;
+			label = "node";
+			this.next = next;
+		}
+	}
+	
+	@Param
+	Payload payload;
+	
+	@Param({"1000"})
+	int size;
+	
+	Bytifier bytifier;
+	Object graph;
+	EncodeData encodeData;
+	byte[] encoded;
+	DecodeData decodeData;
+	
+	@Setup
+	public void setup() {
+		bytifier = payload.createBytifier();
+		graph = payload.createGraph(size);
+		encodeData = bytifier.createEncodeData();
+		encoded = bytifier.encode(graph);
+		decodeData = bytifier.createDecodeData();
+	}
+	
+	@Benchmark
+	public int encode() {
+		return bytifier.encode(encodeData, graph).length;
+	}
+	
+	@Benchmark
+	public Object decode() {
+		return bytifier.decode(decodeData, encoded);
+	}
+	
+}
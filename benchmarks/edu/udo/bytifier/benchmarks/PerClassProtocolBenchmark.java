@@ -0,0 +1,125 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+
+/**<p>
+ * Compares the encoding and decoding of classes defined with a
+ * {@link edu.udo.bytifier.PerClassBuilder} when the protocol loops over its actions
+ * ({@code generated=false}) and when it is generated by the
+ * {@link edu.udo.bytifier.PerClassProtocolGenerator} ({@code generated=true}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerClassProtocolBenchmark {
+	
+	public static class Sample {
+		int id;
+		long time;
+		double value;
+		boolean valid;
+		String name;
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public long getTime() {
+			return time;
+		}
+		public void setTime(long time) {
+			this.time = time;
+		}
+		public double getValue() {
+			return value;
+		}
+		public void setValue(double value) {
+			this.value = value;
+		}
+		public boolean isValid() {
+			return valid;
+		}
+		public void setValid(boolean valid) {
+			this.valid = valid;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+	
+	@Param({"1000"})
+	int objectCount;
+	
+	@Param({"false", "true"})
+	boolean generated;
+	
+	Sample[] samples;
+	Bytifier bytifier;
+	EncodeData encodeData;
+	byte[] encoded;
+	DecodeData decodeData;
+	
+	@Setup
+	public void setup() {
+		samples = new Sample[objectCount];
+		for (int i = 0; i < objectCount; i++) {
+			Sample s = new Sample();
+			s.id = i;
+			s.time = i * 1000L;
+			s.value = i * 0.5;
+			s.valid = i % 2 == 0;
+			s.name = "sample";
+			samples[i] = s;
+		}
+		bytifier = new ProtocolBuilder()
+				.defineForClass(Sample.class)
+					.setGenerateProtocol(generated)
+					.addFieldInt(Sample::getId, Sample::setId)
+					.addFieldLong(Sample::getTime, Sample::setTime)
+					.addFieldDouble(Sample::getValue, Sample::setValue)
+					.addFieldBool(Sample::isValid, Sample::setValid)
+					.addFieldString(Sample::getName, Sample::setName)
+					.endDefinition()
+				.build();
+		encodeData = new EncodeData(bytifier, 1024 * 64, true, true);
+		encoded = bytifier.encode(samples);
+		decodeData = new DecodeData();
+	}
+	
+	@Benchmark
+	public int encode() {
+		encodeData.reset();
+		bytifier.writeChunk(encodeData, samples, false);
+		return encodeData.getByteCount();
+	}
+	
+	@Benchmark
+	public Object decode() {
+		return bytifier.decode(decodeData, encoded);
+	}
+	
+}
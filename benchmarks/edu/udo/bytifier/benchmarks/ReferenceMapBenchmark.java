@@ -0,0 +1,104 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.IdentityIntMap;
+import edu.udo.bytifier.ProtocolBuilder;
+
+/**<p>
+ * Compares the {@link IdentityIntMap} used by {@link EncodeData} for reference tracking
+ * with a boxing {@link IdentityHashMap}. Each benchmark maps {@link #objectCount}
+ * distinct objects to their reference index and looks every object up once afterwards,
+ * which is what happens when an object graph is encoded.
+ * <p>
+ * Run with the GC profiler to compare allocation rates:
+ * <pre>
+ * java -cp &lt;classpath&gt; org.openjdk.jmh.Main ReferenceMapBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceMapBenchmark {
+	
+	@Param({"1000", "100000"})
+	int objectCount;
+	
+	Object[] objects;
+	Object[] graph;
+	IdentityIntMap intMap;
+	Map<Object, Integer> boxingMap;
+	Bytifier bytifier;
+	EncodeData encodeData;
+	
+	@Setup
+	public void setup() {
+		objects = new Object[objectCount];
+		graph = new Object[objectCount];
+		for (int i = 0; i < objectCount; i++) {
+			objects[i] = new Object();
+			graph[i] = new int[] {i};
+		}
+		intMap = new IdentityIntMap();
+		boxingMap = new IdentityHashMap<>();
+		bytifier = new ProtocolBuilder().build();
+		encodeData = new EncodeData(bytifier, 1024, true, true);
+	}
+	
+	@Benchmark
+	public void identityIntMap(Blackhole bh) {
+		IdentityIntMap map = intMap;
+		map.clear();
+		Object[] objects = this.objects;
+		for (int i = 0; i < objects.length; i++) {
+			if (map.get(objects[i], -1) < 0) {
+				map.put(objects[i], i);
+			}
+		}
+		for (int i = 0; i < objects.length; i++) {
+			bh.consume(map.get(objects[i], -1));
+		}
+	}
+	
+	@Benchmark
+	public void identityHashMap(Blackhole bh) {
+		Map<Object, Integer> map = boxingMap;
+		map.clear();
+		Object[] objects = this.objects;
+		for (int i = 0; i < objects.length; i++) {
+			if (map.get(objects[i]) == null) {
+				map.put(objects[i], i);
+			}
+		}
+		for (int i = 0; i < objects.length; i++) {
+			bh.consume(map.get(objects[i]).intValue());
+		}
+	}
+	
+	@Benchmark
+	public int encodeGraph() {
+		bytifier.encode(encodeData, graph);
+		return encodeData.getByteCount();
+	}
+	
+}
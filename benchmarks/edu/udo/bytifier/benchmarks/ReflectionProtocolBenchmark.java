@@ -0,0 +1,91 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+
+/**<p>
+ * Compares the encoding and decoding of classes defined via reflection when the
+ * protocols use reflective field access ({@code generated=false}) and when they are
+ * generated by the {@link edu.udo.bytifier.protocols.ReflectionProtocolGenerator}
+ * ({@code generated=true}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionProtocolBenchmark {
+	
+	public static class Sample {
+		int id;
+		long time;
+		double value;
+		boolean valid;
+		String name;
+		Sample parent;
+	}
+	
+	@Param({"1000"})
+	int objectCount;
+	
+	@Param({"false", "true"})
+	boolean generated;
+	
+	Sample[] samples;
+	Bytifier bytifier;
+	EncodeData encodeData;
+	byte[] encoded;
+	DecodeData decodeData;
+	
+	@Setup
+	public void setup() {
+		samples = new Sample[objectCount];
+		for (int i = 0; i < objectCount; i++) {
+			Sample s = new Sample();
+			s.id = i;
+			s.time = i * 1000L;
+			s.value = i * 0.5;
+			s.valid = i % 2 == 0;
+			s.name = "sample";
+			s.parent = i > 0 ? samples[i - 1] : null;
+			samples[i] = s;
+		}
+		bytifier = new ProtocolBuilder()
+				.setGenerateReflectionProtocols(generated)
+				.defineViaReflection(Sample.class)
+				.build();
+		encodeData = new EncodeData(bytifier, 1024 * 64, true, true);
+		encoded = bytifier.encode(samples);
+		decodeData = new DecodeData();
+	}
+	
+	@Benchmark
+	public int encode() {
+		encodeData.reset();
+		bytifier.writeChunk(encodeData, samples, false);
+		return encodeData.getByteCount();
+	}
+	
+	@Benchmark
+	public Object decode() {
+		return bytifier.decode(decodeData, encoded);
+	}
+	
+}
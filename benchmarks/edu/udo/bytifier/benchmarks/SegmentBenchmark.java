@@ -0,0 +1,88 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.benchmarks.PayloadBenchmark.Payload;
+
+/**<p>
+ * Measures the wall-clock time to encode and decode a large root array with and without
+ * {@link Bytifier#setSegmentLength(int) segments} and with and without the common
+ * {@link ForkJoinPool} as encode and decode pool. A segment length of {@code 0} is the
+ * regular, unsegmented encoding.
+ * <p>
+ * The decode benchmarks read from a byte array and from a direct {@link ByteBuffer}. Since
+ * the segments are located through the index at the start of the chunk, all segments are
+ * handed to the decode pool at once and the decode time should shrink with the number of
+ * cores of the pool. Without a pool the segmented decode should be about as fast as the
+ * unsegmented one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentBenchmark {
+	
+	@Param({"FLAT", "REFLECTION"})
+	Payload payload;
+	
+	@Param({"1000000"})
+	int size;
+	
+	@Param({"0", "10000"})
+	int segmentLength;
+	
+	@Param({"false", "true"})
+	boolean parallel;
+	
+	Bytifier bytifier;
+	Object graph;
+	byte[] encoded;
+	ByteBuffer encodedBuffer;
+	
+	@Setup
+	public void setup() {
+		bytifier = payload.createBytifier();
+		bytifier.setSegmentLength(segmentLength);
+		if (parallel) {
+			bytifier.setEncodePool(ForkJoinPool.commonPool());
+			bytifier.setDecodePool(ForkJoinPool.commonPool());
+		}
+		graph = payload.createGraph(size);
+		encoded = bytifier.encode(graph);
+		encodedBuffer = ByteBuffer.allocateDirect(encoded.length);
+		encodedBuffer.put(encoded).flip();
+	}
+	
+	@Benchmark
+	public byte[] encode() {
+		return bytifier.encode(graph);
+	}
+	
+	@Benchmark
+	public Object decode() {
+		return bytifier.decode(encoded);
+	}
+	
+	@Benchmark
+	public Object decodeBuffer() {
+		return bytifier.decode(encodedBuffer);
+	}
+	
+}
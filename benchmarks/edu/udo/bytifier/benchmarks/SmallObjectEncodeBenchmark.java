@@ -0,0 +1,160 @@
+package edu.udo.bytifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+
+/**<p>
+ * Measures the encoding of many small objects which consist of a handful of primitive
+ * fields. This is dominated by the single value writes of {@link EncodeData}.
+ * <p>
+ * The {@code staged} benchmarks use a {@link StagingEncodeData} which writes every value
+ * through the primitive staging buffer and {@link EncodeData#writeBytes(byte[], int, int)}
+ * and serves as a baseline for the direct writes of EncodeData.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmallObjectEncodeBenchmark {
+	
+	public static class Sample {
+		int id;
+		int count;
+		double value;
+		boolean valid;
+		
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public int getCount() {
+			return count;
+		}
+		public void setCount(int count) {
+			this.count = count;
+		}
+		public double getValue() {
+			return value;
+		}
+		public void setValue(double value) {
+			this.value = value;
+		}
+		public boolean isValid() {
+			return valid;
+		}
+		public void setValid(boolean valid) {
+			this.valid = valid;
+		}
+	}
+	
+	/**<p>
+	 * Writes every value through the staging buffer like EncodeData did before values
+	 * were written to the current buffer directly.
+	 */
+	public static class StagingEncodeData extends EncodeData {
+		public StagingEncodeData(Bytifier bytifier, boolean growBuffer) {
+			super(bytifier, 1024 * 4, true, growBuffer);
+		}
+		@Override
+		public void writeInt1(int value) {
+			primitiveBuf[0] = (byte) (value & 0xFF);
+			writePrimitives(1);
+		}
+		@Override
+		public void writeInt2(int value) {
+			primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
+			primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
+			writePrimitives(2);
+		}
+		@Override
+		public void writeInt3(int value) {
+			primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
+			primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
+			primitiveBuf[2] = (byte) ((value >> 16) & 0xFF);
+			writePrimitives(3);
+		}
+		@Override
+		public void writeInt4(int value) {
+			primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
+			primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
+			primitiveBuf[2] = (byte) ((value >> 16) & 0xFF);
+			primitiveBuf[3] = (byte) ((value >> 24) & 0xFF);
+			writePrimitives(4);
+		}
+		@Override
+		public void writeInt8(long value) {
+			for (int i = 0; i < 8; i++) {
+				primitiveBuf[i] = (byte) ((value >> (8 * i)) & 0xFF);
+			}
+			writePrimitives(8);
+		}
+	}
+	
+	@Param({"1000"})
+	int objectCount;
+	
+	@Param({"false", "true"})
+	boolean growBuffer;
+	
+	Sample[] samples;
+	Bytifier bytifier;
+	EncodeData directData;
+	EncodeData stagedData;
+	
+	@Setup
+	public void setup() {
+		samples = new Sample[objectCount];
+		for (int i = 0; i < objectCount; i++) {
+			Sample s = new Sample();
+			s.id = i;
+			s.count = i * 31;
+			s.value = i * 0.5;
+			s.valid = i % 2 == 0;
+			samples[i] = s;
+		}
+		bytifier = new ProtocolBuilder()
+				.defineForClass(Sample.class)
+					.addFieldInt(Sample::getId, Sample::setId)
+					.addFieldInt(Sample::getCount, Sample::setCount)
+					.addFieldDouble(Sample::getValue, Sample::setValue)
+					.addFieldBool(Sample::isValid, Sample::setValid)
+					.endDefinition()
+				.build();
+		directData = new EncodeData(bytifier, 1024 * 4, true, growBuffer);
+		stagedData = new StagingEncodeData(bytifier, growBuffer);
+	}
+	
+	@Benchmark
+	public int encodeDirect() {
+		directData.reset();
+		bytifier.writeChunk(directData, samples, false);
+		return directData.getByteCount();
+	}
+	
+	@Benchmark
+	public int encodeStaged() {
+		stagedData.reset();
+		bytifier.writeChunk(stagedData, samples, false);
+		return stagedData.getByteCount();
+	}
+	
+}
@@ -0,0 +1,91 @@
+package edu.udo.bytifier;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**<p>
+ * A pool of direct {@link ByteBuffer ByteBuffers} of equal capacity. Allocating direct
+ * buffers is expensive, so an {@link EncodeDirectData} takes its buffers from a pool and
+ * returns them when it is {@link EncodeDirectData#reset() reset} or
+ * {@link EncodeDirectData#release() released}.
+ * <p>
+ * At most {@link #getMaxIdleCount()} idle buffers are kept; further released buffers are
+ * left to the garbage collector.
+ * <p>
+ * This class is thread safe.
+ */
+public class ByteBufferPool {
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 64;
+	public static final int DEFAULT_MAX_IDLE_COUNT = 64;
+	
+	protected final ArrayDeque<ByteBuffer> idleBuffers = new ArrayDeque<>();
+	protected final int bufferSize;
+	protected final int maxIdleCount;
+	
+	public ByteBufferPool() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IDLE_COUNT);
+	}
+	
+	/**<p>
+	 * Constructs an empty pool.
+	 * 
+	 * @param bufferSize		the capacity of each buffer; at least {@link EncodeData#MIN_BUFFER_SIZE}
+	 * @param maxIdleCount		the maximum number of idle buffers kept by the pool
+	 */
+	public ByteBufferPool(int bufferSize, int maxIdleCount) {
+		if (bufferSize < EncodeData.MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("bufferSize == "+bufferSize);
+		}
+		if (maxIdleCount < 0) {
+			throw new IllegalArgumentException("maxIdleCount == "+maxIdleCount);
+		}
+		this.bufferSize = bufferSize;
+		this.maxIdleCount = maxIdleCount;
+	}
+	
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	public int getMaxIdleCount() {
+		return maxIdleCount;
+	}
+	
+	public synchronized int getIdleCount() {
+		return idleBuffers.size();
+	}
+	
+	/**<p>
+	 * Returns an idle buffer or allocates a new direct buffer if there is none. The
+	 * returned buffer is {@link ByteBuffer#clear() cleared}.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buf;
+		synchronized (this) {
+			buf = idleBuffers.pollLast();
+		}
+		if (buf == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		return buf.clear();
+	}
+	
+	/**<p>
+	 * Returns {@code buf} to the pool. The buffer must not be used by the caller afterwards.
+	 * 
+	 * @param buf	a buffer previously {@link #acquire() acquired} from this pool
+	 * @throws IllegalArgumentException		if {@code buf} can not have been acquired from this pool
+	 */
+	public void release(ByteBuffer buf) {
+		if (!buf.isDirect() || buf.capacity() != bufferSize) {
+			throw new IllegalArgumentException("buf was not acquired from this pool: "+buf);
+		}
+		synchronized (this) {
+			if (idleBuffers.size() < maxIdleCount) {
+				idleBuffers.addLast(buf);
+			}
+		}
+	}
+	
+}
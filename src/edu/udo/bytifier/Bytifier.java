@@ -1,21 +1,132 @@
 package edu.udo.bytifier;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import edu.udo.bytifier.protocols.ArrayListProtocol;
+import edu.udo.bytifier.protocols.CollectionProtocol;
 import edu.udo.bytifier.protocols.ProtocolUtil;
 import edu.udo.bytifier.protocols.UnknownClassProtocol;
+import edu.udo.bytifier.protocols.UnknownClassProtocol.StreamSchema;
 
+/**<p>
+ * Encodes object graphs to bytes and decodes them again according to a fixed protocol.
+ * <p>
+ * A Bytifier is thread-safe and a single instance can be shared by any number of threads.
+ * The protocols, the protocol index tables and the protocol ID are immutable and set in
+ * the constructor, so they are safely published together with the Bytifier. The caches
+ * filled while encoding and decoding are either {@link ClassValue ClassValues} or tolerate
+ * racing threads. Protocols must not keep per-call state; all protocols of this library
+ * only hold immutable data.
+ * <p>
+ * The state of a single encoding or decoding lives in an {@link EncodeData} or
+ * {@link DecodeData}. The methods which do not take one use an instance per thread; an
+ * instance passed in explicitly must not be used by more than one thread at a time.
+ * The settings {@link #setReactionToUnknownObjectTypes(UnknownObjectTypeReaction)},
+ * {@link #setDeduplicateStrings(boolean)}, {@link #setSegmentLength(int)},
+ * {@link #setEncodePool(ForkJoinPool)} and {@link #setDecodePool(ForkJoinPool)} may be changed at any time and are seen by all
+ * threads from their next write on.
+ */
 public class Bytifier {
 	
+	/** The kind of a {@link ChunkType#SEGMENTED} chunk whose container is an array. */
+	protected static final int SEGMENTED_ARRAY = 0;
+	/** The kind of a {@link ChunkType#SEGMENTED} chunk whose container is a collection. */
+	protected static final int SEGMENTED_COLLECTION = 1;
+	
 	protected final List<ProtocolTuple> protocols;
+	/** Maps each class of the protocol to its index within {@link #protocols}. Never modified after construction. */
+	protected final Map<Class<?>, Integer> protocolIdxMap;
+	/**
+	 * Caches the protocol index for any class, including {@code -1} for classes which
+	 * are not part of the protocol.
+	 */
+	protected final ClassValue<Integer> protocolIdxCache = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			return protocolIdxMap.getOrDefault(type, -1);
+		}
+	};
+	/**
+	 * Caches the {@link GenericArrayType} for any class. The cached value is
+	 * {@link GenericArrayType#NONE} for classes which are not arrays or whose
+	 * {@link ProtocolUtil#getArrayElementType(Object) array element type} is not part of
+	 * the protocol.
+	 */
+	protected final ClassValue<GenericArrayType> genericArrayTypeCache = new ClassValue<GenericArrayType>() {
+		@Override
+		protected GenericArrayType computeValue(Class<?> type) {
+			if (!type.isArray()) {
+				return GenericArrayType.NONE;
+			}
+			int dim = 1;
+			Class<?> elemType = type.getComponentType();
+			while (elemType.isArray()) {
+				elemType = elemType.getComponentType();
+				dim++;
+			}
+			int elemIdx = getProtocolIndexFor(elemType);
+			if (elemIdx < 0) {
+				return GenericArrayType.NONE;
+			}
+			return new GenericArrayType(elemIdx, dim);
+		}
+	};
+	/**
+	 * The component types of decoded generic arrays by the index of their element class
+	 * and their dimension - 1. Filled lazily by {@link #getGenericArrayComponentType(int, int)}.
+	 * Concurrent threads may race on the same entry; the loser simply computes the same
+	 * Class again, so no synchronization is needed.
+	 */
+	protected final Class<?>[][] genericArrayComponentTypes;
+	/**
+	 * Whether lengths, counts and integer values are written as varints.
+	 * @see #isCompactIntegers()
+	 */
+	protected final boolean compactIntegers;
 	protected final int protocolID;
-	protected UnknownObjectTypeReaction unknownReaction = UnknownObjectTypeReaction.WRITE_AND_WARNING;
-	protected UnknownClassProtocol ucp = new UnknownClassProtocol();
+	/** Volatile so that a change is seen by threads which are already encoding. */
+	protected volatile UnknownObjectTypeReaction unknownReaction = UnknownObjectTypeReaction.WRITE_AND_WARNING;
+	/**
+	 * Used for unknown objects regardless of the {@link #unknownReaction}, so that data
+	 * which contains unknown objects can always be decoded.
+	 */
+	protected final UnknownClassProtocol ucp = new UnknownClassProtocol();
+	/** Volatile so that a change is seen by threads which are already encoding. */
+	protected volatile boolean deduplicateStrings = false;
+	/**
+	 * The maximum number of elements per segment of a segmented root array or collection,
+	 * or {@code 0} if the root is never segmented.
+	 * @see #setSegmentLength(int)
+	 */
+	protected volatile int segmentLength = 0;
+	/** The pool on which segments are encoded or {@code null} to encode them in the calling thread. */
+	protected volatile ForkJoinPool encodePool;
+	/** The pool on which segments are decoded or {@code null} to decode them in the calling thread. */
+	protected volatile ForkJoinPool decodePool;
+	/** An idle {@link EncodeData} per thread which is reused by {@link #encode(Object)} */
+	protected final ThreadLocal<EncodeData> encodeSessions = new ThreadLocal<>();
+	/** An idle {@link DecodeData} per thread which is reused by {@link #decode(byte[])} */
+	protected final ThreadLocal<DecodeData> decodeSessions = new ThreadLocal<>();
 	
 	public Bytifier() {
 		this(Collections.emptyList());
@@ -26,7 +137,25 @@ public class Bytifier {
 	}
 	
 	public Bytifier(Collection<ProtocolTuple> protocols) {
+		this(protocols, false);
+	}
+	
+	/**<p>
+	 * Creates a new Bytifier for the given protocols.
+	 * 
+	 * @param protocols			the protocols of all supported classes
+	 * @param compactIntegers	whether lengths, counts and integer values are written as varints
+	 * @see #isCompactIntegers()
+	 */
+	public Bytifier(Collection<ProtocolTuple> protocols, boolean compactIntegers) {
+		this.compactIntegers = compactIntegers;
 		this.protocols = Collections.unmodifiableList(new ArrayList<>(protocols));
+		Map<Class<?>, Integer> idxMap = new HashMap<>();
+		for (int i = 0; i < this.protocols.size(); i++) {
+			idxMap.put(this.protocols.get(i).cls, Integer.valueOf(i));
+		}
+		protocolIdxMap = Collections.unmodifiableMap(idxMap);
+		genericArrayComponentTypes = new Class<?>[this.protocols.size()][];
 		protocolID = calculateProtocolIdentificationNumber();
 	}
 	
@@ -40,6 +169,9 @@ public class Bytifier {
 			ClassProtocol proto = tuple.proto;
 			magNum += prime * proto.getIdentificationNumber();
 		}
+		if (compactIntegers) {
+			magNum = magNum * prime + 1;
+		}
 		return magNum;
 	}
 	
@@ -52,21 +184,97 @@ public class Bytifier {
 			throw new IllegalArgumentException("value must not be 'null'");
 		}
 		unknownReaction = value;
-		if (unknownReaction == UnknownObjectTypeReaction.WRITE
-				|| unknownReaction == UnknownObjectTypeReaction.WRITE_AND_WARNING)
-		{
-			if (ucp == null) {
-				ucp = new UnknownClassProtocol();
-			}
-		} else {
-			ucp = null;
-		}
 	}
 	
 	public UnknownObjectTypeReaction getReactionToUnknownObjectTypes() {
 		return unknownReaction;
 	}
 	
+	/**<p>
+	 * If set to {@code true} a string which is equal to a string written earlier in the
+	 * same stream is written as a reference to the earlier string instead of in full.
+	 * All equal strings are decoded as the same String instance. Strings written as
+	 * value types or directly by a protocol are not affected.
+	 * <p>
+	 * The references use the regular {@link ChunkType#READ_OBJ_REF} chunks, so the setting
+	 * only matters for encoding; any Bytifier with the same protocol can decode the data.
+	 * The default is {@code false}.
+	 * 
+	 * @see ProtocolBuilder#setDeduplicateStrings(boolean)
+	 */
+	public void setDeduplicateStrings(boolean value) {
+		deduplicateStrings = value;
+	}
+	
+	public boolean isDeduplicateStrings() {
+		return deduplicateStrings;
+	}
+	
+	/**<p>
+	 * If set to a positive value, a root array or collection with more elements than
+	 * {@code value} is written as a {@link ChunkType#SEGMENTED} chunk. Its elements are
+	 * split into segments of at most {@code value} elements which are encoded
+	 * independently, in parallel if an {@link #setEncodePool(ForkJoinPool) encode pool}
+	 * is set.
+	 * <p>
+	 * Since every segment keeps its own references, the root is only segmented if no
+	 * object is reachable from more than one segment. Strings and enum literals are
+	 * exempt and may be written once per segment. Otherwise, or if the root is neither an
+	 * array of a protocol class nor a collection defined by a {@link CollectionProtocol}
+	 * or {@link ArrayListProtocol}, the root is written as usual. Collections defined by
+	 * subclasses of these protocols are never segmented since a segmented collection is
+	 * decoded without calling the protocol's read method.
+	 * <p>
+	 * The default is {@code 0}, which disables segments.
+	 * 
+	 * @param value		the maximum number of elements per segment; {@code 0} to disable segments
+	 * @throws IllegalArgumentException		if {@code value} is negative
+	 */
+	public void setSegmentLength(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("value="+value);
+		}
+		segmentLength = value;
+	}
+	
+	public int getSegmentLength() {
+		return segmentLength;
+	}
+	
+	/**<p>
+	 * Sets the pool on which the segments of a segmented root are encoded. If the pool is
+	 * {@code null}, which is the default, segments are encoded one after another in the
+	 * calling thread.
+	 * 
+	 * @see #setSegmentLength(int)
+	 */
+	public void setEncodePool(ForkJoinPool pool) {
+		encodePool = pool;
+	}
+	
+	public ForkJoinPool getEncodePool() {
+		return encodePool;
+	}
+	
+	/**<p>
+	 * Sets the pool on which the segments of a {@link ChunkType#SEGMENTED} chunk are
+	 * decoded. The chunk starts with an index of the lengths of all segments, so segments
+	 * decoded from a byte array or buffer are handed to the pool at once without being
+	 * copied or scanned. Segments decoded from a stream are handed to the pool as soon as
+	 * their bytes have been read, so reading the input overlaps with decoding the segments
+	 * read before. If the pool is {@code null}, which is the default, segments are
+	 * decoded one after another in the calling thread.
+	 * 
+	 * @see #setSegmentLength(int)
+	 */
+	public void setDecodePool(ForkJoinPool pool) {
+		decodePool = pool;
+	}
+	
+	public ForkJoinPool getDecodePool() {
+		return decodePool;
+	}
+	
 	public Class<?> getClassForIndex(int classIndex) {
 		if (classIndex < 0 || classIndex >= protocols.size()) {
 			return null;
@@ -85,14 +293,362 @@ public class Bytifier {
 		return protocolID;
 	}
 	
+	/**<p>
+	 * Returns {@code true} if this Bytifier writes the lengths of arrays and strings,
+	 * the sizes of collections and maps, and integer values written by protocols through
+	 * {@link #writeInt(EncodeData, int)} as varints instead of with a fixed number of
+	 * bytes. Small values take a single byte this way.
+	 * <p>
+	 * The choice is part of the {@link #getProtocolIdentificationNumber() protocol
+	 * identification number}; data written in one mode can not be read in the other.
+	 * 
+	 * @see ProtocolBuilder#setCompactIntegers(boolean)
+	 */
+	public boolean isCompactIntegers() {
+		return compactIntegers;
+	}
+	
+	/**<p>
+	 * Writes the size of a collection or map; 4 bytes or a varint.
+	 * 
+	 * @see #isCompactIntegers()
+	 */
+	public void writeSize(EncodeData data, int size) {
+		if (compactIntegers) {
+			data.writeVarInt(size);
+		} else {
+			data.writeInt4(size);
+		}
+	}
+	
+	/**<p>
+	 * Reads a size written by {@link #writeSize(EncodeData, int)}.
+	 */
+	public int readSize(DecodeData data) {
+		return compactIntegers ? data.readVarInt() : data.readInt4();
+	}
+	
+	/**<p>
+	 * Writes the length of an array or string; 3 bytes or a varint.
+	 * 
+	 * @see #isCompactIntegers()
+	 */
+	public void writeLength(EncodeData data, int length) {
+		if (compactIntegers) {
+			data.writeVarInt(length);
+		} else {
+			data.writeInt3(length);
+		}
+	}
+	
+	/**<p>
+	 * Reads a length written by {@link #writeLength(EncodeData, int)}.
+	 */
+	public int readLength(DecodeData data) {
+		return compactIntegers ? data.readVarInt() : data.readInt3();
+	}
+	
+	/**<p>
+	 * Writes a signed int value; 4 bytes or a zigzag encoded varint.
+	 * 
+	 * @see #isCompactIntegers()
+	 */
+	public void writeInt(EncodeData data, int value) {
+		if (compactIntegers) {
+			data.writeSignedVarInt(value);
+		} else {
+			data.writeInt4(value);
+		}
+	}
+	
+	/**<p>
+	 * Reads a value written by {@link #writeInt(EncodeData, int)}.
+	 */
+	public int readInt(DecodeData data) {
+		return compactIntegers ? data.readSignedVarInt() : data.readInt4();
+	}
+	
+	/**<p>
+	 * Writes a signed long value; 8 bytes or a zigzag encoded varint.
+	 * 
+	 * @see #isCompactIntegers()
+	 */
+	public void writeLong(EncodeData data, long value) {
+		if (compactIntegers) {
+			data.writeSignedVarLong(value);
+		} else {
+			data.writeInt8(value);
+		}
+	}
+	
+	/**<p>
+	 * Reads a value written by {@link #writeLong(EncodeData, long)}.
+	 */
+	public long readLong(DecodeData data) {
+		return compactIntegers ? data.readSignedVarLong() : data.readInt8();
+	}
+	
+	/**<p>
+	 * Returns the index of the protocol for {@code cls} or {@code -1} if {@code cls} is
+	 * not part of the protocol. The result is cached per class, including negative
+	 * results, so that repeated lookups do not allocate.
+	 * 
+	 * @param cls	any class or {@code null}
+	 * @return		a valid protocol index or {@code -1}
+	 */
+	public int getProtocolIndexFor(Class<?> cls) {
+		if (cls == null) {
+			return -1;
+		}
+		return protocolIdxCache.get(cls).intValue();
+	}
+	
+	/**<p>
+	 * Returns the protocol index of the innermost element type of the array type
+	 * {@code cls}. Returns {@code -1} if {@code cls} is not an array type or if the
+	 * element type is not part of the protocol. The result is cached per class.
+	 * 
+	 * @param cls	any class
+	 * @return		a valid protocol index or {@code -1}
+	 * @see ProtocolUtil#getArrayElementType(Object)
+	 */
+	public int getArrayElementProtocolIndexFor(Class<?> cls) {
+		return genericArrayTypeCache.get(cls).elemProtocolIdx;
+	}
+	
+	/**<p>
+	 * Returns the component type of a generic array whose innermost element type is the
+	 * class with index {@code elemClsIdx} and which has {@code dim} dimensions. For
+	 * example, for {@code Contact[][]} the component type is {@code Contact[]}. The
+	 * result is cached per index and dimension.
+	 * 
+	 * @param elemClsIdx	a valid protocol index
+	 * @param dim			the dimension of the array; at least 1
+	 * @return				the element class nested in {@code dim - 1} array types
+	 * @throws IllegalArgumentException	if {@code dim} is smaller than 1
+	 */
+	public Class<?> getGenericArrayComponentType(int elemClsIdx, int dim) {
+		if (dim < 1) {
+			throw new IllegalArgumentException("dim="+dim);
+		}
+		Class<?>[] types = genericArrayComponentTypes[elemClsIdx];
+		if (types == null || types.length < dim) {
+			Class<?>[] newTypes = new Class<?>[Math.max(dim, 2)];
+			if (types != null) {
+				System.arraycopy(types, 0, newTypes, 0, types.length);
+			}
+			types = newTypes;
+			genericArrayComponentTypes[elemClsIdx] = types;
+		}
+		Class<?> type = types[dim - 1];
+		if (type == null) {
+			type = getClassForIndex(elemClsIdx);
+			for (int i = 1; i < dim; i++) {
+				type = type.arrayType();
+			}
+			types[dim - 1] = type;
+		}
+		return type;
+	}
+	
+	/**<p>
+	 * Creates a new {@link EncodeData} for this Bytifier which can be passed to
+	 * {@link #encode(EncodeData, Object)} any number of times. Buffers, the reference
+	 * map and the protocol index table of the returned EncodeData are reused across
+	 * calls.
+	 * <p>
+	 * An EncodeData must not be used by more than one thread at a time.
+	 * 
+	 * @return	a new EncodeData with a written header
+	 */
+	public EncodeData createEncodeData() {
+		return new EncodeData(this);
+	}
+	
+	/**<p>
+	 * Creates a new {@link DecodeData} for this Bytifier which can be passed to
+	 * {@link #decode(DecodeData, byte[])} any number of times. The reference map of the
+	 * returned DecodeData is reused across calls.
+	 * <p>
+	 * A DecodeData must not be used by more than one thread at a time.
+	 * 
+	 * @return	a new DecodeData without backing data
+	 */
+	public DecodeData createDecodeData() {
+		return new DecodeData();
+	}
+	
+	/**<p>
+	 * Takes the idle {@link EncodeData} of the current thread or creates a new one if there
+	 * is none. The returned EncodeData is removed from the pool until it is
+	 * {@link #releaseEncodeData(EncodeData) released}, so that nested calls to
+	 * {@link #encode(Object)} never share an EncodeData.
+	 */
+	protected EncodeData acquireEncodeData() {
+		EncodeData data = encodeSessions.get();
+		if (data == null) {
+			return createEncodeData();
+		}
+		encodeSessions.set(null);
+		return data;
+	}
+	
+	/**<p>
+	 * Resets {@code data}, releasing all references to the encoded object graph, and makes
+	 * it the idle EncodeData of the current thread.
+	 */
+	protected void releaseEncodeData(EncodeData data) {
+		data.reset();
+		encodeSessions.set(data);
+	}
+	
+	/**<p>
+	 * Takes the idle {@link DecodeData} of the current thread or creates a new one if there
+	 * is none. The returned DecodeData is removed from the pool until it is
+	 * {@link #releaseDecodeData(DecodeData) released}.
+	 */
+	protected DecodeData acquireDecodeData() {
+		DecodeData data = decodeSessions.get();
+		if (data == null) {
+			return createDecodeData();
+		}
+		decodeSessions.set(null);
+		return data;
+	}
+	
+	/**<p>
+	 * Clears {@code data}, releasing all references to the decoded object graph, and makes
+	 * it the idle DecodeData of the current thread.
+	 */
+	protected void releaseDecodeData(DecodeData data) {
+		data.clear();
+		decodeSessions.set(data);
+	}
+	
 	public Object decode(byte[] bytes) {
-		DecodeData data = new DecodeData(bytes);
+		DecodeData data = acquireDecodeData();
+		try {
+			data.reset(bytes);
+			return decodeWith(data);
+		} finally {
+			releaseDecodeData(data);
+		}
+	}
+	
+	/**<p>
+	 * Decodes {@code bytes} using the given {@link DecodeData} which is
+	 * {@link DecodeData#reset(byte[]) reset} beforehand.
+	 * 
+	 * @param data		a DecodeData created by {@link #createDecodeData()}
+	 * @param bytes		the encoded object graph
+	 * @return			the decoded object graph
+	 */
+	public Object decode(DecodeData data, byte[] bytes) {
+		data.reset(bytes);
+		return decodeWith(data);
+	}
+	
+	/**<p>
+	 * Decodes an object graph from {@code in} while reading. Unlike {@link #decode(byte[])}
+	 * the encoded bytes are never held in memory completely. The stream is read through
+	 * a buffer but never past the end of the encoded object graph, so several object
+	 * graphs written back to back can be decoded by calling this method repeatedly. The
+	 * stream is not closed. An unbuffered stream should be wrapped in a
+	 * {@link java.io.BufferedInputStream} since many small reads are made.
+	 * 
+	 * @param in			the stream to read from
+	 * @return				the decoded object graph
+	 * @throws IOException	if {@code in} throws an IOException or ends prematurely
+	 * @see DecodeStreamData
+	 */
+	public Object decode(InputStream in) throws IOException {
+		return decode(new DecodeStreamData(in, DecodeStreamData.DEFAULT_BUFFER_SIZE, true, false));
+	}
+	
+	/**<p>
+	 * Decodes an object graph from the blocking {@code channel} while reading. Like
+	 * {@link #decode(InputStream)} the channel is never read past the end of the encoded
+	 * object graph and is not closed.
+	 * 
+	 * @param channel		the channel to read from
+	 * @return				the decoded object graph
+	 * @throws IOException	if {@code channel} throws an IOException or ends prematurely
+	 * @see #decode(InputStream)
+	 */
+	public Object decode(ReadableByteChannel channel) throws IOException {
+		return decode(new DecodeStreamData(channel, DecodeStreamData.DEFAULT_BUFFER_SIZE, true, false));
+	}
+	
+	/**<p>
+	 * Decodes an object graph from the source of {@code data} whose header has already
+	 * been read. Bytes which are read ahead stay buffered in {@code data}; to decode the
+	 * next object graph from the same source call {@link DecodeStreamData#readNextHeader()}
+	 * and pass the same {@code data} again.
+	 * 
+	 * @param data			a DecodeStreamData positioned after the header
+	 * @return				the decoded object graph
+	 * @throws IOException	if the source throws an IOException or ends prematurely
+	 */
+	public Object decode(DecodeStreamData data) throws IOException {
+		try {
+			return decodeWith(data);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**<p>
+	 * Decodes an object graph from the bytes between the position and the limit of
+	 * {@code buffer}. The buffer may be a heap buffer, a direct buffer or a memory mapped
+	 * buffer; its position is not changed.
+	 * 
+	 * @param buffer	the encoded object graph
+	 * @return			the decoded object graph
+	 * @see DecodeBufferData
+	 */
+	public Object decode(ByteBuffer buffer) {
+		return decodeWith(new DecodeBufferData(buffer));
+	}
+	
+	/**<p>
+	 * Decodes {@code buffer} using the given {@link DecodeBufferData} which is
+	 * {@link DecodeBufferData#reset(ByteBuffer) reset} beforehand.
+	 * 
+	 * @param data		a DecodeBufferData which is reused across calls
+	 * @param buffer	the encoded object graph
+	 * @return			the decoded object graph
+	 */
+	public Object decode(DecodeBufferData data, ByteBuffer buffer) {
+		data.reset(buffer);
+		return decodeWith(data);
+	}
+	
+	/**<p>
+	 * Decodes an object graph from {@code file} by mapping the file into memory. The file
+	 * is read through the page cache of the operating system and is never copied to the
+	 * heap as a whole, so files larger than the heap can be decoded.
+	 * 
+	 * @param file			a file containing an encoded object graph
+	 * @return				the decoded object graph
+	 * @throws IOException	if the file can not be opened or mapped
+	 * @see DecodeMappedFileData
+	 */
+	public Object decodeMapped(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return decodeWith(new DecodeMappedFileData(channel));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	protected Object decodeWith(DecodeData data) {
 		if (protocolID != data.getProtocolIdentificationNumber()) {
 			System.err.println("local Protocol Identification Number = "+protocolID
 					+"; remote Protocol Identification Number = "+data.getProtocolIdentificationNumber());
 		}
 		Object result = readChunk(data);
-		if (data.hasMoreData()) {
+		// bytes read ahead from a stream may belong to the next object graph
+		if (!(data instanceof DecodeStreamData) && data.hasMoreData()) {
 			System.err.println("There is unread data at the end of the input; remaining bytes="+data.getRemainingByteCount());
 		}
 		return result;
@@ -115,6 +671,10 @@ public class Bytifier {
 			return readUnknownObject(data);
 		case UNKNOWN_ENUM:
 			return readUnknownEnum(data);
+		case DESCRIBED_UNKNOWN_OBJ:
+			return readDescribedUnknownObject(data);
+		case SEGMENTED:
+			return readSegmented(data);
 		case ILLEGAL:
 		default:
 			throw new IllegalArgumentException("chunkType="+chunkType);
@@ -146,23 +706,95 @@ public class Bytifier {
 	
 	protected Object readGenericArray(DecodeData data) {
 		int elemClsIdx = data.readClassIndex();
-		Class<?> elemCls = getClassForIndex(elemClsIdx);
-		int dim = data.readInt1();
-		for (int i = 1; i < dim; i++) {
-			elemCls = Array.newInstance(elemCls, 0).getClass();
-		}
+		int dim = data.readInt1() & 0xFF;
+		Class<?> componentType = getGenericArrayComponentType(elemClsIdx, dim);
 		
-		int len = data.readInt3();
-		Object arr = Array.newInstance(elemCls, len);
+		int len = readLength(data);
+		Object arr = Array.newInstance(componentType, len);
 		data.pushObjectReference(arr);
 		
-		for (int i = 0; i < len; i++) {
-			Object elem = readChunk(data);
-			Array.set(arr, i, elem);
+		if (arr instanceof Object[]) {
+			Object[] objArr = (Object[]) arr;
+			for (int i = 0; i < len; i++) {
+				objArr[i] = readChunk(data);
+			}
+		} else {
+			for (int i = 0; i < len; i++) {
+				Array.set(arr, i, readChunk(data));
+			}
 		}
 		return arr;
 	}
 	
+	protected Object readSegmented(DecodeData data) {
+		int kind = data.readInt1();
+		int clsIdx = data.readClassIndex();
+		Object container;
+		Object[] elements;
+		if (kind == SEGMENTED_ARRAY) {
+			int dim = data.readInt1() & 0xFF;
+			Class<?> componentType = getGenericArrayComponentType(clsIdx, dim);
+			elements = (Object[]) Array.newInstance(componentType, data.readInt4());
+			container = elements;
+		} else if (kind == SEGMENTED_COLLECTION) {
+			container = getProtocolForIndex(clsIdx).create(this, data);
+			elements = new Object[data.readInt4()];
+		} else {
+			throw new IllegalArgumentException("Unknown kind of segmented container; kind="+kind);
+		}
+		data.pushObjectReference(container);
+		
+		int segCount = data.readInt4();
+		int[] elemCounts = new int[segCount];
+		int[] byteCounts = new int[segCount];
+		for (int i = 0; i < segCount; i++) {
+			elemCounts[i] = data.readInt4();
+			byteCounts[i] = data.readInt4();
+		}
+		ForkJoinPool pool = decodePool;
+		List<ForkJoinTask<?>> tasks = pool == null ? null : new ArrayList<>(segCount);
+		int offset = 0;
+		for (int i = 0; i < segCount; i++) {
+			DecodeData segment = data.readEmbeddedData(byteCounts[i]);
+			int elemCount = elemCounts[i];
+			if (pool == null) {
+				readSegment(segment, elements, offset, elemCount);
+			} else {
+				// every task writes to its own range of the elements
+				int from = offset;
+				tasks.add(pool.submit(() -> readSegment(segment, elements, from, elemCount)));
+			}
+			offset += elemCount;
+		}
+		if (tasks != null) {
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+		if (container != elements) {
+			@SuppressWarnings("unchecked")
+			Collection<Object> collection = (Collection<Object>) container;
+			collection.addAll(Arrays.asList(elements));
+		}
+		return container;
+	}
+	
+	/**<p>
+	 * Decodes {@code count} elements from the encoded {@code segment} into
+	 * {@code elements}, starting at index {@code offset}.
+	 * 
+	 * @throws IllegalArgumentException	if the elements do not end exactly at the end of the segment
+	 */
+	protected void readSegment(DecodeData segment, Object[] elements, int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			elements[offset + i] = readChunk(segment);
+		}
+		if (segment.getRemainingByteCount() != 0) {
+			throw new IllegalArgumentException("The segment starting at element "+offset
+					+" does not match its length in the segment index; remaining bytes="+segment.getRemainingByteCount());
+		}
+	}
+	
 	protected Object readUnknownObject(DecodeData data) {
 		Object obj = ucp.create(this, data);
 		data.pushObjectReference(obj);
@@ -170,6 +802,14 @@ public class Bytifier {
 		return obj;
 	}
 	
+	protected Object readDescribedUnknownObject(DecodeData data) {
+		StreamSchema schema = ucp.readSchema(data);
+		Object obj = schema.newInstance();
+		data.pushObjectReference(obj);
+		ucp.readValues(this, data, obj, schema);
+		return obj;
+	}
+	
 	protected Object readUnknownEnum(DecodeData data) {
 		String clsName = data.readJavaIdentifier();
 		try {
@@ -189,11 +829,352 @@ public class Bytifier {
 	}
 	
 	public byte[] encode(Object objectGraph) {
-		EncodeData data = new EncodeData(this);
-		writeChunk(data, objectGraph, false);
+		EncodeData data = acquireEncodeData();
+		try {
+			writeRoot(data, objectGraph);
+			return data.getBytes();
+		} finally {
+			releaseEncodeData(data);
+		}
+	}
+	
+	/**<p>
+	 * Encodes {@code objectGraph} using the given {@link EncodeData} which is
+	 * {@link EncodeData#reset() reset} beforehand.
+	 * 
+	 * @param data			an EncodeData created by {@link #createEncodeData()}
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @return				the encoded bytes
+	 * @throws IllegalArgumentException	if {@code data} does not {@link EncodeData#isRetainingBytes() retain}
+	 * 									the encoded bytes; nothing is encoded in this case
+	 * @see #encode(EncodeStreamData, Object)
+	 */
+	public byte[] encode(EncodeData data, Object objectGraph) {
+		checkRetainingBytes(data);
+		data.reset();
+		writeRoot(data, objectGraph);
 		return data.getBytes();
 	}
 	
+	/**<p>
+	 * Encodes the given object graph into a single growing buffer and returns a view of
+	 * that buffer. Unlike {@link #encode(Object)} the encoded bytes are not copied into a
+	 * new array after encoding has finished.
+	 * 
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @return				a ByteBuffer containing the encoded bytes between its position and limit
+	 */
+	public ByteBuffer encodeToByteBuffer(Object objectGraph) {
+		EncodeData data = new EncodeData(this, 1024 * 4, true, true);
+		writeRoot(data, objectGraph);
+		return data.getByteBuffer(true);
+	}
+	
+	/**<p>
+	 * Encodes {@code objectGraph} using the given {@link EncodeData} which is
+	 * {@link EncodeData#reset() reset} beforehand and returns views of the buffers of
+	 * {@code data}. No bytes are copied; the returned array can be passed to a
+	 * {@link java.nio.channels.GatheringByteChannel} directly. If {@code data} is an
+	 * {@link EncodeDirectData} all returned buffers are direct buffers.
+	 * <p>
+	 * The returned views are only valid until {@code data} is reset or written to.
+	 * 
+	 * @param data			an EncodeData which is reused across calls
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @return				the encoded bytes as a sequence of buffers
+	 * @throws IllegalArgumentException	if {@code data} does not {@link EncodeData#isRetainingBytes() retain}
+	 * 									the encoded bytes; nothing is encoded in this case
+	 * @see EncodeData#getByteBuffers(boolean)
+	 */
+	public ByteBuffer[] encodeToByteBuffers(EncodeData data, Object objectGraph) {
+		checkRetainingBytes(data);
+		data.reset();
+		writeRoot(data, objectGraph);
+		return data.getByteBuffers(true);
+	}
+	
+	/**<p>
+	 * Throws an IllegalArgumentException before anything is encoded if the encoded bytes
+	 * can not be obtained from {@code data} afterwards, for example because {@code data}
+	 * is an {@link EncodeStreamData} which was passed as an {@link EncodeData}.
+	 */
+	protected void checkRetainingBytes(EncodeData data) {
+		if (!data.isRetainingBytes()) {
+			throw new IllegalArgumentException("The EncodeData does not retain the encoded bytes; data="
+					+data.getClass().getName()+". An EncodeStreamData must be passed to encode(EncodeStreamData, Object)");
+		}
+	}
+	
+	/**<p>
+	 * Encodes the given object graph and writes the encoded bytes to {@code out} while
+	 * encoding. Unlike {@link #encode(Object)} the encoded bytes are never held in
+	 * memory completely. The stream is flushed but not closed.
+	 * <p>
+	 * The written bytes can be decoded like the result of {@link #encode(Object)}.
+	 * 
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @param out			the stream the encoded bytes are written to
+	 * @throws IOException	if {@code out} throws an IOException
+	 * @see EncodeStreamData
+	 */
+	public void encode(Object objectGraph, OutputStream out) throws IOException {
+		encode(new EncodeStreamData(this, out), objectGraph);
+	}
+	
+	/**<p>
+	 * Encodes the given object graph and writes the encoded bytes to {@code channel}
+	 * while encoding. The channel is not closed.
+	 * 
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @param channel		the channel the encoded bytes are written to
+	 * @throws IOException	if {@code channel} throws an IOException
+	 * @see #encode(Object, OutputStream)
+	 */
+	public void encode(Object objectGraph, WritableByteChannel channel) throws IOException {
+		encode(new EncodeStreamData(this, channel), objectGraph);
+	}
+	
+	/**<p>
+	 * Encodes {@code objectGraph} using the given {@link EncodeStreamData} and
+	 * {@link EncodeStreamData#flush() flushes} it afterwards. The EncodeStreamData is
+	 * {@link EncodeData#reset() reset} beforehand, so the encoded graph is appended to
+	 * anything that was previously written to the same sink.
+	 * 
+	 * @param data			the EncodeStreamData which writes to the sink
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @throws IOException	if the sink throws an IOException
+	 */
+	public void encode(EncodeStreamData data, Object objectGraph) throws IOException {
+		data.reset();
+		try {
+			writeRoot(data, objectGraph);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		data.flush();
+	}
+	
+	/**<p>
+	 * Encodes the given object graph into {@code file} by mapping the file into memory
+	 * while encoding. An existing file is overwritten. Afterwards the file contains exactly
+	 * the encoded bytes. If encoding fails the file is truncated to zero bytes.
+	 * 
+	 * @param objectGraph	the object to be encoded; may be {@code null}
+	 * @param file			the file the encoded bytes are written to
+	 * @throws IOException	if the file can not be opened, mapped or truncated
+	 * @see EncodeMappedFileData
+	 */
+	public void encodeMapped(Object objectGraph, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			EncodeMappedFileData data = new EncodeMappedFileData(this, channel);
+			try {
+				writeRoot(data, objectGraph);
+			} catch (Throwable e) {
+				try {
+					data.abort();
+				} catch (IOException | RuntimeException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+			data.finish();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**<p>
+	 * Writes the root of an object graph. The root is written as a
+	 * {@link ChunkType#SEGMENTED} chunk if possible and a
+	 * {@link #setSegmentLength(int) segment length} is set.
+	 */
+	protected void writeRoot(EncodeData data, Object objectGraph) {
+		int segLen = segmentLength;
+		if (segLen <= 0 || objectGraph == null || !writeSegmented(data, objectGraph, segLen)) {
+			writeChunk(data, objectGraph, false);
+		}
+	}
+	
+	/**<p>
+	 * Writes {@code container} as a {@link ChunkType#SEGMENTED} chunk and returns
+	 * {@code true}, or writes nothing and returns {@code false} if the container can not
+	 * be segmented.
+	 */
+	protected boolean writeSegmented(EncodeData data, Object container, int segLen) {
+		int clsIdx = data.getProtocolIndexFor(container);
+		boolean isArray = clsIdx < 0;
+		Object[] elements;
+		if (isArray) {
+			clsIdx = getArrayElementProtocolIndexFor(container.getClass());
+			if (clsIdx < 0 || !(container instanceof Object[])) {
+				return false;
+			}
+			elements = (Object[]) container;
+		} else if (isSegmentableCollection(getProtocolForIndex(clsIdx))) {
+			elements = ((Collection<?>) container).toArray();
+		} else {
+			return false;
+		}
+		if (elements.length <= segLen || hasDuplicateElements(container, elements)) {
+			return false;
+		}
+		int segCount = (elements.length + segLen - 1) / segLen;
+		EncodeData[] segments = encodeSegments(container, elements, segLen, segCount);
+		if (segments == null) {
+			return false;
+		}
+		
+		data.writeChunkType(ChunkType.SEGMENTED);
+		data.writeNewReferenceIndex(container);
+		if (isArray) {
+			data.writeInt1(SEGMENTED_ARRAY);
+			data.writeClassIndex(clsIdx);
+			data.writeInt1(genericArrayTypeCache.get(container.getClass()).dim);
+		} else {
+			data.writeInt1(SEGMENTED_COLLECTION);
+			data.writeClassIndex(clsIdx);
+		}
+		data.writeInt4(elements.length);
+		data.writeInt4(segCount);
+		// the index of all segments comes first so that the decoder can locate every
+		// segment without reading the ones before it
+		for (int i = 0; i < segCount; i++) {
+			data.writeInt4(Math.min(elements.length - i * segLen, segLen));
+			data.writeInt4(segments[i].getByteCount());
+		}
+		for (int i = 0; i < segCount; i++) {
+			writeEncodedData(data, segments[i]);
+			// each segment is released as soon as it has been copied
+			segments[i] = null;
+		}
+		return true;
+	}
+	
+	/**<p>
+	 * Copies all bytes of {@code encoded}, including its header and reference count, to
+	 * {@code data} buffer by buffer without consolidating them first.
+	 */
+	protected static void writeEncodedData(EncodeData data, EncodeData encoded) {
+		byte[] transfer = null;
+		for (ByteBuffer buf : encoded.getByteBuffers(true)) {
+			if (buf.hasArray()) {
+				data.writeBytes(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+				continue;
+			}
+			if (transfer == null) {
+				transfer = new byte[1024 * 8];
+			}
+			while (buf.hasRemaining()) {
+				int len = Math.min(transfer.length, buf.remaining());
+				buf.get(transfer, 0, len);
+				data.writeBytes(transfer, 0, len);
+			}
+		}
+	}
+	
+	/**<p>
+	 * Returns {@code true} if the collections written by {@code protocol} contain nothing
+	 * but their elements. Subclasses of the collection protocols may write additional
+	 * state and are therefore excluded.
+	 */
+	protected boolean isSegmentableCollection(ClassProtocol protocol) {
+		Class<?> protocolCls = protocol.getClass();
+		return protocolCls == CollectionProtocol.class || protocolCls == ArrayListProtocol.class;
+	}
+	
+	/**<p>
+	 * Encodes the elements from index {@code from} (inclusive) to {@code to} (exclusive)
+	 * into a new EncodeData with its own references.
+	 */
+	protected EncodeData encodeSegment(Object[] elements, int from, int to) {
+		EncodeData segment = createEncodeData();
+		for (int i = from; i < to; i++) {
+			writeChunk(segment, elements[i], false);
+		}
+		return segment;
+	}
+	
+	/**<p>
+	 * Encodes all segments of {@code elements}, in parallel if an
+	 * {@link #setEncodePool(ForkJoinPool) encode pool} is set. Each segment is checked for
+	 * references shared with the segments before it as soon as it has been encoded. At the
+	 * first shared reference {@code null} is returned and the remaining segments are not
+	 * encoded.
+	 */
+	protected EncodeData[] encodeSegments(Object container, Object[] elements, int segLen, int segCount) {
+		EncodeData[] segments = new EncodeData[segCount];
+		IdentityIntMap owners = new IdentityIntMap(segLen * 2);
+		owners.put(container, -1);
+		ForkJoinPool pool = encodePool;
+		if (pool == null) {
+			for (int i = 0; i < segCount; i++) {
+				segments[i] = encodeSegment(elements, i * segLen, Math.min(elements.length, (i + 1) * segLen));
+				if (hasSharedReferences(owners, segments[i], i)) {
+					return null;
+				}
+			}
+			return segments;
+		}
+		AtomicBoolean shared = new AtomicBoolean();
+		List<ForkJoinTask<EncodeData>> tasks = new ArrayList<>(segCount);
+		for (int i = 0; i < segCount; i++) {
+			int from = i * segLen;
+			int to = Math.min(elements.length, from + segLen);
+			tasks.add(pool.submit(() -> shared.get() ? null : encodeSegment(elements, from, to)));
+		}
+		for (int i = 0; i < segCount; i++) {
+			segments[i] = tasks.get(i).join();
+			if (hasSharedReferences(owners, segments[i], i)) {
+				// segments which have not been started yet are skipped
+				shared.set(true);
+				return null;
+			}
+		}
+		return segments;
+	}
+	
+	/**<p>
+	 * Returns {@code true} if the container is one of its own elements or if any element
+	 * other than a String or an enum literal occurs more than once. Checked before any
+	 * segment is encoded.
+	 */
+	protected boolean hasDuplicateElements(Object container, Object[] elements) {
+		IdentityIntMap seen = new IdentityIntMap(elements.length + 1);
+		seen.put(container, -1);
+		for (Object elem : elements) {
+			if (elem == null || elem instanceof String || elem instanceof Enum) {
+				continue;
+			}
+			if (seen.containsKey(elem)) {
+				return true;
+			}
+			seen.put(elem, 0);
+		}
+		return false;
+	}
+	
+	/**<p>
+	 * Adds all objects written by {@code segment} to {@code owners} and returns
+	 * {@code true} if the container or any object other than a String or an enum literal
+	 * was already written by another segment.
+	 */
+	protected boolean hasSharedReferences(IdentityIntMap owners, EncodeData segment, int segIdx) {
+		boolean[] shared = {false};
+		segment.refMap.forEachKey(obj -> {
+			if (shared[0] || obj instanceof String || obj instanceof Enum) {
+				return;
+			}
+			if (owners.containsKey(obj)) {
+				shared[0] = true;
+			} else {
+				owners.put(obj, segIdx);
+			}
+		});
+		return shared[0];
+	}
+	
 	public void writeChunk(EncodeData data, Object object, boolean isValueType) {
 		if (object == null) {
 			data.writeChunkType(ChunkType.NULL);
@@ -210,9 +1191,8 @@ public class Bytifier {
 		}
 		int protocolIdx = data.getProtocolIndexFor(object);
 		if (protocolIdx < 0) {
-			Class<?> arrayType = ProtocolUtil.getArrayElementType(object);
-			protocolIdx = data.getProtocolIndexFor(arrayType);
-			if (arrayType != null && protocolIdx >= 0) {
+			protocolIdx = getArrayElementProtocolIndexFor(object.getClass());
+			if (protocolIdx >= 0) {
 				writeGenericArray(data, protocolIdx, object);
 			} else {
 				beforeUnknownObjectWrite(data, object);
@@ -233,15 +1213,21 @@ public class Bytifier {
 		data.writeNewReferenceIndex(object);
 		data.writeClassIndex(protocolIdx);
 		// write the dimension of the generic array as 1 byte (max = 256)
-		int dim = ProtocolUtil.getArrayDimension(object);
+		int dim = genericArrayTypeCache.get(object.getClass()).dim;
 		data.writeInt1(dim);
-		// write the length of the generic array with 3 bytes (max = 2^48)
-		int len = Array.getLength(object);
-		data.writeInt3(len);
-		
-		for (int i = 0; i < len; i++) {
-			Object elem = Array.get(object, i);
-			writeChunk(data, elem, false);
+		// write the length of the generic array with 3 bytes (max = 2^24) or as a varint
+		if (object instanceof Object[]) {
+			Object[] arr = (Object[]) object;
+			writeLength(data, arr.length);
+			for (Object elem : arr) {
+				writeChunk(data, elem, false);
+			}
+		} else {
+			int len = Array.getLength(object);
+			writeLength(data, len);
+			for (int i = 0; i < len; i++) {
+				writeChunk(data, Array.get(object, i), false);
+			}
 		}
 	}
 	
@@ -258,6 +1244,14 @@ public class Bytifier {
 	}
 	
 	protected void writeUnknownObject(EncodeData data, Object object) {
+		int unknownClsIdx = data.getUnknownClassIndexFor(object.getClass());
+		if (unknownClsIdx >= 0) {
+			data.writeChunkType(ChunkType.DESCRIBED_UNKNOWN_OBJ);
+			data.writeNewReferenceIndex(object);
+			data.writeUnknownClassIndex(unknownClsIdx);
+			ucp.writeValues(this, data, object);
+			return;
+		}
 		data.writeChunkType(ChunkType.UNKNOWN_OBJ);
 		data.writeNewReferenceIndex(object);
 		
@@ -278,7 +1272,8 @@ public class Bytifier {
 	}
 	
 	protected void beforeUnknownObjectWrite(EncodeData data, Object object) {
-		switch (unknownReaction) {
+		UnknownObjectTypeReaction reaction = unknownReaction;
+		switch (reaction) {
 		case THROW_EXCEPTION:
 			throw new IllegalArgumentException(
 					"The type of the following object is not part of the protocol: "
@@ -303,7 +1298,24 @@ public class Bytifier {
 					"The selected "
 					+UnknownObjectTypeReaction.class.getSimpleName()
 					+" is not supported: "
-					+unknownReaction);
+					+reaction);
+		}
+	}
+	/**<p>
+	 * The protocol index of the innermost element type and the dimension of an array
+	 * type which is written as a {@link ChunkType#GENERIC_ARRAY}.
+	 */
+	protected static class GenericArrayType {
+		/** The type of all classes which are not written as generic arrays. */
+		protected static final GenericArrayType NONE = new GenericArrayType(-1, 0);
+		
+		protected final int elemProtocolIdx;
+		protected final int dim;
+		
+		protected GenericArrayType(int elemProtocolIdx, int dim) {
+			this.elemProtocolIdx = elemProtocolIdx;
+			this.dim = dim;
 		}
 	}
-}
\ No newline at end of file
+	
+}
@@ -67,6 +67,29 @@ public enum ChunkType {
 	 * {@link DecodeData#calculateByteCountFor(int) dynamic size}.
 	 */
 	UNKNOWN_ENUM	("Enum literal of unknown type"),
+	/**
+	 * Represents the first occurrence of an object of a type that is unknown to the protocol
+	 * and has already been described by an {@link #UNKNOWN_OBJ} chunk earlier in the same
+	 * stream. Instead of the class name and the field names the chunk contains only the
+	 * stream-local index of the unknown class, written with a
+	 * {@link DecodeData#calculateByteCountFor(int) dynamic size}, followed by the field
+	 * values in the order in which the field names were described.<p>
+	 * An unknown class is assigned the next index once its first UNKNOWN_OBJ chunk has
+	 * been completely written or read.
+	 */
+	DESCRIBED_UNKNOWN_OBJ	("Object of previously described unknown type"),
+	/**
+	 * Represents the root array or collection of an object graph whose elements were
+	 * encoded in independent segments. The chunk contains the kind of the container, its
+	 * class index (and dimension for arrays), the total number of elements and the number
+	 * of segments. These are followed by an index with the element count and the length
+	 * in bytes of each segment and then by the segments themselves. Each segment is a
+	 * complete encoded stream, including a header, with the elements of the segment.
+	 * References never point into another segment, so the segments can be located with
+	 * the index alone and decoded in parallel.<p>
+	 * Only written by a {@link Bytifier} with a {@link Bytifier#setSegmentLength(int) segment length}.
+	 */
+	SEGMENTED		("Segmented array or collection"),
 	;
 	/** An  {@link Collections#unmodifiableList(List) unmodifiable list} containing all literals of this {@link Enum}.*/
 	public static final List<ChunkType> ALL
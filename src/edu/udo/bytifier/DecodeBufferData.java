@@ -0,0 +1,290 @@
+package edu.udo.bytifier;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**<p>
+ * A {@link DecodeData} which reads from a {@link ByteBuffer} instead of a byte array.
+ * The buffer can be a heap buffer, a direct buffer or a {@link java.nio.MappedByteBuffer}.
+ * Bytes are read between the position and the limit of the given buffer; the buffer
+ * itself is not modified.
+ * <p>
+ * Subclasses can provide further data by overriding {@link #nextBuffer(int)} which is
+ * called whenever a read needs more bytes than remain in the current buffer.
+ * <p>
+ * A {@link BufferUnderflowException} is thrown if the data ends prematurely.
+ * 
+ * @see Bytifier#decode(ByteBuffer)
+ * @see DecodeMappedFileData
+ */
+public class DecodeBufferData extends DecodeData {
+	
+	/** A little endian view of the data. Its position is the read position. */
+	protected ByteBuffer buffer;
+	
+	public DecodeBufferData(ByteBuffer buffer) {
+		this(buffer, true);
+	}
+	
+	public DecodeBufferData(ByteBuffer buffer, boolean readDefaults) {
+		super();
+		this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		if (readDefaults) {
+			readHeader();
+		}
+	}
+	
+	/**<p>
+	 * Replaces the data with the bytes between the position and the limit of
+	 * {@code buffer} and reads the header so that this DecodeBufferData can be used to
+	 * decode another object graph. The reference map is reused if it is large enough.
+	 * 
+	 * @param buffer	the new data, starting with a header
+	 * @see Bytifier#decode(DecodeBufferData, ByteBuffer)
+	 */
+	public void reset(ByteBuffer buffer) {
+		clear();
+		this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		readHeader();
+	}
+	
+	/**<p>
+	 * Called when fewer than {@code byteCount} bytes remain in the current buffer. An
+	 * implementation may replace the {@link #buffer} with a buffer whose first bytes are
+	 * the unread bytes of the current buffer followed by at least enough bytes to
+	 * satisfy the read.
+	 * <p>
+	 * The default implementation returns {@code false}.
+	 * 
+	 * @param byteCount		the number of bytes needed; at most 8
+	 * @return				{@code true} if at least {@code byteCount} bytes remain now
+	 */
+	protected boolean nextBuffer(int byteCount) {
+		return false;
+	}
+	
+	protected void require(int byteCount) {
+		if (buffer.remaining() < byteCount && !nextBuffer(byteCount)) {
+			throw new BufferUnderflowException();
+		}
+	}
+	
+	/**<p>
+	 * Decodes {@code byteArr} through a {@link ByteBuffer#wrap(byte[]) wrapping} buffer.
+	 * 
+	 * @see #reset(ByteBuffer)
+	 */
+	@Override
+	public void reset(byte[] byteArr) {
+		reset(ByteBuffer.wrap(byteArr));
+	}
+	
+	@Override
+	public boolean hasMoreData() {
+		return buffer.hasRemaining() || nextBuffer(1);
+	}
+	
+	/**<p>
+	 * Returns the number of bytes remaining in the current buffer.
+	 */
+	@Override
+	public int getRemainingByteCount() {
+		return buffer.remaining();
+	}
+	
+	/**<p>
+	 * Returns a copy of the bytes remaining in the current buffer.
+	 */
+	@Override
+	public byte[] copyRemainingBytes() {
+		byte[] out = new byte[buffer.remaining()];
+		buffer.duplicate().get(out);
+		return out;
+	}
+	
+	@Override
+	public void readBytes(byte[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			require(1);
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(out, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	/**<p>
+	 * Returns a DecodeBufferData on a slice of the current buffer if it contains all
+	 * bytes of the embedded stream. Otherwise the bytes are copied to a new array.
+	 */
+	@Override
+	public DecodeData readEmbeddedData(int length) {
+		if (buffer.remaining() >= length) {
+			int position = buffer.position();
+			DecodeData embedded = new DecodeBufferData(buffer.slice(position, length));
+			buffer.position(position + length);
+			return embedded;
+		}
+		byte[] out = new byte[length];
+		readBytes(out, 0, length);
+		return new DecodeData(out);
+	}
+	
+	/**<p>
+	 * Decodes directly from the array of the current buffer if it has one and contains
+	 * all bytes of the string.
+	 */
+	@Override
+	public String readString(int byteCount, Charset charset) {
+		if (buffer.hasArray() && buffer.remaining() >= byteCount) {
+			int position = buffer.position();
+			String str = new String(buffer.array(), buffer.arrayOffset() + position, byteCount, charset);
+			buffer.position(position + byteCount);
+			return str;
+		}
+		byte[] out = new byte[byteCount];
+		readBytes(out, 0, byteCount);
+		return new String(out, charset);
+	}
+	
+	@Override
+	public boolean readBoolean() {
+		require(1);
+		return buffer.get() == BOOLEAN_TRUE;
+	}
+	
+	@Override
+	public byte readInt1() {
+		require(1);
+		return buffer.get();
+	}
+	
+	@Override
+	public short readInt2() {
+		require(2);
+		return buffer.getShort();
+	}
+	
+	@Override
+	public int readInt3() {
+		require(3);
+		int b1 = buffer.get() & 0xFF;
+		int b23 = buffer.getShort() & 0xFFFF;
+		return (b1 | b23 << 8);
+	}
+	
+	@Override
+	public int readInt4() {
+		require(4);
+		return buffer.getInt();
+	}
+	
+	@Override
+	public long readInt8() {
+		require(8);
+		return buffer.getLong();
+	}
+	
+	/**<p>
+	 * Returns how many elements of {@code elemSize} bytes, but no more than {@code length},
+	 * remain in the current buffer. At least one element is made available.
+	 */
+	protected int remainingElementCount(int elemSize, int length) {
+		require(elemSize);
+		return Math.min(length, buffer.remaining() / elemSize);
+	}
+	
+	protected void skip(int byteCount) {
+		buffer.position(buffer.position() + byteCount);
+	}
+	
+	@Override
+	public void readBooleans(boolean[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(1, length);
+			ByteBuffer buf = buffer;
+			for (int i = 0; i < count; i++) {
+				out[offset++] = buf.get() == BOOLEAN_TRUE;
+			}
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readShorts(short[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Short.BYTES, length);
+			buffer.asShortBuffer().get(out, offset, count);
+			skip(count * Short.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readChars(char[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Character.BYTES, length);
+			buffer.asCharBuffer().get(out, offset, count);
+			skip(count * Character.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readInts(int[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Integer.BYTES, length);
+			buffer.asIntBuffer().get(out, offset, count);
+			skip(count * Integer.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readLongs(long[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Long.BYTES, length);
+			buffer.asLongBuffer().get(out, offset, count);
+			skip(count * Long.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readFloats(float[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Float.BYTES, length);
+			buffer.asFloatBuffer().get(out, offset, count);
+			skip(count * Float.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void readDoubles(double[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = remainingElementCount(Double.BYTES, length);
+			buffer.asDoubleBuffer().get(out, offset, count);
+			skip(count * Double.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+}
@@ -1,7 +1,11 @@
 package edu.udo.bytifier;
 
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Objects;
 
 public class DecodeData {
 	
@@ -11,12 +15,38 @@ public class DecodeData {
 	public static final int MAX_INT_3 = (1 << (8 * 3));
 	public static final int MAX_INT_4 = Integer.MAX_VALUE;
 	
-	protected final byte[] bytes;
-	protected final Object[] refMap;
-	protected final int clsIdxBSize;
-	protected final int protoID;
+	protected static final byte[] EMPTY = new byte[0];
+	
+	protected byte[] bytes;
+	/**
+	 * The end of the data within {@link #bytes} (exclusive). Equal to the length of the
+	 * array unless this DecodeData reads an {@link #readEmbeddedData(int) embedded} stream.
+	 */
+	protected int end;
+	protected Object[] refMap;
+	protected int clsIdxBSize;
+	protected int protoID;
+	/**
+	 * The reference count read from the header. This is only a hint for the initial size
+	 * of the {@link #refMap}; it is zero if the data was encoded by an {@link EncodeStreamData}.
+	 */
+	protected int expectedRefCount;
 	protected int pos;
 	protected int lastRefIdx;
+	/** Maps each unknown class described in this stream to its stream-local index. */
+	protected final IdentityIntMap unknownClsMap = new IdentityIntMap(8);
+	/** The schemas of the described unknown classes by their stream-local index. */
+	protected Object[] unknownClsSchemas = new Object[8];
+	
+	/**<p>
+	 * Constructs a DecodeData without any backing data. The instance must be
+	 * {@link #reset(byte[]) reset} before it can be used.
+	 * 
+	 * @see Bytifier#createDecodeData()
+	 */
+	public DecodeData() {
+		this(EMPTY, false);
+	}
 	
 	public DecodeData(byte[] byteArr) {
 		this(byteArr, true);
@@ -24,21 +54,68 @@ public class DecodeData {
 	
 	public DecodeData(byte[] byteArr, boolean readDefaults) {
 		bytes = byteArr;
+		end = byteArr.length;
 		pos = 0;
 		if (readDefaults) {
-			protoID = readInt4();
-			clsIdxBSize = readInt1();
-			
-			int refCount = readInt4();
-			if (refCount == 0) {
+			readHeader();
+		}
+	}
+	
+	protected void readHeader() {
+		protoID = readInt4();
+		clsIdxBSize = readInt1();
+		
+		expectedRefCount = readInt4();
+		if (expectedRefCount > 0 && (refMap == null || refMap.length < expectedRefCount)) {
+			refMap = new Object[expectedRefCount];
+		}
+	}
+	
+	/**<p>
+	 * Replaces the backing data with {@code byteArr} and reads the header from it
+	 * so that this DecodeData can be used to decode another object graph. The
+	 * reference map is reused if it is large enough.
+	 * 
+	 * @param byteArr	the new backing data, starting with a header
+	 * @see Bytifier#decode(DecodeData, byte[])
+	 */
+	public void reset(byte[] byteArr) {
+		clear();
+		bytes = byteArr;
+		end = byteArr.length;
+		readHeader();
+	}
+	
+	/**<p>
+	 * Releases the backing data and all object references read so far. The
+	 * reference map itself is kept so that it can be reused by
+	 * {@link #reset(byte[])}, unless it is larger than
+	 * {@link IdentityIntMap#MAX_RETAINED_CAPACITY}.
+	 */
+	public void clear() {
+		clearReferences();
+		bytes = EMPTY;
+		end = 0;
+		pos = 0;
+	}
+	
+	/**<p>
+	 * Releases all object references and unknown class schemas read so far while
+	 * keeping the backing data and the read position.
+	 */
+	protected void clearReferences() {
+		if (refMap != null) {
+			if (refMap.length > IdentityIntMap.MAX_RETAINED_CAPACITY) {
+				// do not keep a reference map which was only needed for a large object graph
 				refMap = null;
 			} else {
-				refMap = new Object[refCount];
+				Arrays.fill(refMap, 0, lastRefIdx, null);
 			}
-		} else {
-			protoID = 0;
-			clsIdxBSize = 0;
-			refMap = null;
+		}
+		lastRefIdx = 0;
+		if (!unknownClsMap.isEmpty()) {
+			Arrays.fill(unknownClsSchemas, 0, unknownClsMap.size(), null);
+			unknownClsMap.clear();
 		}
 	}
 	
@@ -126,21 +203,22 @@ public class DecodeData {
 	 * @see #copyRemainingBytes()
 	 */
 	public boolean hasMoreData() {
-		return pos < bytes.length;
+		return pos < end;
 	}
 	
 	/**<p>
 	 * Returns the number of bytes that are remaining to be read in the backing data.
 	 * <p>
 	 * The returned value is the difference between the total size of the backing data
-	 * and the current read position. The returned value is never negative.
+	 * and the current read position. The returned value is only negative if more bytes
+	 * were read from an {@link #readEmbeddedData(int) embedded} stream than it contains.
 	 * 
 	 * @return	The number of bytes remaining to be read
 	 * @see #hasMoreData()
 	 * @see #copyRemainingBytes()
 	 */
 	public int getRemainingByteCount() {
-		return bytes.length - pos;
+		return end - pos;
 	}
 	
 	/**<p>
@@ -153,13 +231,76 @@ public class DecodeData {
 	 * @see #getRemainingByteCount()
 	 */
 	public byte[] copyRemainingBytes() {
-		return Arrays.copyOfRange(bytes, pos, bytes.length);
+		return Arrays.copyOfRange(bytes, pos, Math.max(pos, end));
 	}
 	
+	/**<p>
+	 * Adds {@code object} as the next object reference. The reference map grows if the
+	 * header did not announce enough references, for example because the data was
+	 * written by an {@link EncodeStreamData} which can not know the reference count up
+	 * front.
+	 */
 	public void pushObjectReference(Object object) {
+		if (refMap == null || lastRefIdx == refMap.length) {
+			growReferenceMap();
+		}
 		refMap[lastRefIdx++] = object;
 	}
 	
+	/**<p>
+	 * Returns {@code true} if the unknown class {@code cls} has already been described in
+	 * this stream and has a stream-local index.
+	 * 
+	 * @see ChunkType#DESCRIBED_UNKNOWN_OBJ
+	 */
+	public boolean hasUnknownClass(Class<?> cls) {
+		return unknownClsMap.containsKey(cls);
+	}
+	
+	/**<p>
+	 * Assigns the next stream-local index to {@code cls} and remembers {@code schema} for
+	 * it unless {@code cls} already has an index. Must be called after an unknown object
+	 * of class {@code cls} and all of its members have been read.
+	 * 
+	 * @param cls		an unknown class
+	 * @param schema	describes how objects of class {@code cls} are read
+	 * @see EncodeData#addUnknownClass(Class)
+	 */
+	public void addUnknownClass(Class<?> cls, Object schema) {
+		if (unknownClsMap.containsKey(cls)) {
+			return;
+		}
+		int idx = unknownClsMap.size();
+		if (idx == unknownClsSchemas.length) {
+			unknownClsSchemas = Arrays.copyOf(unknownClsSchemas, idx * 2);
+		}
+		unknownClsSchemas[idx] = schema;
+		unknownClsMap.put(cls, idx);
+	}
+	
+	/**<p>
+	 * Reads the stream-local index of an unknown class and returns the schema which was
+	 * {@link #addUnknownClass(Class, Object) added} for it.
+	 * 
+	 * @throws IllegalStateException	if no unknown class has the index that was read
+	 */
+	public Object readUnknownClassSchema() {
+		int count = unknownClsMap.size();
+		int idx = readIntForSize(count);
+		if (idx >= count) {
+			throw new IllegalStateException("Unknown class index="+idx+"; count="+count);
+		}
+		return unknownClsSchemas[idx];
+	}
+	
+	protected void growReferenceMap() {
+		if (refMap == null) {
+			refMap = new Object[16];
+		} else {
+			refMap = Arrays.copyOf(refMap, Math.max(16, refMap.length * 2));
+		}
+	}
+	
 	/**<p>
 	 * TODO Reads and returns the index of an object reference. The returned value is
 	 * always a non-negative number. This method does not guarantee that the returned
@@ -190,8 +331,8 @@ public class DecodeData {
 	 */
 	public int readClassIndex() {
 		switch (clsIdxBSize) {
-		case 1: return readInt1();
-		case 2: return readInt2();
+		case 1: return readInt1() & 0xFF;
+		case 2: return readInt2() & 0xFFFF;
 		case 3: return readInt3();
 		case 4: return readInt4();
 		default: throw new IllegalStateException("clsSize="+clsIdxBSize);
@@ -225,14 +366,72 @@ public class DecodeData {
 	public int readIntForSize(int maxValue) {
 		int byteCount = DecodeData.calculateByteCountFor(maxValue);
 		switch (byteCount) {
-		case 1: return readInt1();
-		case 2: return readInt2();
+		case 1: return readInt1() & 0xFF;
+		case 2: return readInt2() & 0xFFFF;
 		case 3: return readInt3();
 		case 4: return readInt4();
 		default: throw new IllegalStateException("byteCount="+byteCount);
 		}
 	}
 	
+	/**<p>
+	 * Reads an unsigned LEB128 varint of up to 5 bytes.
+	 * 
+	 * @return the java int read from the backing data
+	 * @throws IllegalStateException	if the varint is longer than 5 bytes
+	 * @see IEncodeData#writeVarInt(int)
+	 */
+	public int readVarInt() {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readInt1();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed varint");
+	}
+	
+	/**<p>
+	 * Reads an unsigned LEB128 varint of up to 10 bytes.
+	 * 
+	 * @return the java long read from the backing data
+	 * @throws IllegalStateException	if the varint is longer than 10 bytes
+	 * @see IEncodeData#writeVarLong(long)
+	 */
+	public long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = readInt1();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed varint");
+	}
+	
+	/**<p>
+	 * Reads a zigzag encoded varint of up to 5 bytes.
+	 * 
+	 * @see IEncodeData#writeSignedVarInt(int)
+	 */
+	public int readSignedVarInt() {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**<p>
+	 * Reads a zigzag encoded varint of up to 10 bytes.
+	 * 
+	 * @see IEncodeData#writeSignedVarLong(long)
+	 */
+	public long readSignedVarLong() {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
 	/**<p>
 	 * Reads as many bytes as the {@link Array#getLength(Object) length} of
 	 * {@code out} starting from the current read position and writes them to
@@ -258,10 +457,48 @@ public class DecodeData {
 	 * many bytes.
 	 */
 	public void readBytes(byte[] out, int offset, int length) {
+		Objects.checkFromIndexSize(pos, length, end);
 		System.arraycopy(bytes, pos, out, offset, length);
 		pos += length;
 	}
 	
+	/**<p>
+	 * Returns a new DecodeData for the complete encoded stream, including its header,
+	 * which is embedded in the next {@code length} bytes. The returned instance has its
+	 * own references and can be used by another thread.
+	 * <p>
+	 * The embedded stream shares the backing array; no bytes are copied. It ends after
+	 * {@code length} bytes. Bulk reads fail at its end, but single values are read without
+	 * a bounds check, so whether all bytes and no more have been read must be checked with
+	 * {@link #getRemainingByteCount()} afterwards.
+	 * <p>
+	 * The read position will be advanced by {@code length} bytes.
+	 * 
+	 * @see ChunkType#SEGMENTED
+	 */
+	public DecodeData readEmbeddedData(int length) {
+		Objects.checkFromIndexSize(pos, length, end);
+		DecodeData embedded = new DecodeData(bytes, false);
+		embedded.pos = pos;
+		embedded.end = pos + length;
+		embedded.readHeader();
+		pos += length;
+		return embedded;
+	}
+	
+	/**<p>
+	 * Decodes the next {@code byteCount} bytes with {@code charset} into a String. The
+	 * bytes are decoded directly from the backing array.
+	 * <p>
+	 * The read position will be advanced by {@code byteCount} bytes.
+	 */
+	public String readString(int byteCount, Charset charset) {
+		Objects.checkFromIndexSize(pos, byteCount, end);
+		String str = new String(bytes, pos, byteCount, charset);
+		pos += byteCount;
+		return str;
+	}
+	
 	/**
 	 * Reads a single boolean value from the backing byte array
 	 * and returns it. The read position will be advanced by one byte.
@@ -362,6 +599,104 @@ public class DecodeData {
 		return Double.longBitsToDouble(bits);
 	}
 	
+	/**<p>
+	 * Returns a little endian view of the next {@code byteCount} bytes of the backing
+	 * data and advances the read position by {@code byteCount} bytes.
+	 * <p>
+	 * An {@link IndexOutOfBoundsException} is thrown if fewer than {@code byteCount}
+	 * bytes are remaining.
+	 */
+	protected ByteBuffer viewOfBytes(int byteCount) {
+		ByteBuffer view = ByteBuffer.wrap(bytes, pos, byteCount).order(ByteOrder.LITTLE_ENDIAN);
+		pos += byteCount;
+		return view;
+	}
+	
+	/**<p>
+	 * Reads {@code length} boolean values and writes them to {@code out} starting
+	 * at index {@code offset}. The result is the same as calling {@link #readBoolean()}
+	 * {@code length} times.
+	 * <p>
+	 * The read position will be advanced by {@code length} bytes.
+	 */
+	public void readBooleans(boolean[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		Objects.checkFromIndexSize(pos, length, end);
+		byte[] bytes = this.bytes;
+		int pos = this.pos;
+		for (int i = 0; i < length; i++) {
+			out[offset + i] = bytes[pos + i] == BOOLEAN_TRUE;
+		}
+		this.pos = pos + length;
+	}
+	
+	/**<p>
+	 * Reads {@code length} 16bit integer numbers and writes them to {@code out}
+	 * starting at index {@code offset}. The result is the same as calling
+	 * {@link #readInt2()} {@code length} times but all values are copied at once.
+	 * <p>
+	 * The read position will be advanced by two bytes per value.
+	 */
+	public void readShorts(short[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Short.BYTES)).asShortBuffer().get(out, offset, length);
+	}
+	
+	/**<p>
+	 * Reads {@code length} characters encoded as 16bit integer numbers and writes
+	 * them to {@code out} starting at index {@code offset}.
+	 * <p>
+	 * The read position will be advanced by two bytes per character.
+	 * 
+	 * @see #readShorts(short[], int, int)
+	 */
+	public void readChars(char[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Character.BYTES)).asCharBuffer().get(out, offset, length);
+	}
+	
+	/**<p>
+	 * Reads {@code length} 32bit integer numbers and writes them to {@code out}
+	 * starting at index {@code offset}. The result is the same as calling
+	 * {@link #readInt4()} {@code length} times but all values are copied at once.
+	 * <p>
+	 * The read position will be advanced by four bytes per value.
+	 */
+	public void readInts(int[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Integer.BYTES)).asIntBuffer().get(out, offset, length);
+	}
+	
+	/**<p>
+	 * Reads {@code length} 64bit integer numbers and writes them to {@code out}
+	 * starting at index {@code offset}. The result is the same as calling
+	 * {@link #readInt8()} {@code length} times but all values are copied at once.
+	 * <p>
+	 * The read position will be advanced by eight bytes per value.
+	 */
+	public void readLongs(long[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Long.BYTES)).asLongBuffer().get(out, offset, length);
+	}
+	
+	/**<p>
+	 * Reads {@code length} 32bit floating point numbers and writes them to {@code out}
+	 * starting at index {@code offset}. The result is the same as calling
+	 * {@link #readFloat4()} {@code length} times but all values are copied at once.
+	 * <p>
+	 * The read position will be advanced by four bytes per value.
+	 */
+	public void readFloats(float[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Float.BYTES)).asFloatBuffer().get(out, offset, length);
+	}
+	
+	/**<p>
+	 * Reads {@code length} 64bit floating point numbers and writes them to {@code out}
+	 * starting at index {@code offset}. The result is the same as calling
+	 * {@link #readFloat8()} {@code length} times but all values are copied at once.
+	 * <p>
+	 * The read position will be advanced by eight bytes per value.
+	 */
+	public void readDoubles(double[] out, int offset, int length) {
+		viewOfBytes(Math.multiplyExact(length, Double.BYTES)).asDoubleBuffer().get(out, offset, length);
+	}
+	
 	/**
 	 * Reads and returns a {@link ChunkType}. This method will never return a
 	 * {@code null} reference. Unexpected data will result in the
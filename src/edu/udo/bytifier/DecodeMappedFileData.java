@@ -0,0 +1,106 @@
+package edu.udo.bytifier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**<p>
+ * A {@link DecodeBufferData} which reads a file through read-only memory mapped windows.
+ * The bytes are read from the page cache of the operating system directly and are never
+ * copied to the heap as a whole. Files larger than a single window are mapped window by
+ * window; each window starts at the first unread byte so values never straddle windows.
+ * <p>
+ * The file channel is neither closed by the DecodeMappedFileData nor by the Bytifier.
+ * Once it is {@link #reset(ByteBuffer) reset} to decode other data, a DecodeMappedFileData
+ * no longer reads from the file.
+ * 
+ * @see Bytifier#decodeMapped(java.nio.file.Path)
+ */
+public class DecodeMappedFileData extends DecodeBufferData {
+	
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+	
+	protected final FileChannel channel;
+	protected final long fileSize;
+	protected final int windowSize;
+	/** The position of the current window within the file. */
+	protected long windowStart;
+	/** Whether the file has been replaced by other data; it is never mapped again. */
+	protected boolean detached;
+	
+	public DecodeMappedFileData(FileChannel channel) throws IOException {
+		this(channel, 0, DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**<p>
+	 * Maps the file from {@code position} onwards and reads the header.
+	 * 
+	 * @param channel		a channel of the file opened for reading
+	 * @param position		the position of the header within the file
+	 * @param windowSize	the maximum number of bytes mapped at once; at least 16
+	 * @throws IOException	if the file can not be mapped
+	 */
+	public DecodeMappedFileData(FileChannel channel, long position, int windowSize) throws IOException {
+		super(map(channel, position, windowSize), false);
+		this.channel = channel;
+		fileSize = channel.size();
+		this.windowSize = Math.max(windowSize, 16);
+		windowStart = position;
+		try {
+			readHeader();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	protected static ByteBuffer map(FileChannel channel, long position, int windowSize) throws IOException {
+		long size = Math.min(Math.max(windowSize, 16), channel.size() - position);
+		return channel.map(MapMode.READ_ONLY, position, Math.max(size, 0));
+	}
+	
+	/**<p>
+	 * Detaches this DecodeMappedFileData from its file and decodes {@code buffer} instead.
+	 */
+	@Override
+	public void reset(ByteBuffer buffer) {
+		detached = true;
+		super.reset(buffer);
+	}
+	
+	/**<p>
+	 * Maps the next window of the file starting at the first unread byte.
+	 */
+	@Override
+	protected boolean nextBuffer(int byteCount) {
+		if (detached) {
+			return false;
+		}
+		long readPos = windowStart + buffer.position();
+		if (fileSize - readPos < byteCount) {
+			return false;
+		}
+		try {
+			buffer = map(channel, readPos, windowSize).order(ByteOrder.LITTLE_ENDIAN);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		windowStart = readPos;
+		return true;
+	}
+	
+	/**<p>
+	 * Returns the number of unread bytes in the file, capped at {@link Integer#MAX_VALUE}.
+	 */
+	@Override
+	public int getRemainingByteCount() {
+		if (detached) {
+			return super.getRemainingByteCount();
+		}
+		long remaining = fileSize - windowStart - buffer.position();
+		return (int) Math.min(Integer.MAX_VALUE, remaining);
+	}
+	
+}
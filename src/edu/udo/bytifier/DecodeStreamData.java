@@ -1,183 +1,405 @@
 package edu.udo.bytifier;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
 
-public class DecodeStreamData {
+/**<p>
+ * A {@link DecodeData} which reads from an {@link InputStream} or a blocking
+ * {@link ReadableByteChannel} through an internal buffer of a fixed size. The buffer
+ * is refilled whenever a read needs more bytes than are currently buffered, so an
+ * encoded object graph of any size can be decoded without loading it into memory
+ * completely.
+ * <p>
+ * Reads from the source may return fewer bytes than requested; the source is read
+ * repeatedly until enough bytes are buffered. By default bytes are read ahead to fill
+ * the buffer, so the source may be read past the end of the encoded object graph. The
+ * bytes read ahead stay buffered; several object graphs written back to back to the
+ * same source are decoded by calling {@link #readNextHeader()} before each further
+ * {@link Bytifier#decode(DecodeStreamData) decode}. Without read ahead, the source is
+ * never read past the end of the object graph, at the cost of more and smaller reads.
+ * <p>
+ * The methods of a DecodeData can not throw checked exceptions. An IOException thrown
+ * by the source, or an {@link EOFException} if the source ends prematurely, is wrapped
+ * in an {@link UncheckedIOException}. {@link Bytifier#decode(InputStream)} and
+ * {@link Bytifier#decode(ReadableByteChannel)} unwrap these exceptions.
+ * <p>
+ * The source is never closed by a DecodeStreamData. Once it is {@link #clear() cleared} or
+ * {@link #reset(byte[]) reset} to decode a byte array, a DecodeStreamData is detached from
+ * its source and never reads from it again.
+ * 
+ * @see Bytifier#decode(InputStream)
+ * @see Bytifier#decode(ReadableByteChannel)
+ */
+public class DecodeStreamData extends DecodeData {
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 8;
+	/** The smallest supported buffer size. Large enough for any single primitive value. */
+	public static final int MIN_BUFFER_SIZE = 16;
 	
-	protected final byte[] bytes = new byte[8];
 	protected final InputStream in;
-	protected final Object[] refMap;
-	protected final int clsSize;
-	protected final int protoID;
-	protected int lastRefIdx;
+	protected final ReadableByteChannel channel;
+	/** If {@code false} the source is never read past the bytes which are needed right now. */
+	protected final boolean readAhead;
+	/** The number of valid bytes within the buffer. Bytes are read from {@link #pos} up to limit. */
+	protected int limit;
+	/** Whether the source has been replaced by a byte array or released; it is never read again. */
+	protected boolean detached;
+	
+	public DecodeStreamData(InputStream in) throws IOException {
+		this(in, DEFAULT_BUFFER_SIZE, true);
+	}
+	
+	public DecodeStreamData(InputStream in, int bufferSize, boolean readDefaults) throws IOException {
+		this(in, null, bufferSize, readDefaults, true);
+	}
 	
-	public DecodeStreamData(byte[] byteArr) throws IOException {
-		this(byteArr, true);
+	public DecodeStreamData(InputStream in, int bufferSize, boolean readDefaults, boolean readAhead) throws IOException {
+		this(in, null, bufferSize, readDefaults, readAhead);
 	}
 	
-	public DecodeStreamData(byte[] byteArr, boolean readDefaults) throws IOException {
-		in = new ByteArrayInputStream(byteArr);
+	public DecodeStreamData(ReadableByteChannel channel) throws IOException {
+		this(channel, DEFAULT_BUFFER_SIZE, true);
+	}
+	
+	public DecodeStreamData(ReadableByteChannel channel, int bufferSize, boolean readDefaults) throws IOException {
+		this(null, channel, bufferSize, readDefaults, true);
+	}
+	
+	public DecodeStreamData(ReadableByteChannel channel, int bufferSize, boolean readDefaults, boolean readAhead) throws IOException {
+		this(null, channel, bufferSize, readDefaults, readAhead);
+	}
+	
+	protected DecodeStreamData(InputStream in, ReadableByteChannel channel, int bufferSize, boolean readDefaults, boolean readAhead) throws IOException {
+		super();
+		if (in == null && channel == null) {
+			throw new IllegalArgumentException("source == null");
+		}
+		this.in = in;
+		this.channel = channel;
+		this.readAhead = readAhead;
+		bytes = new byte[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+		// the buffered bytes end at the limit; the inherited bounds checks use the whole buffer
+		end = bytes.length;
+		limit = 0;
 		if (readDefaults) {
-			protoID = readInt4();
-			clsSize = readInt1();
-			
-			int refCount = readInt4();
-			if (refCount == 0) {
-				refMap = null;
-			} else {
-				refMap = new Object[refCount];
+			try {
+				readHeader();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+	
+	/**<p>
+	 * Releases all object references of the previous object graph and reads the header
+	 * of the next object graph. Bytes which were read ahead while decoding the previous
+	 * object graph are kept and read first.
+	 * 
+	 * @throws IOException	if the source throws an IOException or ends before the header
+	 * @see Bytifier#decode(DecodeStreamData)
+	 */
+	public void readNextHeader() throws IOException {
+		clearReferences();
+		try {
+			readHeader();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**<p>
+	 * Reads up to {@code length} bytes from the source into {@code dst}.
+	 * 
+	 * @return	the number of bytes read or {@code -1} if the source has ended
+	 */
+	protected int readFromSource(byte[] dst, int offset, int length) throws IOException {
+		if (detached) {
+			return -1;
+		}
+		if (in != null) {
+			return in.read(dst, offset, length);
+		}
+		return channel.read(ByteBuffer.wrap(dst, offset, length));
+	}
+	
+	/**<p>
+	 * Moves the unread bytes to the beginning of the buffer and reads from the source
+	 * until at least {@code byteCount} bytes are buffered or the source has ended.
+	 * 
+	 * @param byteCount		the number of bytes needed; not larger than the buffer
+	 * @return				{@code true} if at least {@code byteCount} bytes are buffered
+	 */
+	protected boolean fill(int byteCount) {
+		if (detached) {
+			// the buffer may be an array of the caller which must not be modified
+			return false;
+		}
+		int remaining = limit - pos;
+		System.arraycopy(bytes, pos, bytes, 0, remaining);
+		pos = 0;
+		limit = remaining;
+		try {
+			while (limit < byteCount) {
+				int read = readFromSource(bytes, limit, (readAhead ? bytes.length : byteCount) - limit);
+				if (read < 0) {
+					return false;
+				}
+				limit += read;
 			}
-		} else {
-			protoID = 0;
-			clsSize = 0;
-			refMap = null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
+		return true;
 	}
 	
-	public int getProtocolIdentificationNumber() {
-		return protoID;
+	/**<p>
+	 * Makes sure that at least {@code byteCount} bytes are buffered.
+	 * 
+	 * @throws UncheckedIOException		wrapping an {@link EOFException} if the source ends before
+	 */
+	protected void require(int byteCount) {
+		if (limit - pos < byteCount && !fill(byteCount)) {
+			throw new UncheckedIOException(new EOFException(
+					"Unexpected end of input; needed="+byteCount+"; available="+(limit - pos)));
+		}
 	}
 	
-	public boolean hasMoreData() throws IOException {
-		return in.available() > 0;
-//		return pos < bytes.length;
+	/**<p>
+	 * Returns how many elements of {@code elemSize} bytes, but no more than {@code length},
+	 * are buffered. The buffer is refilled first if not even a single element is buffered.
+	 */
+	protected int bufferedElementCount(int elemSize, int length) {
+		if (limit - pos < elemSize) {
+			require(Math.min(bytes.length, Math.multiplyExact(elemSize, length)));
+		}
+		return Math.min(length, (limit - pos) / elemSize);
 	}
 	
-	public int getRemainingBytes() throws IOException {
-		return in.available();
-//		return bytes.length - pos;
+	/**<p>
+	 * Detaches this DecodeStreamData from its source and reads the header from
+	 * {@code byteArr}, which is decoded instead. Bytes which were buffered from the source
+	 * are discarded. The reference map is reused if it is large enough.
+	 * 
+	 * @param byteArr	the new backing data, starting with a header
+	 * @see Bytifier#decode(DecodeData, byte[])
+	 */
+	@Override
+	public void reset(byte[] byteArr) {
+		clear();
+		bytes = byteArr;
+		end = byteArr.length;
+		limit = byteArr.length;
+		readHeader();
 	}
 	
-	protected byte[] getBytes() throws IOException {
-		byte[] bytes = new byte[in.available()];
-		in.read(bytes, 0, bytes.length);
-		return bytes;
-//		return Arrays.copyOfRange(bytes, pos, bytes.length);
+	/**<p>
+	 * Releases the buffer and all object references read so far and detaches this
+	 * DecodeStreamData from its source.
+	 */
+	@Override
+	public void clear() {
+		detached = true;
+		super.clear();
+		limit = 0;
 	}
 	
-	public void setObjectReference(Object object) {
-		refMap[lastRefIdx++] = object;
+	/**<p>
+	 * Returns {@code true} if there are buffered bytes which have not been read yet. The
+	 * source is never read by this method, so more bytes might be available from the
+	 * source even if {@code false} is returned.
+	 */
+	@Override
+	public boolean hasMoreData() {
+		return pos < limit;
 	}
 	
-	public Object readObjectReference() throws IOException {
-		int refIdx = readReference();
-		return refMap[refIdx];
+	/**<p>
+	 * Returns the number of buffered bytes which have not been read yet. More bytes might
+	 * be available from the source.
+	 */
+	@Override
+	public int getRemainingByteCount() {
+		return limit - pos;
 	}
 	
-	public int readClassIndex() throws IOException {
-		switch (clsSize) {
-		case 1: return readInt1();
-		case 2: return readInt2();
-		case 3: return readInt3();
-		case 4: return readInt4();
-		default: throw new IllegalStateException("clsSize="+clsSize);
+	/**<p>
+	 * Returns a copy of the buffered bytes which have not been read yet. More bytes might
+	 * be available from the source.
+	 */
+	@Override
+	public byte[] copyRemainingBytes() {
+		return Arrays.copyOfRange(bytes, pos, limit);
+	}
+	
+	@Override
+	public void readBytes(byte[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		int buffered = Math.min(length, limit - pos);
+		System.arraycopy(bytes, pos, out, offset, buffered);
+		pos += buffered;
+		offset += buffered;
+		length -= buffered;
+		if (length >= bytes.length) {
+			// large reads bypass the buffer
+			try {
+				while (length > 0) {
+					int read = readFromSource(out, offset, length);
+					if (read < 0) {
+						throw new EOFException("Unexpected end of input; needed="+length);
+					}
+					offset += read;
+					length -= read;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else if (length > 0) {
+			require(length);
+			System.arraycopy(bytes, pos, out, offset, length);
+			pos += length;
 		}
 	}
 	
-	protected int readReference() throws IOException {
-		return readIntForSize(lastRefIdx);
+	/**<p>
+	 * Reads the embedded stream into a new array since the buffered bytes are
+	 * overwritten by later reads.
+	 */
+	@Override
+	public DecodeData readEmbeddedData(int length) {
+		byte[] out = new byte[length];
+		readBytes(out, 0, length);
+		return new DecodeData(out);
 	}
 	
-	public int readIntForSize(int maxValue) throws IOException {
-		int byteCount = DecodeData.calculateByteCountFor(maxValue);
-		switch (byteCount) {
-		case 1: return readInt1();
-		case 2: return readInt2();
-		case 3: return readInt3();
-		case 4: return readInt4();
-		default: throw new IllegalStateException("byteCount="+byteCount);
+	@Override
+	public String readString(int byteCount, Charset charset) {
+		if (byteCount > bytes.length) {
+			byte[] out = new byte[byteCount];
+			readBytes(out, 0, byteCount);
+			return new String(out, charset);
 		}
+		require(byteCount);
+		return super.readString(byteCount, charset);
 	}
 	
-	public void readBytes(byte[] out) throws IOException {
-		readBytes(out, 0, out.length);
+	@Override
+	public boolean readBoolean() {
+		require(1);
+		return super.readBoolean();
 	}
 	
-	public void readBytes(byte[] out, int offset, int length) throws IOException {
-		int count = in.read(out, offset, length);
-		if (count == -1) {
-			throw new IOException("End of Stream");
-		}
-		
+	@Override
+	public byte readInt1() {
+		require(1);
+		return super.readInt1();
 	}
 	
-	public boolean readBoolean() throws IOException {
-		return readInt1() == DecodeData.BOOLEAN_TRUE;
+	@Override
+	public short readInt2() {
+		require(2);
+		return super.readInt2();
 	}
 	
-	public byte readInt1() throws IOException {
-		return (byte) in.read();
+	@Override
+	public int readInt3() {
+		require(3);
+		return super.readInt3();
 	}
 	
-	public short readInt2() throws IOException {
-		in.read(bytes, 0, 2);
-		int pos = 0;
-		int b1 = bytes[pos++] & 0xFF;
-		int b2 = bytes[pos++] & 0xFF;
-		return (short) (b1 | b2 << 8);
+	@Override
+	public int readInt4() {
+		require(4);
+		return super.readInt4();
 	}
 	
-	public int readInt3() throws IOException {
-		in.read(bytes, 0, 3);
-		int pos = 0;
-		int b1 = bytes[pos++] & 0xFF;
-		int b2 = bytes[pos++] & 0xFF;
-		int b3 = bytes[pos++] & 0xFF;
-		return (b1 | b2 << 8 | b3 << 16);
+	@Override
+	public long readInt8() {
+		require(8);
+		return super.readInt8();
 	}
 	
-	public int readInt4() throws IOException {
-		in.read(bytes, 0, 4);
-		int pos = 0;
-		int b1 = bytes[pos++] & 0xFF;
-		int b2 = bytes[pos++] & 0xFF;
-		int b3 = bytes[pos++] & 0xFF;
-		int b4 = bytes[pos++] & 0xFF;
-		return (b1 | b2 << 8 | b3 << 16 | b4 << 24);
+	@Override
+	public void readBooleans(boolean[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(1, length);
+			super.readBooleans(out, offset, count);
+			offset += count;
+			length -= count;
+		}
 	}
 	
-	public long readInt8() throws IOException {
-		in.read(bytes, 0, 8);
-		int pos = 0;
-		long b1 = bytes[pos++] & 0xFF;
-		long b2 = bytes[pos++] & 0xFF;
-		long b3 = bytes[pos++] & 0xFF;
-		long b4 = bytes[pos++] & 0xFF;
-		long b5 = bytes[pos++] & 0xFF;
-		long b6 = bytes[pos++] & 0xFF;
-		long b7 = bytes[pos++] & 0xFF;
-		long b8 = bytes[pos++] & 0xFF;
-		return (b1 | b2 << 8 | b3 << 16 | b4 << 24
-				| b5 << 32 | b6 << 40 | b7 << 48 | b8 << 56);
+	@Override
+	public void readShorts(short[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Short.BYTES, length);
+			super.readShorts(out, offset, count);
+			offset += count;
+			length -= count;
+		}
 	}
 	
-	public float readFloat4() throws IOException {
-		int bits = readInt4();
-		return Float.intBitsToFloat(bits);
+	@Override
+	public void readChars(char[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Character.BYTES, length);
+			super.readChars(out, offset, count);
+			offset += count;
+			length -= count;
+		}
 	}
 	
-	public double readFloat8() throws IOException {
-		long bits = readInt8();
-		return Double.longBitsToDouble(bits);
+	@Override
+	public void readInts(int[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Integer.BYTES, length);
+			super.readInts(out, offset, count);
+			offset += count;
+			length -= count;
+		}
 	}
 	
-	public ChunkType readChunkType() throws IOException {
-		int idx = readInt1();
-		if (idx < 0 || idx >= ChunkType.COUNT) {
-			return ChunkType.ILLEGAL;
+	@Override
+	public void readLongs(long[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Long.BYTES, length);
+			super.readLongs(out, offset, count);
+			offset += count;
+			length -= count;
 		}
-		return ChunkType.ALL.get(idx);
 	}
 	
-	public String readJavaIdentifier() throws IOException {
-		int strLen = readInt2();
-		char[] strChars = new char[strLen];
-		for (int i = 0; i < strLen; i++) {
-			strChars[i] = (char) readInt2();
+	@Override
+	public void readFloats(float[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Float.BYTES, length);
+			super.readFloats(out, offset, count);
+			offset += count;
+			length -= count;
 		}
-		String result = new String(strChars);
-		return result;
 	}
-}
\ No newline at end of file
+	
+	@Override
+	public void readDoubles(double[] out, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, out.length);
+		while (length > 0) {
+			int count = bufferedElementCount(Double.BYTES, length);
+			super.readDoubles(out, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+}
@@ -0,0 +1,378 @@
+package edu.udo.bytifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**<p>
+ * An {@link EncodeData} which writes into {@link ByteBuffer ByteBuffers} instead of byte
+ * arrays. Subclasses decide where the buffers come from by implementing
+ * {@link #nextBuffer()}, for example direct buffers or memory mapped regions of a file.
+ * <p>
+ * Whenever the current buffer is full it is {@link ByteBuffer#flip() flipped}, kept in
+ * {@link #filledBuffers} and a new buffer is requested. Values that do not fit into the
+ * remainder of a buffer are split across two buffers, just like the byte arrays of an
+ * EncodeData, so the concatenation of all buffers is the encoded data.
+ */
+public abstract class EncodeBufferData extends EncodeData {
+	
+	/** Whether the header is written when this EncodeBufferData is constructed or reset. */
+	protected final boolean writeHeader;
+	/** The buffer containing the header. Used to write the reference count in place. */
+	protected final ByteBuffer firstBuffer;
+	/** Completely filled and flipped buffers in the order they were written; starts with the {@link #firstBuffer}. */
+	protected final List<ByteBuffer> filledBuffers = new ArrayList<>();
+	/** The current little endian buffer. Its position is the write position. */
+	protected ByteBuffer buffer;
+	protected long filledByteCount;
+	
+	/**<p>
+	 * Constructs a new EncodeBufferData which writes to {@code firstBuffer} first. The
+	 * buffer must have at least {@link #MIN_BUFFER_SIZE} bytes remaining.
+	 * 
+	 * @param bytifier			the {@link Bytifier} defining the protocol
+	 * @param firstBuffer		the buffer written to first
+	 * @param writeDefaults		whether the header should be written
+	 */
+	protected EncodeBufferData(Bytifier bytifier, ByteBuffer firstBuffer, boolean writeDefaults) {
+		super(bytifier, MIN_BUFFER_SIZE, false, false);
+		if (firstBuffer.remaining() < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("firstBuffer.remaining() == "+firstBuffer.remaining());
+		}
+		writeHeader = writeDefaults;
+		this.firstBuffer = firstBuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		buffer = this.firstBuffer;
+		if (writeDefaults) {
+			writeHeader();
+		}
+	}
+	
+	/**<p>
+	 * Returns an empty buffer with at least {@link #MIN_BUFFER_SIZE} bytes remaining which
+	 * is written to after the current buffer. The byte order of the returned buffer does
+	 * not matter.
+	 */
+	protected abstract ByteBuffer nextBuffer();
+	
+	/**<p>
+	 * Called by {@link #reset()} for every buffer except the first one which is no longer
+	 * needed. The default implementation does nothing.
+	 */
+	protected void releaseBuffer(ByteBuffer buf) {
+	}
+	
+	@Override
+	protected void pushCurrentByteBuffer() {
+		buffer.flip();
+		filledBuffers.add(buffer);
+		filledByteCount += buffer.limit();
+		buffer = nextBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**<p>
+	 * Discards all written data and all known object references. All buffers except the
+	 * first one are {@link #releaseBuffer(ByteBuffer) released}.
+	 */
+	@Override
+	public void reset() {
+		clearReferences();
+		for (ByteBuffer buf : filledBuffers) {
+			if (buf != firstBuffer) {
+				releaseBuffer(buf);
+			}
+		}
+		if (buffer != firstBuffer) {
+			releaseBuffer(buffer);
+		}
+		filledBuffers.clear();
+		filledByteCount = 0;
+		buffer = firstBuffer;
+		buffer.clear();
+		if (writeHeader) {
+			writeHeader();
+		}
+	}
+	
+	/**<p>
+	 * Returns the total number of bytes written so far, capped at {@link Integer#MAX_VALUE}.
+	 */
+	@Override
+	public int getByteCount() {
+		return (int) Math.min(Integer.MAX_VALUE, getTotalByteCount());
+	}
+	
+	public long getTotalByteCount() {
+		return filledByteCount + buffer.position();
+	}
+	
+	@Override
+	public void writeReferenceCount() {
+		firstBuffer.putInt(REF_COUNT_HEADER_POS, refMap.size());
+	}
+	
+	@Override
+	public byte[] getBytes(boolean writeRefCount) {
+		if (writeRefCount) {
+			writeReferenceCount();
+		}
+		byte[] out = new byte[Math.toIntExact(getTotalByteCount())];
+		int outPos = 0;
+		for (ByteBuffer buf : getByteBuffers(false)) {
+			int len = buf.remaining();
+			buf.get(out, outPos, len);
+			outPos += len;
+		}
+		return out;
+	}
+	
+	@Override
+	public ByteBuffer getByteBuffer(boolean writeRefCount) {
+		if (filledBuffers.isEmpty()) {
+			if (writeRefCount) {
+				writeReferenceCount();
+			}
+			return buffer.duplicate().flip();
+		}
+		return ByteBuffer.wrap(getBytes(writeRefCount));
+	}
+	
+	/**<p>
+	 * Returns views of all buffers in the order they were written. No bytes are copied.
+	 * The returned array is suitable for gathering writes.
+	 * <p>
+	 * The returned views are only valid until more data is written to this EncodeData.
+	 */
+	@Override
+	public ByteBuffer[] getByteBuffers(boolean writeRefCount) {
+		if (writeRefCount) {
+			writeReferenceCount();
+		}
+		int bufCount = filledBuffers.size();
+		ByteBuffer[] out = new ByteBuffer[bufCount + 1];
+		for (int i = 0; i < bufCount; i++) {
+			out[i] = filledBuffers.get(i).duplicate();
+		}
+		out[bufCount] = buffer.duplicate().flip();
+		return out;
+	}
+	
+	@Override
+	public void writeTo(OutputStream out, boolean writeRefCount) throws IOException {
+		byte[] transfer = new byte[1024 * 8];
+		for (ByteBuffer buf : getByteBuffers(writeRefCount)) {
+			while (buf.hasRemaining()) {
+				int len = Math.min(transfer.length, buf.remaining());
+				buf.get(transfer, 0, len);
+				out.write(transfer, 0, len);
+			}
+		}
+	}
+	
+	@Override
+	public void writeBytes(byte[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				pushCurrentByteBuffer();
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.put(in, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeLatin1(String str) {
+		int offset = 0;
+		int length = str.length();
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				pushCurrentByteBuffer();
+			}
+			int count = Math.min(length, buffer.remaining());
+			for (int i = offset; i < offset + count; i++) {
+				buffer.put((byte) str.charAt(i));
+			}
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeInt1(int value) {
+		if (!buffer.hasRemaining()) {
+			pushCurrentByteBuffer();
+		}
+		buffer.put((byte) value);
+	}
+	
+	@Override
+	public void writeInt2(int value) {
+		if (buffer.remaining() >= 2) {
+			buffer.putShort((short) value);
+			return;
+		}
+		// the value straddles the end of the current buffer
+		writeInt1(value);
+		writeInt1(value >> 8);
+	}
+	
+	@Override
+	public void writeInt3(int value) {
+		if (buffer.remaining() >= 3) {
+			buffer.put((byte) value);
+			buffer.putShort((short) (value >> 8));
+			return;
+		}
+		writeInt1(value);
+		writeInt1(value >> 8);
+		writeInt1(value >> 16);
+	}
+	
+	@Override
+	public void writeInt4(int value) {
+		if (buffer.remaining() >= 4) {
+			buffer.putInt(value);
+			return;
+		}
+		for (int i = 0; i < 4; i++) {
+			writeInt1(value >> (8 * i));
+		}
+	}
+	
+	@Override
+	public void writeInt8(long value) {
+		if (buffer.remaining() >= 8) {
+			buffer.putLong(value);
+			return;
+		}
+		for (int i = 0; i < 8; i++) {
+			writeInt1((int) (value >> (8 * i)));
+		}
+	}
+	
+	@Override
+	protected int fittingElementCount(int elemSize, int length) {
+		return Math.min(length, buffer.remaining() / elemSize);
+	}
+	
+	protected void skip(int byteCount) {
+		buffer.position(buffer.position() + byteCount);
+	}
+	
+	@Override
+	public void writeBooleans(boolean[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		for (int i = 0; i < length; i++) {
+			writeBoolean(in[offset + i]);
+		}
+	}
+	
+	@Override
+	public void writeShorts(short[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Short.BYTES, length);
+			if (count == 0) {
+				writeInt2(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asShortBuffer().put(in, offset, count);
+			skip(count * Short.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeChars(char[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Character.BYTES, length);
+			if (count == 0) {
+				writeInt2(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asCharBuffer().put(in, offset, count);
+			skip(count * Character.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeInts(int[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Integer.BYTES, length);
+			if (count == 0) {
+				writeInt4(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asIntBuffer().put(in, offset, count);
+			skip(count * Integer.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeLongs(long[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Long.BYTES, length);
+			if (count == 0) {
+				writeInt8(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asLongBuffer().put(in, offset, count);
+			skip(count * Long.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeFloats(float[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Float.BYTES, length);
+			if (count == 0) {
+				writeFloat4(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asFloatBuffer().put(in, offset, count);
+			skip(count * Float.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeDoubles(double[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		while (length > 0) {
+			int count = fittingElementCount(Double.BYTES, length);
+			if (count == 0) {
+				writeFloat8(in[offset++]);
+				length--;
+				continue;
+			}
+			buffer.asDoubleBuffer().put(in, offset, count);
+			skip(count * Double.BYTES);
+			offset += count;
+			length -= count;
+		}
+	}
+	
+}
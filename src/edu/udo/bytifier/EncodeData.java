@@ -1,22 +1,54 @@
 package edu.udo.bytifier;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class EncodeData implements IEncodeData {
 	
 	public static final int MIN_BUFFER_SIZE = 16;
-	
-	protected final Map<Object, Integer> refMap = new IdentityHashMap<>();
-	protected final Map<Class<?>, Integer> protocolIdxMap = new HashMap<>();
+	/** The largest grown buffer which is kept by {@link #reset()}. */
+	public static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 64;
+	/** The position of the reference count within the header. Written to by {@link #writeReferenceCount()}. */
+	public static final int REF_COUNT_HEADER_POS = 4 + 1;
+	
+	/*
+	 * Little endian views of byte arrays. Used to write multi-byte values directly into
+	 * the current buffer. Values that would cross the end of the buffer are staged in
+	 * the primitiveBuf and written via writeBytes instead.
+	 */
+	protected static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	protected static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	protected static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	protected final IdentityIntMap refMap = new IdentityIntMap();
+	/** Maps each unknown class described in this stream to its stream-local index. */
+	protected final IdentityIntMap unknownClsMap = new IdentityIntMap(8);
+	/**
+	 * Maps the value of each string written in this stream to its reference index. Only
+	 * used if the Bytifier {@link Bytifier#isDeduplicateStrings() deduplicates strings};
+	 * created lazily.
+	 */
+	protected Map<String, Integer> stringRefMap;
 	protected final byte[] primitiveBuf = new byte[8];
+	protected final Bytifier bytifier;
 	protected final int clsSize;
-	protected final byte[] byteBuf;
+	protected final boolean writeDefaults;
+	protected final boolean growBuffer;
+	/** The size of the first buffer as given to the constructor. */
+	protected final int initialBufferSize;
+	protected byte[] byteBuf;
+	/** Completely filled buffers in the order they were written. Only used if {@link #growBuffer} is {@code false}. */
 	protected List<byte[]> byteBufList;
 	protected int pos;
 	
@@ -33,21 +65,91 @@ public class EncodeData implements IEncodeData {
 	}
 	
 	public EncodeData(Bytifier bytifier, int bufferSize, boolean writeDefaults) {
+		this(bytifier, bufferSize, writeDefaults, false);
+	}
+	
+	/**<p>
+	 * Constructs a new EncodeData with an initial buffer of {@code bufferSize} bytes.
+	 * <p>
+	 * If {@code growBuffer} is {@code true} all data is written to a single buffer which
+	 * grows geometrically whenever it is full. The result can then be obtained via
+	 * {@link #getByteBuffer(boolean)} without any further copying.
+	 * <p>
+	 * If {@code growBuffer} is {@code false} a new buffer of {@code bufferSize} bytes is
+	 * allocated whenever the current buffer is full. Filled buffers are kept as they are
+	 * and can be written to a sink via {@link #writeTo(OutputStream, boolean)} or
+	 * {@link #getByteBuffers(boolean)} without consolidating them first.
+	 * 
+	 * @param bytifier			the {@link Bytifier} defining the protocol
+	 * @param bufferSize		the initial size of the buffer; at least {@link #MIN_BUFFER_SIZE}
+	 * @param writeDefaults		whether the header should be written
+	 * @param growBuffer		whether a single growing buffer is used instead of a list of buffers
+	 */
+	public EncodeData(Bytifier bytifier, int bufferSize, boolean writeDefaults, boolean growBuffer) {
 		if (bufferSize < MIN_BUFFER_SIZE) {
 			bufferSize = MIN_BUFFER_SIZE;
 		}
+		this.bytifier = bytifier;
+		this.writeDefaults = writeDefaults;
+		this.growBuffer = growBuffer;
+		initialBufferSize = bufferSize;
 		byteBuf = new byte[bufferSize];
-		int clsCount = bytifier.protocols.size();
-		clsSize = DecodeData.calculateByteCountFor(clsCount);
+		clsSize = DecodeData.calculateByteCountFor(bytifier.protocols.size());
 		
-		for (int i = 0; i < clsCount; i++) {
-			protocolIdxMap.put(bytifier.protocols.get(i).cls, Integer.valueOf(i));
+		if (writeDefaults) {
+			writeHeader();
 		}
-		
+	}
+	
+	protected void writeHeader() {
+		writeInt4(bytifier.protocolID);
+		writeInt1(clsSize);
+		writeInt4(0);// place holder for reference count. Written to at a later time.
+	}
+	
+	/**<p>
+	 * Discards all written data and all known object references so that this
+	 * EncodeData can be used to encode another object graph. The first buffer is
+	 * kept and will be written to again. If this EncodeData was constructed to
+	 * write the header, the header is written again.
+	 * <p>
+	 * Capacity which was only needed for a large object graph is not kept: a grown buffer
+	 * larger than {@link #MAX_RETAINED_BUFFER_SIZE} is replaced by a buffer of the initial
+	 * size and the reference maps are shrunk as described in {@link IdentityIntMap#clear()}.
+	 * <p>
+	 * Views previously returned by {@link #getByteBuffer(boolean)} or
+	 * {@link #getByteBuffers(boolean)} must not be used after calling this method.
+	 * 
+	 * @see Bytifier#encode(EncodeData, Object)
+	 */
+	public void reset() {
+		clearReferences();
+		if (byteBufList != null) {
+			byteBuf = byteBufList.get(0);
+			byteBufList = null;
+		} else if (byteBuf.length > Math.max(initialBufferSize, MAX_RETAINED_BUFFER_SIZE)) {
+			byteBuf = new byte[initialBufferSize];
+		}
+		pos = 0;
 		if (writeDefaults) {
-			writeInt4(bytifier.protocolID);
-			writeInt1(clsSize);
-			writeInt4(0);// place holder for reference count. Written to at a later time.
+			writeHeader();
+		}
+	}
+	
+	/**<p>
+	 * Removes all known object references, string references and unknown classes.
+	 * Maps which grew large for a previous object graph are shrunk or dropped.
+	 */
+	protected void clearReferences() {
+		refMap.clear();
+		unknownClsMap.clear();
+		if (stringRefMap != null) {
+			// a HashMap never shrinks and clearing it costs time proportional to its capacity
+			if (stringRefMap.size() > IdentityIntMap.MAX_RETAINED_CAPACITY / 2) {
+				stringRefMap = null;
+			} else {
+				stringRefMap.clear();
+			}
 		}
 	}
 	
@@ -56,49 +158,117 @@ public class EncodeData implements IEncodeData {
 		System.out.println("pos="+pos+"; bytes="+Arrays.toString(bla)+"; buffered="+(byteBufList == null ? 0 : byteBufList.size()));
 	}
 	
+	/**<p>
+	 * Called when the current buffer is full and more data needs to be written.
+	 * <p>
+	 * If the buffer {@link #growBuffer grows} it is replaced by a larger copy and the
+	 * write position stays the same. Otherwise the full buffer is appended to the
+	 * {@link #byteBufList} as is and a new empty buffer of the same size is used.
+	 */
 	protected void pushCurrentByteBuffer() {
-//		System.out.println("EncodeData.pushCurrentByteBuffer="+Arrays.toString(byteBuf));
+		if (growBuffer) {
+			growByteBuffer(byteBuf.length + 1);
+			return;
+		}
 		if (byteBufList == null) {
 			byteBufList = new ArrayList<>();
 		}
-		byteBufList.add(Arrays.copyOf(byteBuf, byteBuf.length));
+		byteBufList.add(byteBuf);
+		byteBuf = new byte[byteBuf.length];
 		pos = 0;
 	}
 	
+	/**<p>
+	 * Replaces the current buffer with a copy that has at least {@code minCapacity}
+	 * bytes. The capacity is at least doubled to keep the number of copies
+	 * logarithmic in the total byte count.
+	 */
+	protected void growByteBuffer(int minCapacity) {
+		int newCapacity = byteBuf.length << 1;
+		if (newCapacity - minCapacity < 0) {
+			newCapacity = minCapacity;
+		}
+		if (newCapacity < 0) {
+			newCapacity = Integer.MAX_VALUE - 8;
+		}
+		byteBuf = Arrays.copyOf(byteBuf, newCapacity);
+	}
+	
 	public int getProtocolIndexFor(Class<?> clazz) {
-		return protocolIdxMap.getOrDefault(clazz, -1);
+		return bytifier.getProtocolIndexFor(clazz);
 	}
 	
 	public int getProtocolIndexFor(Object object) {
-		return protocolIdxMap.getOrDefault(object.getClass(), -1);
+		return bytifier.getProtocolIndexFor(object.getClass());
 	}
 	
+	/**<p>
+	 * Returns the reference index of {@code object} or {@code -1} if it has not been
+	 * written to this stream yet. If the Bytifier {@link Bytifier#isDeduplicateStrings()
+	 * deduplicates strings} the index of an equal string is returned for strings.
+	 */
 	public int getReferenceIndexFor(Object object) {
-		return refMap.getOrDefault(object, -1);
+		int refIdx = refMap.get(object, -1);
+		if (refIdx < 0 && stringRefMap != null && object instanceof String) {
+			return stringRefMap.getOrDefault(object, -1);
+		}
+		return refIdx;
+	}
+	
+	/**<p>
+	 * Returns the total number of bytes written so far.
+	 */
+	public int getByteCount() {
+		int count = pos;
+		if (byteBufList != null) {
+			for (byte[] buf : byteBufList) {
+				count += buf.length;
+			}
+		}
+		return count;
+	}
+	
+	/**<p>
+	 * Writes the current reference count to the header in place. The header is
+	 * always part of the first buffer which has at least {@link #MIN_BUFFER_SIZE}
+	 * bytes.
+	 */
+	public void writeReferenceCount() {
+		byte[] firstBuf = byteBufList == null ? byteBuf : byteBufList.get(0);
+		EncodeData.writeInt4(firstBuf, REF_COUNT_HEADER_POS, refMap.size());
+	}
+	
+	/**<p>
+	 * Returns whether this EncodeData keeps the encoded bytes so that they can be obtained
+	 * via {@link #getBytes(boolean)}, {@link #getByteBuffer(boolean)},
+	 * {@link #getByteBuffers(boolean)} and {@link #writeTo(OutputStream, boolean)}. These
+	 * methods throw an {@link UnsupportedOperationException} if {@code false} is returned.
+	 * <p>
+	 * Returns {@code true} unless overridden. An {@link EncodeStreamData} writes the bytes
+	 * to its sink instead of keeping them and returns {@code false}.
+	 */
+	public boolean isRetainingBytes() {
+		return true;
 	}
 	
 	public byte[] getBytes(boolean writeRefCount) {
-		// size of each buffer
-		int bufSize = byteBuf.length;
 		// byteBufList can be null if we only needed a single buffer
 		List<byte[]> bufList = byteBufList == null ? Collections.emptyList() : byteBufList;
-		// the length of the returned byte array
-		// each buffer in bufList is added in full, the last buffer byteBuf is filled up to pos
-		int totalByteCount = bufList.size() * bufSize + pos;
 		// the returned byte buffer
-		byte[] out = new byte[totalByteCount];
+		// each buffer in bufList is added in full, the last buffer byteBuf is filled up to pos
+		byte[] out = new byte[getByteCount()];
 		int outPos = 0;
 		// write buffers from bufList to out in sequential order
 		for (byte[] buf : bufList) {
-			System.arraycopy(buf, 0, out, outPos, bufSize);
-			outPos += bufSize;
+			System.arraycopy(buf, 0, out, outPos, buf.length);
+			outPos += buf.length;
 		}
 		// write the byteBuf to out up to the position pos
 		System.arraycopy(byteBuf, 0, out, outPos, pos);
 		if (writeRefCount) {
 			// write the current reference count to out
 			// Always written to a constant location
-			EncodeData.writeInt4(out, 4 + 1, refMap.size());
+			EncodeData.writeInt4(out, REF_COUNT_HEADER_POS, refMap.size());
 		}
 		return out;
 	}
@@ -107,6 +277,68 @@ public class EncodeData implements IEncodeData {
 		return getBytes(true);
 	}
 	
+	/**<p>
+	 * Returns the written bytes as a single {@link ByteBuffer}. If all data fits into a
+	 * single buffer, which is always the case when the buffer {@link #growBuffer grows},
+	 * the returned ByteBuffer is a view of the internal buffer and no bytes are copied.
+	 * Otherwise the buffers are consolidated as with {@link #getBytes(boolean)}.
+	 * <p>
+	 * The returned view is only valid until more data is written to this EncodeData.
+	 * 
+	 * @param writeRefCount		whether the reference count is written to the header
+	 * @return					a ByteBuffer positioned at the first written byte
+	 */
+	public ByteBuffer getByteBuffer(boolean writeRefCount) {
+		if (byteBufList != null) {
+			return ByteBuffer.wrap(getBytes(writeRefCount));
+		}
+		if (writeRefCount) {
+			writeReferenceCount();
+		}
+		return ByteBuffer.wrap(byteBuf, 0, pos);
+	}
+	
+	/**<p>
+	 * Returns views of all buffers in the order they were written. No bytes are copied.
+	 * The returned array is suitable for gathering writes.
+	 * <p>
+	 * The returned views are only valid until more data is written to this EncodeData.
+	 * 
+	 * @param writeRefCount		whether the reference count is written to the header
+	 * @return					an array of ByteBuffers; never empty
+	 */
+	public ByteBuffer[] getByteBuffers(boolean writeRefCount) {
+		if (writeRefCount) {
+			writeReferenceCount();
+		}
+		int bufCount = byteBufList == null ? 0 : byteBufList.size();
+		ByteBuffer[] out = new ByteBuffer[bufCount + 1];
+		for (int i = 0; i < bufCount; i++) {
+			out[i] = ByteBuffer.wrap(byteBufList.get(i));
+		}
+		out[bufCount] = ByteBuffer.wrap(byteBuf, 0, pos);
+		return out;
+	}
+	
+	/**<p>
+	 * Writes all bytes to {@code out} buffer by buffer without consolidating them first.
+	 * 
+	 * @param out				the stream the bytes are written to
+	 * @param writeRefCount		whether the reference count is written to the header
+	 * @throws IOException		if {@code out} throws an IOException
+	 */
+	public void writeTo(OutputStream out, boolean writeRefCount) throws IOException {
+		if (writeRefCount) {
+			writeReferenceCount();
+		}
+		if (byteBufList != null) {
+			for (byte[] buf : byteBufList) {
+				out.write(buf, 0, buf.length);
+			}
+		}
+		out.write(byteBuf, 0, pos);
+	}
+	
 	@Override
 	public void writeIntForSize(int maxValue, int value) {
 		int byteCount = DecodeData.calculateByteCountFor(maxValue);
@@ -131,7 +363,13 @@ public class EncodeData implements IEncodeData {
 	
 	public void writeNewReferenceIndex(Object object) {
 		int refIdx = refMap.size();
-		refMap.put(object, Integer.valueOf(refIdx));
+		refMap.put(object, refIdx);
+		if (object instanceof String && bytifier.isDeduplicateStrings()) {
+			if (stringRefMap == null) {
+				stringRefMap = new HashMap<>();
+			}
+			stringRefMap.putIfAbsent((String) object, refIdx);
+		}
 	}
 	
 	@Override
@@ -139,17 +377,44 @@ public class EncodeData implements IEncodeData {
 		if (object == null) {
 			throw new IllegalArgumentException("object == null");
 		}
-		Integer refIdx = refMap.get(object);
-		if (refIdx == null) {
+		int refIdx = refMap.get(object, -1);
+		if (refIdx < 0) {
 			throw new IllegalStateException("Unknown reference: '"+object+"'");
 		}
-		writeIntForSize(refMap.size(), refIdx.intValue());
+		writeIntForSize(refMap.size(), refIdx);
 	}
 	
 	public void writeOldReferenceIndex(int value) {
 		writeIntForSize(refMap.size(), value);
 	}
 	
+	/**<p>
+	 * Returns the stream-local index of an unknown class which has already been
+	 * described in this stream or {@code -1} if {@code cls} has not been described.
+	 * 
+	 * @see ChunkType#DESCRIBED_UNKNOWN_OBJ
+	 */
+	public int getUnknownClassIndexFor(Class<?> cls) {
+		return unknownClsMap.get(cls, -1);
+	}
+	
+	/**<p>
+	 * Assigns the next stream-local index to {@code cls} unless it already has one.
+	 * Must be called after an unknown object of class {@code cls} and all of its
+	 * members have been written.
+	 * 
+	 * @see DecodeData#addUnknownClass(Class, Object)
+	 */
+	public void addUnknownClass(Class<?> cls) {
+		if (!unknownClsMap.containsKey(cls)) {
+			unknownClsMap.put(cls, unknownClsMap.size());
+		}
+	}
+	
+	public void writeUnknownClassIndex(int value) {
+		writeIntForSize(unknownClsMap.size(), value);
+	}
+	
 	@Override
 	public void writeBytes(byte[] in) {
 		writeBytes(in, 0, in.length);
@@ -157,17 +422,46 @@ public class EncodeData implements IEncodeData {
 	
 	@Override
 	public void writeBytes(byte[] in, int offset, int length) {
+		if (growBuffer && byteBuf.length - pos < length) {
+			growByteBuffer(pos + length);
+		}
 		while (length > 0) {
 			int remaining = byteBuf.length - pos;
 			if (remaining >= length) {
 				System.arraycopy(in, offset, byteBuf, pos, length);
 				pos += length;
-			} else {
-				System.arraycopy(in, offset, byteBuf, pos, remaining);
-				offset += remaining;
-				pushCurrentByteBuffer();
+				return;
 			}
+			System.arraycopy(in, offset, byteBuf, pos, remaining);
+			pos += remaining;
+			offset += remaining;
 			length -= remaining;
+			pushCurrentByteBuffer();
+		}
+	}
+	
+	/**<p>
+	 * Copies the chars of {@code str} into the buffer without encoding them into a
+	 * temporary array first.
+	 */
+	@SuppressWarnings("deprecation")
+	@Override
+	public void writeLatin1(String str) {
+		int length = str.length();
+		if (growBuffer && byteBuf.length - pos < length) {
+			growByteBuffer(pos + length);
+		}
+		int offset = 0;
+		while (length > 0) {
+			int count = Math.min(length, byteBuf.length - pos);
+			// copies the lower 8 bits of each char
+			str.getBytes(offset, offset + count, byteBuf, pos);
+			pos += count;
+			offset += count;
+			length -= count;
+			if (length > 0) {
+				pushCurrentByteBuffer();
+			}
 		}
 	}
 	
@@ -186,12 +480,21 @@ public class EncodeData implements IEncodeData {
 	
 	@Override
 	public void writeInt1(int value) {
+		if (pos < byteBuf.length) {
+			byteBuf[pos++] = (byte) value;
+			return;
+		}
 		primitiveBuf[0] = (byte) (value & 0xFF);
 		writePrimitives(1);
 	}
 	
 	@Override
 	public void writeInt2(int value) {
+		if (byteBuf.length - pos >= 2) {
+			SHORT_LE.set(byteBuf, pos, (short) value);
+			pos += 2;
+			return;
+		}
 		primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
 		primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
 		writePrimitives(2);
@@ -199,6 +502,13 @@ public class EncodeData implements IEncodeData {
 	
 	@Override
 	public void writeInt3(int value) {
+		if (byteBuf.length - pos >= 3) {
+			byte[] buf = byteBuf;
+			buf[pos] = (byte) value;
+			SHORT_LE.set(buf, pos + 1, (short) (value >> 8));
+			pos += 3;
+			return;
+		}
 		primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
 		primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
 		primitiveBuf[2] = (byte) ((value >> 16) & 0xFF);
@@ -207,6 +517,11 @@ public class EncodeData implements IEncodeData {
 	
 	@Override
 	public void writeInt4(int value) {
+		if (byteBuf.length - pos >= 4) {
+			INT_LE.set(byteBuf, pos, value);
+			pos += 4;
+			return;
+		}
 		primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
 		primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
 		primitiveBuf[2] = (byte) ((value >> 16) & 0xFF);
@@ -215,14 +530,16 @@ public class EncodeData implements IEncodeData {
 	}
 	
 	public static void writeInt4(byte[] arr, int pos, int value) {
-		arr[pos++] = (byte) ((value >> 0) & 0xFF);
-		arr[pos++] = (byte) ((value >> 8) & 0xFF);
-		arr[pos++] = (byte) ((value >> 16) & 0xFF);
-		arr[pos++] = (byte) ((value >> 24) & 0xFF);
+		INT_LE.set(arr, pos, value);
 	}
 	
 	@Override
 	public void writeInt8(long value) {
+		if (byteBuf.length - pos >= 8) {
+			LONG_LE.set(byteBuf, pos, value);
+			pos += 8;
+			return;
+		}
 		primitiveBuf[0] = (byte) ((value >> 0) & 0xFF);
 		primitiveBuf[1] = (byte) ((value >> 8) & 0xFF);
 		primitiveBuf[2] = (byte) ((value >> 16) & 0xFF);
@@ -246,6 +563,163 @@ public class EncodeData implements IEncodeData {
 		writeInt8(bits);
 	}
 	
+	/**<p>
+	 * Makes sure that at least {@code byteCount} bytes can be written to the current
+	 * buffer if the buffer {@link #growBuffer grows}. Used by the bulk writes so that
+	 * the buffer is grown at most once per array.
+	 */
+	protected void reserve(int byteCount) {
+		if (growBuffer && byteBuf.length - pos < byteCount) {
+			growByteBuffer(pos + byteCount);
+		}
+	}
+	
+	/**<p>
+	 * Returns how many elements of {@code elemSize} bytes, but no more than
+	 * {@code length}, fit into the remaining space of the current buffer.
+	 */
+	protected int fittingElementCount(int elemSize, int length) {
+		return Math.min(length, (byteBuf.length - pos) / elemSize);
+	}
+	
+	/**<p>
+	 * Returns a little endian view of the next {@code byteCount} bytes of the current
+	 * buffer. The caller must make sure that the bytes fit into the buffer and must
+	 * advance {@link #pos} afterwards.
+	 */
+	protected ByteBuffer viewOfBuffer(int byteCount) {
+		return ByteBuffer.wrap(byteBuf, pos, byteCount).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	@Override
+	public void writeBooleans(boolean[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(length);
+		while (length > 0) {
+			int count = fittingElementCount(1, length);
+			if (count == 0) {
+				pushCurrentByteBuffer();
+				continue;
+			}
+			byte[] buf = byteBuf;
+			int bufPos = pos;
+			for (int i = 0; i < count; i++) {
+				buf[bufPos++] = in[offset++] ? DecodeData.BOOLEAN_TRUE : (byte) ~DecodeData.BOOLEAN_TRUE;
+			}
+			pos = bufPos;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeShorts(short[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Short.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Short.BYTES, length);
+			if (count == 0) {
+				// the next element straddles the end of the current buffer
+				writeInt2(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Short.BYTES).asShortBuffer().put(in, offset, count);
+			pos += count * Short.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeChars(char[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Character.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Character.BYTES, length);
+			if (count == 0) {
+				writeInt2(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Character.BYTES).asCharBuffer().put(in, offset, count);
+			pos += count * Character.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeInts(int[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Integer.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Integer.BYTES, length);
+			if (count == 0) {
+				writeInt4(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Integer.BYTES).asIntBuffer().put(in, offset, count);
+			pos += count * Integer.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeLongs(long[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Long.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Long.BYTES, length);
+			if (count == 0) {
+				writeInt8(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Long.BYTES).asLongBuffer().put(in, offset, count);
+			pos += count * Long.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeFloats(float[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Float.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Float.BYTES, length);
+			if (count == 0) {
+				writeFloat4(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Float.BYTES).asFloatBuffer().put(in, offset, count);
+			pos += count * Float.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	@Override
+	public void writeDoubles(double[] in, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, in.length);
+		reserve(Math.multiplyExact(length, Double.BYTES));
+		while (length > 0) {
+			int count = fittingElementCount(Double.BYTES, length);
+			if (count == 0) {
+				writeFloat8(in[offset++]);
+				length--;
+				continue;
+			}
+			viewOfBuffer(count * Double.BYTES).asDoubleBuffer().put(in, offset, count);
+			pos += count * Double.BYTES;
+			offset += count;
+			length -= count;
+		}
+	}
+	
 	@Override
 	public void writeChunkType(ChunkType value) {
 		writeInt1(value.ordinal());
@@ -0,0 +1,48 @@
+package edu.udo.bytifier;
+
+import java.nio.ByteBuffer;
+
+/**<p>
+ * An {@link EncodeBufferData} which writes into direct buffers taken from a
+ * {@link ByteBufferPool}. The encoded data can be handed to a
+ * {@link java.nio.channels.GatheringByteChannel} as returned by
+ * {@link #getByteBuffers(boolean)} without copying it to the heap or between buffers.
+ * <p>
+ * {@link #reset() Resetting} returns all buffers except the first one to the pool.
+ * {@link #release() Releasing} returns all buffers to the pool.
+ * 
+ * @see Bytifier#encodeToByteBuffers(EncodeData, Object)
+ */
+public class EncodeDirectData extends EncodeBufferData {
+	
+	protected final ByteBufferPool pool;
+	
+	public EncodeDirectData(Bytifier bytifier, ByteBufferPool pool) {
+		this(bytifier, pool, true);
+	}
+	
+	public EncodeDirectData(Bytifier bytifier, ByteBufferPool pool, boolean writeDefaults) {
+		super(bytifier, pool.acquire(), writeDefaults);
+		this.pool = pool;
+	}
+	
+	@Override
+	protected ByteBuffer nextBuffer() {
+		return pool.acquire();
+	}
+	
+	@Override
+	protected void releaseBuffer(ByteBuffer buf) {
+		pool.release(buf);
+	}
+	
+	/**<p>
+	 * Returns all buffers to the pool. This EncodeDirectData must not be used afterwards.
+	 */
+	public void release() {
+		reset();
+		pool.release(firstBuffer);
+		buffer = null;
+	}
+	
+}
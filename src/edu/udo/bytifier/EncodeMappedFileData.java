@@ -0,0 +1,241 @@
+package edu.udo.bytifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**<p>
+ * An {@link EncodeBufferData} which writes into memory mapped windows of a file. The file
+ * grows window by window while encoding. {@link #finish()} writes the reference count to
+ * the header, forces all changes to the storage device, releases all windows and then
+ * truncates the file to the number of bytes written. Afterwards the file contains exactly
+ * the encoded bytes from the start position on. If encoding fails, {@link #abort()}
+ * releases all windows and truncates the file to the start position.
+ * <p>
+ * Some platforms, Windows in particular, do not allow truncating a file while a part of
+ * it is mapped. Windows are therefore unmapped right away when they are released, if the
+ * JDK supports it. Otherwise they stay mapped until they are garbage collected and
+ * truncating the file may fail with an IOException. If unmapping a window fails, an
+ * IllegalStateException is thrown and the file is not truncated.
+ * <p>
+ * The file channel must be opened for reading and writing. It is neither closed by the
+ * EncodeMappedFileData nor by the Bytifier. After it has been finished or aborted, an
+ * EncodeMappedFileData throws an IllegalStateException on any further use since its
+ * windows are no longer mapped.
+ * 
+ * @see Bytifier#encodeMapped(Object, java.nio.file.Path)
+ */
+public class EncodeMappedFileData extends EncodeBufferData {
+	
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+	/** Unmaps a direct buffer immediately; {@code null} if the JDK does not support it. */
+	protected static final MethodHandle UNMAP = lookupUnmap();
+	
+	protected final FileChannel channel;
+	protected final long startPosition;
+	protected final int windowSize;
+	/** The mapped windows which have not been unmapped yet, starting with the first one. */
+	protected final List<MappedByteBuffer> windows = new ArrayList<>();
+	/** Whether the windows have been released by {@link #finish()} or {@link #abort()}. */
+	protected boolean released;
+	
+	public EncodeMappedFileData(Bytifier bytifier, FileChannel channel) throws IOException {
+		this(bytifier, channel, 0, DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**<p>
+	 * Maps the first window of the file at {@code position} and writes the header.
+	 * 
+	 * @param bytifier		the {@link Bytifier} defining the protocol
+	 * @param channel		a channel of the file opened for reading and writing
+	 * @param position		the position within the file where the header is written to
+	 * @param windowSize	the number of bytes mapped at once; at least {@link #MIN_BUFFER_SIZE}
+	 * @throws IOException	if the file can not be mapped
+	 */
+	public EncodeMappedFileData(Bytifier bytifier, FileChannel channel, long position, int windowSize) throws IOException {
+		this(bytifier, channel, position, windowSize, map(channel, position, windowSize));
+	}
+	
+	/**<p>
+	 * The {@link #firstBuffer} is a slice of {@code firstWindow} which can not be unmapped,
+	 * so the window itself is kept in the {@link #windows}.
+	 */
+	protected EncodeMappedFileData(Bytifier bytifier, FileChannel channel, long position,
+			int windowSize, MappedByteBuffer firstWindow)
+	{
+		super(bytifier, firstWindow, true);
+		this.channel = channel;
+		startPosition = position;
+		this.windowSize = Math.max(windowSize, MIN_BUFFER_SIZE);
+		windows.add(firstWindow);
+	}
+	
+	protected static MethodHandle lookupUnmap() {
+		try {
+			Class<?> unsafeCls = Class.forName("sun.misc.Unsafe");
+			Field instance = unsafeCls.getDeclaredField("theUnsafe");
+			instance.setAccessible(true);
+			MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeCls,
+					"invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class));
+			return invokeCleaner.bindTo(instance.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	protected static MappedByteBuffer map(FileChannel channel, long position, int windowSize) throws IOException {
+		return channel.map(MapMode.READ_WRITE, position, Math.max(windowSize, MIN_BUFFER_SIZE));
+	}
+	
+	/**<p>
+	 * Maps the window of the file which directly follows the current window.
+	 */
+	@Override
+	protected ByteBuffer nextBuffer() {
+		checkMapped();
+		try {
+			MappedByteBuffer window = map(channel, startPosition + filledByteCount, windowSize);
+			windows.add(window);
+			return window;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	protected void releaseBuffer(ByteBuffer buf) {
+		if (windows.removeIf(window -> window == buf)) {
+			unmap(buf);
+		}
+	}
+	
+	/**<p>
+	 * Unmaps {@code window} immediately. Returns {@code false} if the JDK does not support
+	 * unmapping, in which case the window stays mapped until it is garbage collected.
+	 * 
+	 * @param window	a buffer returned by {@link FileChannel#map(MapMode, long, long)}; not a slice of it
+	 * @return			{@code true} if the window has been unmapped
+	 * @throws IllegalStateException	if the window can not be unmapped
+	 */
+	protected static boolean unmap(ByteBuffer window) {
+		if (UNMAP == null) {
+			return false;
+		}
+		try {
+			UNMAP.invokeExact(window);
+			return true;
+		} catch (Throwable e) {
+			throw new IllegalStateException("A window of the file can not be unmapped", e);
+		}
+	}
+	
+	protected void checkMapped() {
+		if (released) {
+			throw new IllegalStateException("The windows have been released by finish() or abort()");
+		}
+	}
+	
+	/**<p>
+	 * Unmaps all windows. Afterwards no more bytes can be written or read. If a window can
+	 * not be unmapped the remaining windows are still unmapped before the first failure is
+	 * thrown.
+	 */
+	protected void releaseWindows() {
+		checkMapped();
+		released = true;
+		buffer = ByteBuffer.allocate(0);
+		filledBuffers.clear();
+		IllegalStateException failure = null;
+		for (MappedByteBuffer window : windows) {
+			try {
+				unmap(window);
+			} catch (IllegalStateException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		windows.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	@Override
+	public void reset() {
+		checkMapped();
+		super.reset();
+	}
+	
+	@Override
+	public void writeReferenceCount() {
+		checkMapped();
+		super.writeReferenceCount();
+	}
+	
+	@Override
+	public byte[] getBytes(boolean writeRefCount) {
+		checkMapped();
+		return super.getBytes(writeRefCount);
+	}
+	
+	@Override
+	public ByteBuffer getByteBuffer(boolean writeRefCount) {
+		checkMapped();
+		return super.getByteBuffer(writeRefCount);
+	}
+	
+	@Override
+	public ByteBuffer[] getByteBuffers(boolean writeRefCount) {
+		checkMapped();
+		return super.getByteBuffers(writeRefCount);
+	}
+	
+	@Override
+	public void writeTo(OutputStream out, boolean writeRefCount) throws IOException {
+		checkMapped();
+		super.writeTo(out, writeRefCount);
+	}
+	
+	/**<p>
+	 * Writes the reference count to the header, forces all written bytes to the storage
+	 * device, releases all windows and truncates the file to the end of the encoded data.
+	 * 
+	 * @throws IOException				if the file can not be truncated
+	 * @throws IllegalStateException	if a window can not be unmapped or this has already been finished or aborted
+	 */
+	public void finish() throws IOException {
+		writeReferenceCount();
+		long size = startPosition + getTotalByteCount();
+		for (MappedByteBuffer window : windows) {
+			window.force();
+		}
+		releaseWindows();
+		channel.truncate(size);
+	}
+	
+	/**<p>
+	 * Releases all windows and truncates the file to the start position, discarding
+	 * everything written so far. Called if encoding fails.
+	 * 
+	 * @throws IOException				if the file can not be truncated
+	 * @throws IllegalStateException	if a window can not be unmapped or this has already been finished or aborted
+	 */
+	public void abort() throws IOException {
+		releaseWindows();
+		channel.truncate(startPosition);
+	}
+	
+}
@@ -0,0 +1,200 @@
+package edu.udo.bytifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**<p>
+ * An {@link EncodeData} which writes its buffer to an {@link OutputStream} or a
+ * {@link WritableByteChannel} whenever it is full instead of keeping all encoded bytes
+ * in memory. Only a single buffer is ever allocated.
+ * <p>
+ * Since the header is written to the sink long before the object graph has been
+ * encoded completely, the reference count within the header is only written if
+ * the encoded data fits into the first buffer; otherwise it remains zero. The
+ * reference count is merely a hint for the {@link DecodeData} which grows its
+ * reference map as needed.
+ * <p>
+ * The methods of an EncodeData can not throw checked exceptions. An IOException
+ * thrown by the sink is wrapped in an {@link UncheckedIOException}.
+ * {@link Bytifier#encode(Object, OutputStream)} and
+ * {@link Bytifier#encode(Object, WritableByteChannel)} unwrap these exceptions.
+ * <p>
+ * The encoded bytes are not {@link #isRetainingBytes() retained}. An EncodeStreamData
+ * must therefore be passed to {@link Bytifier#encode(EncodeStreamData, Object)}; the
+ * methods of the Bytifier which return the encoded bytes reject it.
+ * <p>
+ * The sink is neither closed by the EncodeStreamData nor by the Bytifier.
+ * 
+ * @see Bytifier#encode(Object, OutputStream)
+ * @see Bytifier#encode(Object, WritableByteChannel)
+ */
+public class EncodeStreamData extends EncodeData {
+	
+	protected final OutputStream out;
+	protected final WritableByteChannel channel;
+	/** The number of bytes that have already been written to the sink. */
+	protected long flushedByteCount;
+	
+	public EncodeStreamData(Bytifier bytifier, OutputStream out) {
+		this(bytifier, 1024 * 8, out);
+	}
+	
+	public EncodeStreamData(Bytifier bytifier, int bufferSize, OutputStream out) {
+		super(bytifier, bufferSize, true, false);
+		if (out == null) {
+			throw new IllegalArgumentException("out == null");
+		}
+		this.out = out;
+		channel = null;
+	}
+	
+	public EncodeStreamData(Bytifier bytifier, WritableByteChannel channel) {
+		this(bytifier, 1024 * 8, channel);
+	}
+	
+	public EncodeStreamData(Bytifier bytifier, int bufferSize, WritableByteChannel channel) {
+		super(bytifier, bufferSize, true, false);
+		if (channel == null) {
+			throw new IllegalArgumentException("channel == null");
+		}
+		out = null;
+		this.channel = channel;
+	}
+	
+	/**<p>
+	 * Writes the full buffer to the sink and starts to write at the beginning of the
+	 * buffer again.
+	 */
+	@Override
+	protected void pushCurrentByteBuffer() {
+		writeBufferToSink();
+	}
+	
+	protected void writeBufferToSink() {
+		try {
+			if (out != null) {
+				out.write(byteBuf, 0, pos);
+			} else {
+				ByteBuffer view = ByteBuffer.wrap(byteBuf, 0, pos);
+				while (view.hasRemaining()) {
+					channel.write(view);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		flushedByteCount += pos;
+		pos = 0;
+	}
+	
+	/**<p>
+	 * Writes all buffered bytes to the sink. If the header has not been written to the
+	 * sink yet the current reference count is written to the header first. An
+	 * {@link OutputStream} is {@link OutputStream#flush() flushed} afterwards.
+	 * 
+	 * @throws IOException	if the sink throws an IOException
+	 */
+	public void flush() throws IOException {
+		try {
+			if (flushedByteCount == 0) {
+				writeReferenceCount();
+			}
+			writeBufferToSink();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (out != null) {
+			out.flush();
+		}
+	}
+	
+	/**<p>
+	 * Discards all known object references and writes a new header so that another
+	 * object graph can be written to the same sink. Bytes which have not been
+	 * {@link #flush() flushed} are discarded.
+	 */
+	@Override
+	public void reset() {
+		flushedByteCount = 0;
+		super.reset();
+	}
+	
+	/**<p>
+	 * Returns the total number of bytes written so far, including those which have
+	 * already been written to the sink.
+	 * <p>
+	 * The result is capped at {@link Integer#MAX_VALUE}; use {@link #getTotalByteCount()}
+	 * for larger streams.
+	 */
+	@Override
+	public int getByteCount() {
+		return (int) Math.min(Integer.MAX_VALUE, getTotalByteCount());
+	}
+	
+	public long getTotalByteCount() {
+		return flushedByteCount + pos;
+	}
+	
+	/**<p>
+	 * Writes the reference count to the header if the header has not been written to
+	 * the sink yet. Otherwise this method does nothing.
+	 */
+	@Override
+	public void writeReferenceCount() {
+		if (flushedByteCount == 0) {
+			super.writeReferenceCount();
+		}
+	}
+	
+	/**<p>
+	 * Returns {@code false} since the encoded bytes are written to the sink.
+	 */
+	@Override
+	public boolean isRetainingBytes() {
+		return false;
+	}
+	
+	/**<p>
+	 * Not supported since the encoded bytes are written to the sink.
+	 * 
+	 * @throws UnsupportedOperationException	always
+	 */
+	@Override
+	public byte[] getBytes(boolean writeRefCount) {
+		throw new UnsupportedOperationException("The encoded bytes are written to the sink");
+	}
+	
+	/**<p>
+	 * Not supported since the encoded bytes are written to the sink.
+	 * 
+	 * @throws UnsupportedOperationException	always
+	 */
+	@Override
+	public ByteBuffer getByteBuffer(boolean writeRefCount) {
+		throw new UnsupportedOperationException("The encoded bytes are written to the sink");
+	}
+	
+	/**<p>
+	 * Not supported since the encoded bytes are written to the sink.
+	 * 
+	 * @throws UnsupportedOperationException	always
+	 */
+	@Override
+	public ByteBuffer[] getByteBuffers(boolean writeRefCount) {
+		throw new UnsupportedOperationException("The encoded bytes are written to the sink");
+	}
+	
+	/**<p>
+	 * Not supported since the encoded bytes are written to the sink.
+	 * 
+	 * @throws UnsupportedOperationException	always
+	 */
+	@Override
+	public void writeTo(OutputStream out, boolean writeRefCount) throws IOException {
+		throw new UnsupportedOperationException("The encoded bytes are written to the sink");
+	}
+	
+}
@@ -21,6 +21,17 @@ public interface IEncodeData {
 	
 	public void writeBytes(byte[] in, int offset, int length);
 	
+	/**<p>
+	 * Writes the lower 8 bits of every char of {@code str}, one byte per char. This is
+	 * the ISO-8859-1 encoding of {@code str} if all chars are below {@code 0x100} and
+	 * the ASCII encoding if all chars are below {@code 0x80}.
+	 */
+	public default void writeLatin1(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			writeInt1(str.charAt(i));
+		}
+	}
+	
 	public void writeBoolean(boolean value);
 	
 	public void writeInt1(int value);
@@ -37,6 +48,98 @@ public interface IEncodeData {
 	
 	public void writeFloat8(double value);
 	
+	/**<p>
+	 * Writes {@code value} as an unsigned LEB128 varint: 7 bits per byte, least
+	 * significant group first, with the highest bit of each byte set if more bytes
+	 * follow. Values below 128 take 1 byte, negative values take 5 bytes.
+	 * 
+	 * @see DecodeData#readVarInt()
+	 */
+	public default void writeVarInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			writeInt1((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeInt1(value);
+	}
+	
+	/**<p>
+	 * Writes {@code value} as an unsigned LEB128 varint of up to 10 bytes.
+	 * 
+	 * @see #writeVarInt(int)
+	 * @see DecodeData#readVarLong()
+	 */
+	public default void writeVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			writeInt1((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeInt1((int) value);
+	}
+	
+	/**<p>
+	 * Writes {@code value} zigzag encoded as a varint, so that small negative values
+	 * take as few bytes as small positive values.
+	 * 
+	 * @see #writeVarInt(int)
+	 * @see DecodeData#readSignedVarInt()
+	 */
+	public default void writeSignedVarInt(int value) {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+	
+	/**<p>
+	 * Writes {@code value} zigzag encoded as a varint of up to 10 bytes.
+	 * 
+	 * @see #writeSignedVarInt(int)
+	 * @see DecodeData#readSignedVarLong()
+	 */
+	public default void writeSignedVarLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+	
+	public default void writeBooleans(boolean[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeBoolean(in[i]);
+		}
+	}
+	
+	public default void writeShorts(short[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeInt2(in[i]);
+		}
+	}
+	
+	public default void writeChars(char[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeInt2(in[i]);
+		}
+	}
+	
+	public default void writeInts(int[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeInt4(in[i]);
+		}
+	}
+	
+	public default void writeLongs(long[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeInt8(in[i]);
+		}
+	}
+	
+	public default void writeFloats(float[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeFloat4(in[i]);
+		}
+	}
+	
+	public default void writeDoubles(double[] in, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			writeFloat8(in[i]);
+		}
+	}
+	
 	public void writeChunkType(ChunkType value);
 	
 	public void writeJavaIdentifier(String str);
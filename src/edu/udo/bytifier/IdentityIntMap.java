@@ -0,0 +1,213 @@
+package edu.udo.bytifier;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**<p>
+ * A hash map from object identities to primitive int values. Keys are compared by
+ * reference and hashed by {@link System#identityHashCode(Object)}, just like in an
+ * {@link java.util.IdentityHashMap}. Unlike the IdentityHashMap values are stored as
+ * primitive ints and neither {@link #put(Object, int)} nor {@link #get(Object, int)}
+ * allocate any objects, unless the map needs to grow.
+ * <p>
+ * Collisions are resolved by linear probing in a single key array and a parallel value
+ * array. The capacity is always a power of two and the map is kept at most half full.
+ * <p>
+ * {@code null} keys are not supported. Entries can not be removed individually; use
+ * {@link #clear()} to remove all entries at once.
+ * <p>
+ * This class is not thread safe.
+ * 
+ * @see EncodeData#getReferenceIndexFor(Object)
+ */
+public class IdentityIntMap {
+	
+	public static final int DEFAULT_CAPACITY = 64;
+	/**
+	 * The largest capacity which is kept by {@link #clear()}. A larger map is shrunk back to
+	 * its initial capacity so that clearing a map which was used once for a large object
+	 * graph does not cost time proportional to that graph forever after.
+	 */
+	public static final int MAX_RETAINED_CAPACITY = 1024 * 4;
+	
+	protected final int initialCapacity;
+	protected Object[] keys;
+	protected int[] values;
+	protected int mask;
+	protected int size;
+	
+	public IdentityIntMap() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**<p>
+	 * Constructs an empty map which can hold at least {@code expectedSize} entries
+	 * before it needs to grow.
+	 * 
+	 * @param expectedSize		the number of expected entries; must not be negative
+	 */
+	public IdentityIntMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize == "+expectedSize);
+		}
+		initialCapacity = Integer.highestOneBit(Math.max(expectedSize * 2 - 1, 1)) << 1;
+		keys = new Object[initialCapacity];
+		values = new int[initialCapacity];
+		mask = initialCapacity - 1;
+	}
+	
+	protected static int hash(Object key) {
+		int h = System.identityHashCode(key);
+		// identity hash codes are not guaranteed to be well distributed in the lower bits
+		return (h * 0x9E3779B9) ^ (h >>> 16);
+	}
+	
+	/**<p>
+	 * Returns the number of entries in this map.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**<p>
+	 * Returns the number of slots in the key array. The map grows when more than half of
+	 * the slots are taken.
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+	
+	/**<p>
+	 * Returns {@code true} if this map does not contain any entries.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**<p>
+	 * Returns the value mapped to {@code key} or {@code defaultValue} if there is no
+	 * mapping for {@code key}.
+	 * 
+	 * @param key				a non-null key
+	 * @param defaultValue		returned if there is no mapping for {@code key}
+	 * @return					the mapped value or {@code defaultValue}
+	 */
+	public int get(Object key, int defaultValue) {
+		Object[] keys = this.keys;
+		int idx = hash(key) & mask;
+		while (true) {
+			Object cur = keys[idx];
+			if (cur == key) {
+				return values[idx];
+			}
+			if (cur == null) {
+				return defaultValue;
+			}
+			idx = (idx + 1) & mask;
+		}
+	}
+	
+	/**<p>
+	 * Returns {@code true} if there is a mapping for {@code key}.
+	 * 
+	 * @param key	a non-null key
+	 * @return		{@code true} if the key is mapped to a value
+	 */
+	public boolean containsKey(Object key) {
+		Object[] keys = this.keys;
+		int idx = hash(key) & mask;
+		while (true) {
+			Object cur = keys[idx];
+			if (cur == key) {
+				return true;
+			}
+			if (cur == null) {
+				return false;
+			}
+			idx = (idx + 1) & mask;
+		}
+	}
+	
+	/**<p>
+	 * Maps {@code key} to {@code value}, replacing any previous mapping for {@code key}.
+	 * 
+	 * @param key		a non-null key
+	 * @param value		the value mapped to {@code key}
+	 * @throws IllegalArgumentException		if {@code key} is {@code null}
+	 */
+	public void put(Object key, int value) {
+		if (key == null) {
+			throw new IllegalArgumentException("key == null");
+		}
+		Object[] keys = this.keys;
+		int idx = hash(key) & mask;
+		while (true) {
+			Object cur = keys[idx];
+			if (cur == key) {
+				values[idx] = value;
+				return;
+			}
+			if (cur == null) {
+				keys[idx] = key;
+				values[idx] = value;
+				if (++size * 2 > keys.length) {
+					resize(keys.length * 2);
+				}
+				return;
+			}
+			idx = (idx + 1) & mask;
+		}
+	}
+	
+	/**<p>
+	 * Calls {@code action} for every key of this map in no particular order.
+	 */
+	public void forEachKey(Consumer<Object> action) {
+		for (Object key : keys) {
+			if (key != null) {
+				action.accept(key);
+			}
+		}
+	}
+	
+	/**<p>
+	 * Removes all entries from this map. The capacity of the map stays the same unless it
+	 * is larger than {@link #MAX_RETAINED_CAPACITY} and larger than the initial capacity,
+	 * in which case the map is shrunk back to its initial capacity.
+	 */
+	public void clear() {
+		if (keys.length > Math.max(initialCapacity, MAX_RETAINED_CAPACITY)) {
+			keys = new Object[initialCapacity];
+			values = new int[initialCapacity];
+			mask = initialCapacity - 1;
+			size = 0;
+		} else if (size > 0) {
+			Arrays.fill(keys, null);
+			size = 0;
+		}
+	}
+	
+	protected void resize(int newCapacity) {
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		Object[] newKeys = new Object[newCapacity];
+		int[] newValues = new int[newCapacity];
+		int newMask = newCapacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			Object key = oldKeys[i];
+			if (key == null) {
+				continue;
+			}
+			int idx = hash(key) & newMask;
+			while (newKeys[idx] != null) {
+				idx = (idx + 1) & newMask;
+			}
+			newKeys[idx] = key;
+			newValues[idx] = oldValues[i];
+		}
+		keys = newKeys;
+		values = newValues;
+		mask = newMask;
+	}
+	
+}
@@ -1,19 +1,39 @@
 package edu.udo.bytifier;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Predicate;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import edu.udo.bytifier.protocols.StringProtocol;
 
 public class PerClassBuilder<CLS_T> {
 	
+	protected static final MethodType CONSTRUCTOR_HANDLE_TYPE =
+			MethodType.methodType(Object.class, Bytifier.class, DecodeData.class);
+	protected static final MethodHandle READ_CONSTRUCTOR_STRING;
+	static {
+		try {
+			READ_CONSTRUCTOR_STRING = MethodHandles.lookup().findStatic(PerClassBuilder.class,
+					"readConstructorString",
+					MethodType.methodType(String.class, Bytifier.class, DecodeData.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
 	protected final List<WriteAction> writeActions = new ArrayList<>();
 	protected final List<ReadAction> readActions = new ArrayList<>();
 	protected final List<ConstructorData> constrData = new ArrayList<>();
@@ -23,6 +43,7 @@ public class PerClassBuilder<CLS_T> {
 	protected int fieldHash = 0;
 	protected boolean computeIdfNum = true;
 	protected int idfNum = 0;
+	protected boolean generateProtocol = false;
 	
 	public PerClassBuilder(ProtocolBuilder builder, Class<CLS_T> clazz) {
 		bldr = builder;
@@ -65,6 +86,22 @@ public class PerClassBuilder<CLS_T> {
 		return this;
 	}
 	
+	/**<p>
+	 * If set to {@code true} the protocol for this class is compiled into a generated
+	 * class. The getters, setters and constructor parameters of the generated protocol
+	 * are constants, which allows the JIT to inline the whole chain of calls. If no
+	 * class can be generated the regular protocol is used. The encoded bytes are the same
+	 * either way.
+	 * <p>
+	 * The default is {@code false}.
+	 * 
+	 * @see PerClassProtocolGenerator
+	 */
+	public PerClassBuilder<CLS_T> setGenerateProtocol(boolean value) {
+		generateProtocol = value;
+		return this;
+	}
+	
 	public PerClassBuilder<CLS_T> useFieldHashing(boolean value) {
 		useFieldHash = value;
 		fieldHash = useFieldHash ? calculateFieldHash(cls) : 0;
@@ -80,11 +117,7 @@ public class PerClassBuilder<CLS_T> {
 					String val = getter.apply(obj);
 					StringProtocol.STRING_UTF8_PROTOCOL.write(bytifier, data, val);
 				},
-				(bytifier, data) -> {
-					String val = (String) StringProtocol.STRING_UTF8_PROTOCOL.create(bytifier, data);
-					StringProtocol.STRING_UTF8_PROTOCOL.read(bytifier, data, val);
-					return val;
-				}));
+				READ_CONSTRUCTOR_STRING));
 		return this;
 	}
 	
@@ -95,9 +128,48 @@ public class PerClassBuilder<CLS_T> {
 					@SuppressWarnings("unchecked")
 					CLS_T obj = (CLS_T) input;
 					int val = getter.applyAsInt(obj);
-					data.writeInt4(val);
+					bytifier.writeInt(data, val);
+				},
+				bytifierReader("readInt", Integer.TYPE)));
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addConstructorLong(ToLongFunction<CLS_T> getter) {
+		constrData.add(new ConstructorData(Long.TYPE,
+				(bytifier, data, input) ->
+				{
+					@SuppressWarnings("unchecked")
+					CLS_T obj = (CLS_T) input;
+					long val = getter.applyAsLong(obj);
+					bytifier.writeLong(data, val);
 				},
-				(bytifier, data) -> data.readInt4()));
+				bytifierReader("readLong", Long.TYPE)));
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addConstructorShort(ToShortFunction<CLS_T> getter) {
+		constrData.add(new ConstructorData(Short.TYPE,
+				(bytifier, data, input) ->
+				{
+					@SuppressWarnings("unchecked")
+					CLS_T obj = (CLS_T) input;
+					short val = getter.applyAsShort(obj);
+					data.writeInt2(val);
+				},
+				decodeDataReader("readInt2", Short.TYPE)));
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addConstructorByte(ToByteFunction<CLS_T> getter) {
+		constrData.add(new ConstructorData(Byte.TYPE,
+				(bytifier, data, input) ->
+				{
+					@SuppressWarnings("unchecked")
+					CLS_T obj = (CLS_T) input;
+					byte val = getter.applyAsByte(obj);
+					data.writeInt1(val);
+				},
+				decodeDataReader("readInt1", Byte.TYPE)));
 		return this;
 	}
 	
@@ -110,7 +182,20 @@ public class PerClassBuilder<CLS_T> {
 					double val = getter.applyAsDouble(obj);
 					data.writeFloat8(val);
 				},
-				(bytifier, data) -> data.readFloat8()));
+				decodeDataReader("readFloat8", Double.TYPE)));
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addConstructorFloat(ToFloatFunction<CLS_T> getter) {
+		constrData.add(new ConstructorData(Float.TYPE,
+				(bytifier, data, input) ->
+				{
+					@SuppressWarnings("unchecked")
+					CLS_T obj = (CLS_T) input;
+					float val = getter.applyAsFloat(obj);
+					data.writeFloat4(val);
+				},
+				decodeDataReader("readFloat4", Float.TYPE)));
 		return this;
 	}
 	
@@ -123,7 +208,7 @@ public class PerClassBuilder<CLS_T> {
 					boolean val = getter.test(obj);
 					data.writeBoolean(val);
 				},
-				(bytifier, data) -> data.readBoolean()));
+				decodeDataReader("readBoolean", Boolean.TYPE)));
 		return this;
 	}
 	
@@ -148,19 +233,99 @@ public class PerClassBuilder<CLS_T> {
 		return this;
 	}
 	
-	public PerClassBuilder<CLS_T> addFieldInt(ToIntFunction<CLS_T> getter, BiConsumer<CLS_T, Integer> setter) {
+	public PerClassBuilder<CLS_T> addFieldInt(ToIntFunction<CLS_T> getter, ObjIntConsumer<CLS_T> setter) {
 		writeActions.add(
 				(bytifier, data, input) ->
 		{
 			@SuppressWarnings("unchecked")
 			CLS_T obj = (CLS_T) input;
 			int val = getter.applyAsInt(obj);
-			data.writeInt4(val);
+			bytifier.writeInt(data, val);
+		});
+		readActions.add(
+				(bytifier, data, object) ->
+		{
+			int val = bytifier.readInt(data);
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) object;
+			setter.accept(obj, val);
+		});
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addFieldLong(ToLongFunction<CLS_T> getter, ObjLongConsumer<CLS_T> setter) {
+		writeActions.add(
+				(bytifier, data, input) ->
+		{
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) input;
+			long val = getter.applyAsLong(obj);
+			bytifier.writeLong(data, val);
+		});
+		readActions.add(
+				(bytifier, data, object) ->
+		{
+			long val = bytifier.readLong(data);
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) object;
+			setter.accept(obj, val);
+		});
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addFieldShort(ToShortFunction<CLS_T> getter, ObjShortConsumer<CLS_T> setter) {
+		writeActions.add(
+				(bytifier, data, input) ->
+		{
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) input;
+			short val = getter.applyAsShort(obj);
+			data.writeInt2(val);
+		});
+		readActions.add(
+				(bytifier, data, object) ->
+		{
+			short val = data.readInt2();
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) object;
+			setter.accept(obj, val);
+		});
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addFieldByte(ToByteFunction<CLS_T> getter, ObjByteConsumer<CLS_T> setter) {
+		writeActions.add(
+				(bytifier, data, input) ->
+		{
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) input;
+			byte val = getter.applyAsByte(obj);
+			data.writeInt1(val);
+		});
+		readActions.add(
+				(bytifier, data, object) ->
+		{
+			byte val = data.readInt1();
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) object;
+			setter.accept(obj, val);
+		});
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addFieldChar(ToCharFunction<CLS_T> getter, ObjCharConsumer<CLS_T> setter) {
+		writeActions.add(
+				(bytifier, data, input) ->
+		{
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) input;
+			char val = getter.applyAsChar(obj);
+			data.writeInt2(val);
 		});
 		readActions.add(
 				(bytifier, data, object) ->
 		{
-			int val = data.readInt4();
+			char val = (char) data.readInt2();
 			@SuppressWarnings("unchecked")
 			CLS_T obj = (CLS_T) object;
 			setter.accept(obj, val);
@@ -168,7 +333,7 @@ public class PerClassBuilder<CLS_T> {
 		return this;
 	}
 	
-	public PerClassBuilder<CLS_T> addFieldDouble(ToDoubleFunction<CLS_T> getter, BiConsumer<CLS_T, Double> setter) {
+	public PerClassBuilder<CLS_T> addFieldDouble(ToDoubleFunction<CLS_T> getter, ObjDoubleConsumer<CLS_T> setter) {
 		writeActions.add(
 				(bytifier, data, input) ->
 		{
@@ -188,7 +353,27 @@ public class PerClassBuilder<CLS_T> {
 		return this;
 	}
 	
-	public PerClassBuilder<CLS_T> addFieldBool(Predicate<CLS_T> getter, BiConsumer<CLS_T, Boolean> setter) {
+	public PerClassBuilder<CLS_T> addFieldFloat(ToFloatFunction<CLS_T> getter, ObjFloatConsumer<CLS_T> setter) {
+		writeActions.add(
+				(bytifier, data, input) ->
+		{
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) input;
+			float val = getter.applyAsFloat(obj);
+			data.writeFloat4(val);
+		});
+		readActions.add(
+				(bytifier, data, object) ->
+		{
+			float val = data.readFloat4();
+			@SuppressWarnings("unchecked")
+			CLS_T obj = (CLS_T) object;
+			setter.accept(obj, val);
+		});
+		return this;
+	}
+	
+	public PerClassBuilder<CLS_T> addFieldBool(Predicate<CLS_T> getter, ObjBooleanConsumer<CLS_T> setter) {
 		writeActions.add(
 				(bytifier, data, input) ->
 		{
@@ -252,72 +437,152 @@ public class PerClassBuilder<CLS_T> {
 	
 	public ClassProtocol build() {
 		try {
-			final int constrParamCount = constrData.size();
-			final Class<?>[] constrParamTypes = new Class[constrParamCount];
-			int idx = 0;
-			for (ConstructorData data : constrData) {
-				constrParamTypes[idx++] = data.type;
-			}
-			final Constructor<CLS_T> constructor = cls.getDeclaredConstructor(constrParamTypes);
-			constructor.setAccessible(true);
-			int fieldHash = this.fieldHash;
+			final MethodHandle constructor = createConstructorHandle();
 			if (computeIdfNum) {
 				idfNum = computeMagicNumber();
 			}
-			final int magNum = idfNum;
+			WriteAction[] writers = new WriteAction[constrData.size() + writeActions.size()];
+			for (int i = 0; i < constrData.size(); i++) {
+				writers[i] = constrData.get(i).writer;
+			}
+			for (int i = 0; i < writeActions.size(); i++) {
+				writers[constrData.size() + i] = writeActions.get(i);
+			}
+			ReadAction[] readers = readActions.toArray(new ReadAction[readActions.size()]);
 			
-			return new ClassProtocol() {
-				@Override
-				public void write(Bytifier bytifier, EncodeData data, Object input) {
-					if (useFieldHash) {
-						data.writeInt4(fieldHash);
-					}
-					for (ConstructorData constrData : constrData) {
-						constrData.writer.write(bytifier, data, input);
-					}
-					for (WriteAction writer : writeActions) {
-						writer.write(bytifier, data, input);
-					}
-				}
-				@Override
-				public void read(Bytifier bytifier, DecodeData data, Object object) {
-					for (ReadAction reader : readActions) {
-						reader.read(bytifier, data, object);
-					}
-				}
-				@Override
-				public Object create(Bytifier bytifier, DecodeData data) {
-					if (useFieldHash) {
-						int readFieldHash = data.readInt4();
-						if (fieldHash != readFieldHash) {
-							throw new IllegalArgumentException("expectedFieldHash="+fieldHash+"; readFieldHash="+readFieldHash);
-						}
-					}
-					try {
-						Object[] params = new Object[constrParamCount];
-						for (int i = 0; i < constrParamCount; i++) {
-							params[i] = constrData.get(i).reader.read(bytifier, data);
-						}
-						return constructor.newInstance(params);
-					} catch (Exception e) {
-						throw new RuntimeException(e);
-					}
-				}
-				@Override
-				public int getIdentificationNumber() {
-					return magNum;
-				}
-			};
+			BuiltProtocol protocol = new BuiltProtocol(constructor, useFieldHash, fieldHash, idfNum, writers, readers);
+			if (generateProtocol) {
+				return PerClassProtocolGenerator.generate(protocol);
+			}
+			return protocol;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
+	/**<p>
+	 * Returns a method handle of type {@code (Bytifier, DecodeData)Object} which reads the
+	 * constructor parameters in the order they were added and invokes the constructor with
+	 * them. The parameters are passed to the constructor directly without boxing them into
+	 * an array.
+	 */
+	protected MethodHandle createConstructorHandle() throws ReflectiveOperationException {
+		final int constrParamCount = constrData.size();
+		final Class<?>[] constrParamTypes = new Class[constrParamCount];
+		for (int i = 0; i < constrParamCount; i++) {
+			constrParamTypes[i] = constrData.get(i).type;
+		}
+		Constructor<CLS_T> constructor = cls.getDeclaredConstructor(constrParamTypes);
+		constructor.setAccessible(true);
+		// (T0, ..., Tn-1)CLS_T
+		MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+		// (T0, ..., Tn-1, Bytifier, DecodeData)CLS_T
+		handle = MethodHandles.dropArguments(handle, constrParamCount, Bytifier.class, DecodeData.class);
+		// Fold from the last parameter to the first so that the first parameter is read first
+		for (int i = constrParamCount - 1; i >= 0; i--) {
+			handle = MethodHandles.foldArguments(handle, i, constrData.get(i).reader);
+		}
+		return handle.asType(CONSTRUCTOR_HANDLE_TYPE);
+	}
+	
+	protected static MethodHandle decodeDataReader(String methodName, Class<?> type) {
+		try {
+			MethodHandle reader = MethodHandles.publicLookup().findVirtual(DecodeData.class,
+					methodName, MethodType.methodType(type));
+			return MethodHandles.dropArguments(reader, 0, Bytifier.class);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**<p>
+	 * Returns a handle of type {@code (Bytifier, DecodeData)type} for a read method of
+	 * the {@link Bytifier} which takes the DecodeData as its only argument.
+	 */
+	protected static MethodHandle bytifierReader(String methodName, Class<?> type) {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Bytifier.class,
+					methodName, MethodType.methodType(type, DecodeData.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	protected static String readConstructorString(Bytifier bytifier, DecodeData data) {
+		String val = (String) StringProtocol.STRING_UTF8_PROTOCOL.create(bytifier, data);
+		StringProtocol.STRING_UTF8_PROTOCOL.read(bytifier, data, val);
+		return val;
+	}
+	
+	/**<p>
+	 * The protocol built from the definition. The actions are stored in arrays in the
+	 * order in which they were added; the constructor parameters are written before all
+	 * other fields.
+	 */
+	protected static class BuiltProtocol implements ClassProtocol {
+		protected final MethodHandle constructor;
+		protected final boolean useFieldHash;
+		protected final int fieldHash;
+		protected final int idfNum;
+		protected final WriteAction[] writers;
+		protected final ReadAction[] readers;
+		protected BuiltProtocol(MethodHandle constructor, boolean useFieldHash, int fieldHash, int idfNum,
+				WriteAction[] writers, ReadAction[] readers)
+		{
+			this.constructor = constructor;
+			this.useFieldHash = useFieldHash;
+			this.fieldHash = fieldHash;
+			this.idfNum = idfNum;
+			this.writers = writers;
+			this.readers = readers;
+		}
+		/** Creates a copy of {@code other}; used by generated subclasses. */
+		protected BuiltProtocol(BuiltProtocol other) {
+			this(other.constructor, other.useFieldHash, other.fieldHash, other.idfNum, other.writers, other.readers);
+		}
+		@Override
+		public void write(Bytifier bytifier, EncodeData data, Object input) {
+			if (useFieldHash) {
+				data.writeInt4(fieldHash);
+			}
+			for (WriteAction writer : writers) {
+				writer.write(bytifier, data, input);
+			}
+		}
+		@Override
+		public void read(Bytifier bytifier, DecodeData data, Object object) {
+			for (ReadAction reader : readers) {
+				reader.read(bytifier, data, object);
+			}
+		}
+		@Override
+		public Object create(Bytifier bytifier, DecodeData data) {
+			if (useFieldHash) {
+				int readFieldHash = data.readInt4();
+				if (fieldHash != readFieldHash) {
+					throw new IllegalArgumentException("expectedFieldHash="+fieldHash+"; readFieldHash="+readFieldHash);
+				}
+			}
+			try {
+				return (Object) constructor.invokeExact(bytifier, data);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+		@Override
+		public int getIdentificationNumber() {
+			return idfNum;
+		}
+	}
+	
 	protected class ConstructorData {
 		protected final Class<?> type;
 		protected final WriteAction writer;
-		protected final ConstructorReadAction reader;
-		public ConstructorData(Class<?> paramType, WriteAction writeFunc, ConstructorReadAction readFunc) {
+		/** A method handle of type {@code (Bytifier, DecodeData)type} */
+		protected final MethodHandle reader;
+		public ConstructorData(Class<?> paramType, WriteAction writeFunc, MethodHandle readFunc) {
 			super();
 			type = paramType;
 			writer = writeFunc;
@@ -333,8 +598,49 @@ public class PerClassBuilder<CLS_T> {
 		public void read(Bytifier bytifier, DecodeData data, Object object);
 	}
 	
-	public static interface ConstructorReadAction {
-		public Object read(Bytifier bytifier, DecodeData data);
+	@FunctionalInterface
+	public static interface ToFloatFunction<T> {
+		public float applyAsFloat(T value);
+	}
+	
+	@FunctionalInterface
+	public static interface ToShortFunction<T> {
+		public short applyAsShort(T value);
+	}
+	
+	@FunctionalInterface
+	public static interface ToByteFunction<T> {
+		public byte applyAsByte(T value);
+	}
+	
+	@FunctionalInterface
+	public static interface ToCharFunction<T> {
+		public char applyAsChar(T value);
+	}
+	
+	@FunctionalInterface
+	public static interface ObjFloatConsumer<T> {
+		public void accept(T t, float value);
+	}
+	
+	@FunctionalInterface
+	public static interface ObjShortConsumer<T> {
+		public void accept(T t, short value);
+	}
+	
+	@FunctionalInterface
+	public static interface ObjByteConsumer<T> {
+		public void accept(T t, byte value);
+	}
+	
+	@FunctionalInterface
+	public static interface ObjCharConsumer<T> {
+		public void accept(T t, char value);
+	}
+	
+	@FunctionalInterface
+	public static interface ObjBooleanConsumer<T> {
+		public void accept(T t, boolean value);
 	}
 	
 }
\ No newline at end of file
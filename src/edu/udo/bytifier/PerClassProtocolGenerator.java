@@ -0,0 +1,190 @@
+package edu.udo.bytifier;
+
+import static edu.udo.bytifier.protocols.ClassFileWriter.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+
+import edu.udo.bytifier.PerClassBuilder.BuiltProtocol;
+import edu.udo.bytifier.PerClassBuilder.ReadAction;
+import edu.udo.bytifier.PerClassBuilder.WriteAction;
+import edu.udo.bytifier.protocols.ClassFileWriter;
+import edu.udo.bytifier.protocols.ClassFileWriter.Code;
+
+/**<p>
+ * Generates a specialized protocol for a class defined with a {@link PerClassBuilder}.
+ * <p>
+ * The protocol built by the PerClassBuilder loops over arrays of read and write actions.
+ * All protocols share that loop, so the calls to the actions are megamorphic and the JIT
+ * can not inline the getters and setters of any class. The generated protocol instead
+ * stores every action in its own static final field and calls them one after another
+ * in straight-line code. Each of these calls only ever sees a single action, which the
+ * JIT treats as a constant and inlines together with the getter or setter it wraps.
+ * <p>
+ * The generated class is a hidden subclass of {@link BuiltProtocol}. The actions are
+ * passed to it as class data. The generated protocol writes and reads exactly the same
+ * bytes as the protocol it was generated from.
+ * 
+ * @see PerClassBuilder#setGenerateProtocol(boolean)
+ */
+public class PerClassProtocolGenerator {
+	
+	protected static final String SUPER_NAME = internalName(BuiltProtocol.class);
+	protected static final String WRITE_ACTION_NAME = internalName(WriteAction.class);
+	protected static final String READ_ACTION_NAME = internalName(ReadAction.class);
+	protected static final String WRITE_DESC = "(L"+internalName(Bytifier.class)+";L"
+			+internalName(EncodeData.class)+";Ljava/lang/Object;)V";
+	protected static final String READ_DESC = "(L"+internalName(Bytifier.class)+";L"
+			+internalName(DecodeData.class)+";Ljava/lang/Object;)V";
+	protected static final String INIT_DESC = "(L"+SUPER_NAME+";)V";
+	
+	/** The bytes of code of {@code <clinit>} besides the actions: loading the class data and returning. */
+	protected static final int STATIC_INIT_CODE_LENGTH = 3 + 3 + 3 + 3 + 3 + 2 + 1;
+	/** The bytes of code of {@code <clinit>} per action: aload, sipush, aaload, checkcast, putstatic. */
+	protected static final int CODE_LENGTH_PER_LOAD = 2 + 3 + 1 + 3 + 3;
+	/**
+	 * The largest number of actions whose {@code <clinit>} code fits into a single method.
+	 * The code of {@code write} and {@code read} is shorter for the same number of actions
+	 * since each call of an action takes 11 bytes: getstatic, 3 aloads and invokeinterface.
+	 */
+	protected static final int MAX_ACTIONS = (MAX_CODE_LENGTH - STATIC_INIT_CODE_LENGTH) / CODE_LENGTH_PER_LOAD;
+	
+	/**<p>
+	 * Returns a generated protocol equivalent to {@code protocol} or {@code protocol}
+	 * itself if no protocol can be generated. No protocol is generated if the code for
+	 * all actions does not fit into the methods of a class.
+	 */
+	public static BuiltProtocol generate(BuiltProtocol protocol) {
+		if (protocol.writers.length + protocol.readers.length > MAX_ACTIONS) {
+			return protocol;
+		}
+		try {
+			Object[] actions = new Object[protocol.writers.length + protocol.readers.length];
+			System.arraycopy(protocol.writers, 0, actions, 0, protocol.writers.length);
+			System.arraycopy(protocol.readers, 0, actions, protocol.writers.length, protocol.readers.length);
+			
+			byte[] classFile = new PerClassProtocolGenerator(protocol).toClassFile();
+			Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(classFile, actions, true);
+			return (BuiltProtocol) lookup.lookupClass()
+					.getDeclaredConstructor(BuiltProtocol.class)
+					.newInstance(protocol);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return protocol;
+		}
+	}
+	
+	protected final BuiltProtocol protocol;
+	protected final String thisName;
+	protected final ClassFileWriter out;
+	
+	protected PerClassProtocolGenerator(BuiltProtocol protocol) {
+		this.protocol = protocol;
+		thisName = internalName(PerClassProtocolGenerator.class)+"$$Protocol";
+		out = new ClassFileWriter(thisName, SUPER_NAME);
+	}
+	
+	protected byte[] toClassFile() {
+		for (int i = 0; i < protocol.writers.length; i++) {
+			out.addField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, writerName(i), "L"+WRITE_ACTION_NAME+";");
+		}
+		for (int i = 0; i < protocol.readers.length; i++) {
+			out.addField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, readerName(i), "L"+READ_ACTION_NAME+";");
+		}
+		out.addMethod(ACC_STATIC, "<clinit>", "()V", 3, 1, staticInitCode());
+		out.addMethod(ACC_PUBLIC, "<init>", INIT_DESC, 2, 2, initCode());
+		out.addMethod(ACC_PUBLIC, "write", WRITE_DESC, 4, 4, writeCode());
+		out.addMethod(ACC_PUBLIC, "read", READ_DESC, 4, 4, readCode());
+		return out.toByteArray();
+	}
+	
+	protected String writerName(int idx) {
+		return "W"+idx;
+	}
+	
+	protected String readerName(int idx) {
+		return "R"+idx;
+	}
+	
+	/*
+	 * Object[] actions = MethodHandles.classData(MethodHandles.lookup(), "_", Object[].class);
+	 * W0 = (WriteAction) actions[0]; ...; R0 = (ReadAction) actions[writers.length]; ...
+	 */
+	protected Code staticInitCode() {
+		String handlesName = internalName(MethodHandles.class);
+		String lookupDesc = "L"+internalName(Lookup.class)+";";
+		Code code = new Code()
+				.opWide(INVOKESTATIC, out.methodConst(handlesName, "lookup", "()"+lookupDesc))
+				.opWide(LDC_W, out.stringConst("_"))
+				.opWide(LDC_W, out.classConst("[Ljava/lang/Object;"))
+				.opWide(INVOKESTATIC, out.methodConst(handlesName, "classData",
+						"("+lookupDesc+"Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"))
+				.opWide(CHECKCAST, out.classConst("[Ljava/lang/Object;"))
+				.op(ASTORE, 0);
+		int writerCount = protocol.writers.length;
+		for (int i = 0; i < writerCount; i++) {
+			loadAction(code, i, WRITE_ACTION_NAME)
+				.opWide(PUTSTATIC, out.fieldConst(thisName, writerName(i), "L"+WRITE_ACTION_NAME+";"));
+		}
+		for (int i = 0; i < protocol.readers.length; i++) {
+			loadAction(code, writerCount + i, READ_ACTION_NAME)
+				.opWide(PUTSTATIC, out.fieldConst(thisName, readerName(i), "L"+READ_ACTION_NAME+";"));
+		}
+		return code.op(RETURN);
+	}
+	
+	protected Code loadAction(Code code, int idx, String actionName) {
+		return code.op(ALOAD, 0)
+				.opWide(SIPUSH, idx)
+				.op(AALOAD)
+				.opWide(CHECKCAST, out.classConst(actionName));
+	}
+	
+	protected Code initCode() {
+		return new Code()
+				.op(ALOAD_0)
+				.op(ALOAD_1)
+				.opWide(INVOKESPECIAL, out.methodConst(SUPER_NAME, "<init>", INIT_DESC))
+				.op(RETURN);
+	}
+	
+	/*
+	 * write(Bytifier bytifier, EncodeData data, Object input)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=input
+	 */
+	protected Code writeCode() {
+		Code code = new Code();
+		if (protocol.useFieldHash) {
+			code.op(ALOAD_2)
+				.op(ALOAD_0)
+				.opWide(GETFIELD, out.fieldConst(SUPER_NAME, "fieldHash", "I"))
+				.opWide(INVOKEVIRTUAL, out.methodConst(internalName(EncodeData.class), "writeInt4", "(I)V"));
+		}
+		int methodIdx = out.interfaceMethodConst(WRITE_ACTION_NAME, "write", WRITE_DESC);
+		for (int i = 0; i < protocol.writers.length; i++) {
+			code.opWide(GETSTATIC, out.fieldConst(thisName, writerName(i), "L"+WRITE_ACTION_NAME+";"))
+				.op(ALOAD_1)
+				.op(ALOAD_2)
+				.op(ALOAD_3)
+				.invokeInterface(methodIdx, 3);
+		}
+		return code.op(RETURN);
+	}
+	
+	/*
+	 * read(Bytifier bytifier, DecodeData data, Object object)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=object
+	 */
+	protected Code readCode() {
+		Code code = new Code();
+		int methodIdx = out.interfaceMethodConst(READ_ACTION_NAME, "read", READ_DESC);
+		for (int i = 0; i < protocol.readers.length; i++) {
+			code.opWide(GETSTATIC, out.fieldConst(thisName, readerName(i), "L"+READ_ACTION_NAME+";"))
+				.op(ALOAD_1)
+				.op(ALOAD_2)
+				.op(ALOAD_3)
+				.invokeInterface(methodIdx, 3);
+		}
+		return code.op(RETURN);
+	}
+	
+}
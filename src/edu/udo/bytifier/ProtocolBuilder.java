@@ -18,6 +18,7 @@ import edu.udo.bytifier.protocols.ObjectProtocol;
 import edu.udo.bytifier.protocols.PrimitiveArrays;
 import edu.udo.bytifier.protocols.ProtocolUtil;
 import edu.udo.bytifier.protocols.ReflectionClassProtocol;
+import edu.udo.bytifier.protocols.ReflectionProtocolGenerator;
 import edu.udo.bytifier.protocols.StringProtocol;
 import edu.udo.bytifier.protocols.ValueTypeArrayProtocol;
 
@@ -36,6 +37,9 @@ public class ProtocolBuilder {
 	}
 	
 	protected final Map<Class<?>, Supplier<ClassProtocol>> clsMap = new HashMap<>();
+	protected boolean generateReflectionProtocols = false;
+	protected boolean compactIntegers = false;
+	protected boolean deduplicateStrings = false;
 	
 	{// initialize protocol with defaults
 		isObjectClassIncluded(true);
@@ -56,6 +60,62 @@ public class ProtocolBuilder {
 		return this;
 	}
 	
+	/**<p>
+	 * If set to {@code true} the protocols defined by {@link #defineViaReflection(Class)},
+	 * {@link #defineViaReflectionOnlySelectedFields(Class, String...)} and
+	 * {@link #defineViaReflectionWithoutSelectedFields(Class, String...)} are replaced by
+	 * generated protocols which access the fields directly instead of through reflection.
+	 * The generated protocols produce the same bytes as the reflective ones. Classes for
+	 * which no protocol can be generated keep using reflection.
+	 * <p>
+	 * The setting applies to all reflection based definitions when {@link #build()} is
+	 * called. The default is {@code false}.
+	 * 
+	 * @see ReflectionProtocolGenerator
+	 */
+	public ProtocolBuilder setGenerateReflectionProtocols(boolean value) {
+		generateReflectionProtocols = value;
+		return this;
+	}
+	
+	public boolean isGenerateReflectionProtocols() {
+		return generateReflectionProtocols;
+	}
+	
+	/**<p>
+	 * If set to {@code true} the built {@link Bytifier} writes lengths, sizes and the
+	 * int and long values of {@link PerClassBuilder} definitions as varints. Small values
+	 * are encoded in a single byte this way, large values may take one byte more than
+	 * with a fixed size. The setting changes the protocol identification number.
+	 * <p>
+	 * The default is {@code false}.
+	 * 
+	 * @see Bytifier#isCompactIntegers()
+	 */
+	public ProtocolBuilder setCompactIntegers(boolean value) {
+		compactIntegers = value;
+		return this;
+	}
+	
+	public boolean isCompactIntegers() {
+		return compactIntegers;
+	}
+	
+	/**<p>
+	 * Sets whether the built {@link Bytifier} writes repeated equal strings as references.
+	 * The default is {@code false}.
+	 * 
+	 * @see Bytifier#setDeduplicateStrings(boolean)
+	 */
+	public ProtocolBuilder setDeduplicateStrings(boolean value) {
+		deduplicateStrings = value;
+		return this;
+	}
+	
+	public boolean isDeduplicateStrings() {
+		return deduplicateStrings;
+	}
+	
 	public ProtocolBuilder setStringEncodingCharset(Charset charset) {
 		clsMap.put(String.class, () -> new StringProtocol(charset));
 		return this;
@@ -125,17 +185,17 @@ public class ProtocolBuilder {
 	}
 	
 	public ProtocolBuilder defineViaReflection(Class<?> cls) {
-		addClassProtocol(cls, ReflectionClassProtocol.allFieldsOf(cls));
+		addReflectionProtocol(cls, ReflectionClassProtocol.allFieldsOf(cls));
 		return this;
 	}
 	
 	public ProtocolBuilder defineViaReflectionOnlySelectedFields(Class<?> cls, String ... fieldNames) {
-		addClassProtocol(cls, ReflectionClassProtocol.withFields(cls, fieldNames));
+		addReflectionProtocol(cls, ReflectionClassProtocol.withFields(cls, fieldNames));
 		return this;
 	}
 	
 	public ProtocolBuilder defineViaReflectionWithoutSelectedFields(Class<?> cls, String ... fieldNames) {
-		addClassProtocol(cls, ReflectionClassProtocol.withoutFields(cls, fieldNames));
+		addReflectionProtocol(cls, ReflectionClassProtocol.withoutFields(cls, fieldNames));
 		return this;
 	}
 	
@@ -168,7 +228,9 @@ public class ProtocolBuilder {
 			ClassProtocol prot = entry.getValue().get();
 			protocols.add(new ProtocolTuple(cls, prot));
 		}
-		return new Bytifier(protocols);
+		Bytifier bytifier = new Bytifier(protocols, compactIntegers);
+		bytifier.setDeduplicateStrings(deduplicateStrings);
+		return bytifier;
 	}
 	
 	protected void addClassProtocol(Class<?> cls, ClassProtocol proto) {
@@ -176,6 +238,12 @@ public class ProtocolBuilder {
 		clsMap.put(cls, () -> proto);
 	}
 	
+	protected void addReflectionProtocol(Class<?> cls, ReflectionClassProtocol proto) {
+		throwExcIfClsDefined(cls);
+		clsMap.put(cls, () -> generateReflectionProtocols
+				? ReflectionProtocolGenerator.generate(proto) : proto);
+	}
+	
 	protected void throwExcIfClsDefined(Class<?> cls) {
 		if (hasClassDefinition(cls)) {
 			throw new IllegalStateException("hasClassDefinition("+cls.getName()+") == true");
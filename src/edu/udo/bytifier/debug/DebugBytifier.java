@@ -10,7 +10,6 @@ import edu.udo.bytifier.DecodeData;
 import edu.udo.bytifier.EncodeData;
 import edu.udo.bytifier.ProtocolTuple;
 import edu.udo.bytifier.UnknownObjectTypeReaction;
-import edu.udo.bytifier.protocols.ProtocolUtil;
 
 public class DebugBytifier extends Bytifier {
 	
@@ -29,7 +28,7 @@ public class DebugBytifier extends Bytifier {
 	}
 	
 	public DebugBytifier(Bytifier bytifier) {
-		super(bytifier.getProtocols());
+		super(bytifier.getProtocols(), bytifier.isCompactIntegers());
 	}
 	
 	public String getMostRecentReport() {
@@ -131,10 +130,15 @@ public class DebugBytifier extends Bytifier {
 		case GENERIC_ARRAY:
 			result = readGenericArray(data);
 			break;
+		case SEGMENTED:
+			result = readSegmented(data);
+			break;
 		case UNKNOWN_OBJ:
 			return readUnknownObject(data);
 		case UNKNOWN_ENUM:
 			return readUnknownEnum(data);
+		case DESCRIBED_UNKNOWN_OBJ:
+			return readDescribedUnknownObject(data);
 		case ILLEGAL:
 		default:
 			throw new IllegalStateException("chunk type '"+chunkType+"' is unknown.");
@@ -148,15 +152,13 @@ public class DebugBytifier extends Bytifier {
 		Class<?> elemCls = getClassForIndex(elemClsIdx);
 		data.writeLine("Array element class index: ", Integer.toString(elemClsIdx), "; Array element class: ", elemCls.getName());
 		
-		int dim = data.readInt1();
+		int dim = data.readInt1() & 0xFF;
 		data.writeLine("Array dimension: ", Integer.toString(dim));
-		for (int i = 1; i < dim; i++) {
-			elemCls = Array.newInstance(elemCls, 0).getClass();
-		}
+		Class<?> componentType = getGenericArrayComponentType(elemClsIdx, dim);
 
-		int len = data.readInt3();
+		int len = readLength(data);
 		data.writeLine("Array length: ", Integer.toString(len));
-		Object arr = Array.newInstance(elemCls, len);
+		Object arr = Array.newInstance(componentType, len);
 		data.pushObjectReference(arr);
 
 		for (int i = 0; i < len; i++) {
@@ -340,14 +342,15 @@ public class DebugBytifier extends Bytifier {
 			} else {
 				int protocolIdx = data.getProtocolIndexFor(object);
 				if (protocolIdx < 0) {
-					Class<?> arrayType = ProtocolUtil.getArrayElementType(object);
-					protocolIdx = data.getProtocolIndexFor(arrayType);
-					if (arrayType != null && protocolIdx >= 0) {
+					protocolIdx = getArrayElementProtocolIndexFor(object.getClass());
+					if (protocolIdx >= 0) {
 						data.writeLine("Chunk Type: ", ChunkType.GENERIC_ARRAY.getProperName());
 						writeGenericArray(data, protocolIdx, object);
 					} else {
 						if (object.getClass().isEnum()) {
 							data.writeLine("Chunk Type: ", ChunkType.UNKNOWN_ENUM.getProperName());
+						} else if (data.getUnknownClassIndexFor(object.getClass()) >= 0) {
+							data.writeLine("Chunk Type: ", ChunkType.DESCRIBED_UNKNOWN_OBJ.getProperName());
 						} else {
 							data.writeLine("Chunk Type: ", ChunkType.UNKNOWN_OBJ.getProperName());
 						}
@@ -12,7 +12,7 @@ public class DebugDecodeData extends DecodeData {
 		
 		String protoID = Integer.toHexString(getProtocolIdentificationNumber());
 		String clsSizeStr = Integer.toString(clsIdxBSize);
-		String refCountStr = Integer.toString(refMap.length);
+		String refCountStr = Integer.toString(expectedRefCount);
 		writeLine("Protocol identification number: ", protoID);
 		writeLine("Byte size of class references: ", clsSizeStr);
 		writeLine("Expected number of referenced objects: ", refCountStr);
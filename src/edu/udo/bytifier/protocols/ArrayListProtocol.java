@@ -13,7 +13,7 @@ public class ArrayListProtocol implements ClassProtocol {
 	public void write(Bytifier bytifier, EncodeData data, Object object) {
 		ArrayList<?> list = (ArrayList<?>) object;
 		int length = list.size();
-		data.writeInt4(length);
+		bytifier.writeSize(data, length);
 		for (int i = 0; i < length; i++) {
 			bytifier.writeChunk(data, list.get(i), false);
 		}
@@ -27,7 +27,7 @@ public class ArrayListProtocol implements ClassProtocol {
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Override
 	public void read(Bytifier bytifier, DecodeData data, Object object) {
-		int length = data.readInt4();
+		int length = bytifier.readSize(data);
 		ArrayList list = (ArrayList) object;
 		list.ensureCapacity(length);
 		for (int i = 0; i < length; i++) {
@@ -0,0 +1,307 @@
+package edu.udo.bytifier.protocols;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**<p>
+ * A minimal writer for class files which is used to generate protocols at runtime. It
+ * maintains the constant pool and collects fields and methods. Method bodies are written
+ * by the caller as raw bytecode into a {@link Code} object.
+ * <p>
+ * Only what is needed for straight-line code is supported: there are no branch
+ * instructions, exception tables or stack map frames.
+ * 
+ * @see ReflectionProtocolGenerator
+ */
+public class ClassFileWriter {
+	
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_PRIVATE = 0x0002;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+	
+	public static final int ICONST_0 = 0x03;
+	public static final int ICONST_1 = 0x04;
+	public static final int SIPUSH = 0x11;
+	public static final int LDC_W = 0x13;
+	public static final int ILOAD = 0x15;
+	public static final int ALOAD = 0x19;
+	public static final int ALOAD_0 = 0x2A;
+	public static final int ALOAD_1 = 0x2B;
+	public static final int ALOAD_2 = 0x2C;
+	public static final int ALOAD_3 = 0x2D;
+	public static final int AALOAD = 0x32;
+	public static final int ASTORE = 0x3A;
+	public static final int I2C = 0x92;
+	public static final int RETURN = 0xB1;
+	public static final int GETSTATIC = 0xB2;
+	public static final int PUTSTATIC = 0xB3;
+	public static final int GETFIELD = 0xB4;
+	public static final int PUTFIELD = 0xB5;
+	public static final int INVOKEVIRTUAL = 0xB6;
+	public static final int INVOKESPECIAL = 0xB7;
+	public static final int INVOKESTATIC = 0xB8;
+	public static final int INVOKEINTERFACE = 0xB9;
+	public static final int CHECKCAST = 0xC0;
+	
+	protected static final int CLASS_FILE_VERSION = 55;
+	/** The largest number of bytes of code a single method can have. */
+	public static final int MAX_CODE_LENGTH = 0xFFFF;
+	
+	public static String internalName(Class<?> cls) {
+		return cls.getName().replace('.', '/');
+	}
+	
+	public static String descriptor(Class<?> type) {
+		if (type.isArray()) {
+			return internalName(type);
+		}
+		if (type.isPrimitive()) {
+			if (type == Boolean.TYPE) {
+				return "Z";
+			} else if (type == Long.TYPE) {
+				return "J";
+			} else if (type == Void.TYPE) {
+				return "V";
+			}
+			return Character.toString(Character.toUpperCase(type.getName().charAt(0)));
+		}
+		return "L"+internalName(type)+";";
+	}
+	
+	protected final Map<String, Integer> constantIndices = new HashMap<>();
+	protected final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+	protected final DataOutputStream constants = new DataOutputStream(constantBytes);
+	protected final ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+	protected final DataOutputStream members = new DataOutputStream(memberBytes);
+	protected final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+	protected final DataOutputStream methods = new DataOutputStream(methodBytes);
+	protected final int thisIdx;
+	protected final int superIdx;
+	protected final int[] interfaceIndices;
+	protected int constantCount = 1;
+	protected int fieldCount;
+	protected int methodCount;
+	
+	/**<p>
+	 * Starts a public final class.
+	 * 
+	 * @param thisName			the internal name of the class
+	 * @param superName			the internal name of the super class
+	 * @param interfaceNames	the internal names of all implemented interfaces
+	 */
+	public ClassFileWriter(String thisName, String superName, String ... interfaceNames) {
+		thisIdx = classConst(thisName);
+		superIdx = classConst(superName);
+		interfaceIndices = new int[interfaceNames.length];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaceIndices[i] = classConst(interfaceNames[i]);
+		}
+	}
+	
+	public int utf8Const(String value) {
+		String key = "U"+value;
+		Integer idx = constantIndices.get(key);
+		if (idx != null) {
+			return idx;
+		}
+		try {
+			constants.writeByte(1);
+			constants.writeUTF(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return newConst(key, 1);
+	}
+	
+	public int stringConst(String value) {
+		String key = "S"+value;
+		Integer idx = constantIndices.get(key);
+		if (idx != null) {
+			return idx;
+		}
+		return refConst(key, 8, utf8Const(value));
+	}
+	
+	public int classConst(String internalName) {
+		String key = "C"+internalName;
+		Integer idx = constantIndices.get(key);
+		if (idx != null) {
+			return idx;
+		}
+		return refConst(key, 7, utf8Const(internalName));
+	}
+	
+	public int nameAndTypeConst(String name, String desc) {
+		String key = "N"+name+" "+desc;
+		Integer idx = constantIndices.get(key);
+		if (idx != null) {
+			return idx;
+		}
+		return refConst(key, 12, utf8Const(name), utf8Const(desc));
+	}
+	
+	public int fieldConst(String owner, String name, String desc) {
+		return memberConst("F", 9, owner, name, desc);
+	}
+	
+	public int methodConst(String owner, String name, String desc) {
+		return memberConst("M", 10, owner, name, desc);
+	}
+	
+	public int interfaceMethodConst(String owner, String name, String desc) {
+		return memberConst("I", 11, owner, name, desc);
+	}
+	
+	protected int memberConst(String prefix, int tag, String owner, String name, String desc) {
+		String key = prefix+owner+" "+name+" "+desc;
+		Integer idx = constantIndices.get(key);
+		if (idx != null) {
+			return idx;
+		}
+		return refConst(key, tag, classConst(owner), nameAndTypeConst(name, desc));
+	}
+	
+	protected int refConst(String key, int tag, int ... refs) {
+		try {
+			constants.writeByte(tag);
+			for (int ref : refs) {
+				constants.writeShort(ref);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return newConst(key, tag);
+	}
+	
+	protected int newConst(String key, int tag) {
+		int idx = constantCount++;
+		if (idx > 0xFFFF) {
+			throw new IllegalStateException("Too many constants; tag="+tag);
+		}
+		constantIndices.put(key, idx);
+		return idx;
+	}
+	
+	public void addField(int access, String name, String desc) {
+		int nameIdx = utf8Const(name);
+		int descIdx = utf8Const(desc);
+		try {
+			members.writeShort(access);
+			members.writeShort(nameIdx);
+			members.writeShort(descIdx);
+			members.writeShort(0);// attributes
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		fieldCount++;
+	}
+	
+	/**<p>
+	 * Adds a method whose body is the bytecode written to {@code code}.
+	 * 
+	 * @throws IllegalStateException	if the code is longer than a method may be
+	 */
+	public void addMethod(int access, String name, String desc, int maxStack, int maxLocals, Code code) {
+		byte[] bytes = code.toByteArray();
+		if (bytes.length > MAX_CODE_LENGTH) {
+			throw new IllegalStateException("Method too large; name="+name+"; length="+bytes.length);
+		}
+		int nameIdx = utf8Const(name);
+		int descIdx = utf8Const(desc);
+		int codeNameIdx = utf8Const("Code");
+		try {
+			methods.writeShort(access);
+			methods.writeShort(nameIdx);
+			methods.writeShort(descIdx);
+			methods.writeShort(1);// attributes
+			methods.writeShort(codeNameIdx);
+			methods.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+			methods.writeShort(maxStack);
+			methods.writeShort(maxLocals);
+			methods.writeInt(bytes.length);
+			methods.write(bytes);
+			methods.writeShort(0);// exception table
+			methods.writeShort(0);// attributes
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		methodCount++;
+	}
+	
+	public byte[] toByteArray() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_FILE_VERSION);
+			out.writeShort(constantCount);
+			constants.flush();
+			constantBytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisIdx);
+			out.writeShort(superIdx);
+			out.writeShort(interfaceIndices.length);
+			for (int idx : interfaceIndices) {
+				out.writeShort(idx);
+			}
+			out.writeShort(fieldCount);
+			members.flush();
+			memberBytes.writeTo(out);
+			out.writeShort(methodCount);
+			methods.flush();
+			methodBytes.writeTo(out);
+			out.writeShort(0);// attributes
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// can not happen when writing to a ByteArrayOutputStream
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**<p>
+	 * The bytecode of a single method.
+	 */
+	public static class Code {
+		
+		protected final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		public Code op(int opcode) {
+			bytes.write(opcode);
+			return this;
+		}
+		
+		public Code op(int opcode, int operand) {
+			bytes.write(opcode);
+			bytes.write(operand);
+			return this;
+		}
+		
+		public Code opWide(int opcode, int operand) {
+			bytes.write(opcode);
+			bytes.write(operand >> 8);
+			bytes.write(operand);
+			return this;
+		}
+		
+		public Code invokeInterface(int methodIdx, int argCount) {
+			opWide(INVOKEINTERFACE, methodIdx);
+			bytes.write(argCount + 1);
+			bytes.write(0);
+			return this;
+		}
+		
+		public byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+		
+	}
+	
+}
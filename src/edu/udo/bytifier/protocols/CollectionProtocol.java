@@ -20,7 +20,7 @@ public class CollectionProtocol implements ClassProtocol {
 	public void write(Bytifier bytifier, EncodeData data, Object object) {
 		Collection<?> collection = (Collection<?>) object;
 		int length = collection.size();
-		data.writeInt4(length);
+		bytifier.writeSize(data, length);
 		for (Object elem : collection) {
 			bytifier.writeChunk(data, elem, false);
 		}
@@ -34,7 +34,7 @@ public class CollectionProtocol implements ClassProtocol {
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Override
 	public void read(Bytifier bytifier, DecodeData data, Object object) {
-		int length = data.readInt4();
+		int length = bytifier.readSize(data);
 		Collection collection = (Collection) object;
 		for (int i = 0; i < length; i++) {
 			collection.add(bytifier.readChunk(data));
@@ -0,0 +1,174 @@
+package edu.udo.bytifier.protocols;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ValueType;
+import edu.udo.bytifier.protocols.ReflectionClassProtocol.FieldReader;
+import edu.udo.bytifier.protocols.ReflectionClassProtocol.FieldWriter;
+
+/**<p>
+ * Writes the value of a single field to an {@link EncodeData} and reads it back from a
+ * {@link DecodeData}. An accessor is resolved once per field and picks the matching
+ * write and read methods for the type of the field at that time, so that encoding and
+ * decoding an object does not need any lookups per field.
+ * <p>
+ * Accessors created by {@link #of(Field)} are generated by the
+ * {@link FieldAccessorGenerator} and access the field directly, so the JIT compiles each
+ * access down to a plain field load or store. Accessors are generated once per field and
+ * shared by all protocols. Static and final fields, and fields of classes which are not
+ * open to this library, are accessed through reflection instead. The values are encoded
+ * the same way in both cases.
+ * 
+ * @see ReflectionClassProtocol
+ * @see UnknownClassProtocol
+ */
+public abstract class FieldAccessor {
+	
+	/** The accessors returned by {@link #of(Field)} by the declaring class and the name of their field. */
+	protected static final ClassValue<Map<String, FieldAccessor>> ACCESSORS = new ClassValue<>() {
+		@Override
+		protected Map<String, FieldAccessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+	
+	/**<p>
+	 * Returns an accessor for each of the {@code fields} in the same order.
+	 */
+	public static FieldAccessor[] ofAll(List<Field> fields) {
+		FieldAccessor[] accessors = new FieldAccessor[fields.size()];
+		for (int i = 0; i < accessors.length; i++) {
+			accessors[i] = of(fields.get(i));
+		}
+		return accessors;
+	}
+	
+	/**<p>
+	 * Returns an accessor for {@code field} which accesses the field directly if possible
+	 * and through reflection otherwise.
+	 * 
+	 * @see FieldAccessorGenerator
+	 */
+	public static FieldAccessor of(Field field) {
+		return ACCESSORS.get(field.getDeclaringClass()).computeIfAbsent(field.getName(), name -> {
+			FieldAccessor accessor = FieldAccessorGenerator.generate(field);
+			return accessor != null ? accessor : reflective(field);
+		});
+	}
+	
+	/**<p>
+	 * Returns an accessor for {@code field} which uses reflection. The field is made
+	 * {@link Field#setAccessible(boolean) accessible}.
+	 */
+	public static FieldAccessor reflective(Field field) {
+		field.setAccessible(true);
+		return new ReflectiveAccessor(field);
+	}
+	
+	/**<p>
+	 * Returns {@code true} if either the field or its type are annotated with {@link ValueType}.
+	 */
+	public static boolean isValueType(Field field) {
+		return field.getAnnotation(ValueType.class) != null
+				|| field.getType().getAnnotation(ValueType.class) != null;
+	}
+	
+	protected final Field field;
+	
+	protected FieldAccessor(Field field) {
+		this.field = field;
+	}
+	
+	public Field getField() {
+		return field;
+	}
+	
+	public abstract void write(Bytifier bytifier, EncodeData data, Object input);
+	
+	public abstract void read(Bytifier bytifier, DecodeData data, Object object);
+	
+	protected static class ReflectiveAccessor extends FieldAccessor {
+		protected static final Map<Class<?>, FieldWriter> FIELD_TYPE_WRITE_ACTIONS = new HashMap<>();
+		static {
+			FIELD_TYPE_WRITE_ACTIONS.put(Character.TYPE,
+					(bytifier, data, input, field) -> data.writeInt2(field.getChar(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Byte.TYPE,
+					(bytifier, data, input, field) -> data.writeInt1(field.getByte(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Short.TYPE,
+					(bytifier, data, input, field) -> data.writeInt2(field.getShort(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Integer.TYPE,
+					(bytifier, data, input, field) -> data.writeInt4(field.getInt(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Long.TYPE,
+					(bytifier, data, input, field) -> data.writeInt8(field.getLong(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Float.TYPE,
+					(bytifier, data, input, field) -> data.writeFloat4(field.getFloat(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Double.TYPE,
+					(bytifier, data, input, field) -> data.writeFloat8(field.getDouble(input)));
+			FIELD_TYPE_WRITE_ACTIONS.put(Boolean.TYPE,
+					(bytifier, data, input, field) -> data.writeBoolean(field.getBoolean(input)));
+		}
+		protected static final FieldReader DEFAULT_FIELD_READER =
+				(bytifier, data, object, field) -> field.set(object, bytifier.readChunk(data));
+		protected static final Map<Class<?>, FieldReader> FIELD_TYPE_READ_ACTIONS = new HashMap<>();
+		static {
+			FIELD_TYPE_READ_ACTIONS.put(Character.TYPE,
+					(bytifier, data, object, field) -> field.setChar(object, (char) data.readInt2()));
+			FIELD_TYPE_READ_ACTIONS.put(Byte.TYPE,
+					(bytifier, data, object, field) -> field.setByte(object, data.readInt1()));
+			FIELD_TYPE_READ_ACTIONS.put(Short.TYPE,
+					(bytifier, data, object, field) -> field.setShort(object, data.readInt2()));
+			FIELD_TYPE_READ_ACTIONS.put(Integer.TYPE,
+					(bytifier, data, object, field) -> field.setInt(object, data.readInt4()));
+			FIELD_TYPE_READ_ACTIONS.put(Long.TYPE,
+					(bytifier, data, object, field) -> field.setLong(object, data.readInt8()));
+			FIELD_TYPE_READ_ACTIONS.put(Float.TYPE,
+					(bytifier, data, object, field) -> field.setFloat(object, data.readFloat4()));
+			FIELD_TYPE_READ_ACTIONS.put(Double.TYPE,
+					(bytifier, data, object, field) -> field.setDouble(object, data.readFloat8()));
+			FIELD_TYPE_READ_ACTIONS.put(Boolean.TYPE,
+					(bytifier, data, object, field) -> field.setBoolean(object, data.readBoolean()));
+		}
+		
+		protected final FieldWriter writer;
+		protected final FieldReader reader;
+		protected ReflectiveAccessor(Field field) {
+			super(field);
+			Class<?> type = field.getType();
+			FieldWriter writer = FIELD_TYPE_WRITE_ACTIONS.get(type);
+			if (writer == null) {
+				boolean valueType = isValueType(field);
+				writer = (bytifier, data, input, f) -> bytifier.writeChunk(data, f.get(input), valueType);
+			}
+			this.writer = writer;
+			reader = FIELD_TYPE_READ_ACTIONS.getOrDefault(type, DEFAULT_FIELD_READER);
+		}
+		@Override
+		public void write(Bytifier bytifier, EncodeData data, Object input) {
+			try {
+				writer.write(bytifier, data, input, field);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		@Override
+		public void read(Bytifier bytifier, DecodeData data, Object object) {
+			try {
+				reader.read(bytifier, data, object, field);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+	
+}
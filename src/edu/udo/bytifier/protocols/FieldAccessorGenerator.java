@@ -0,0 +1,155 @@
+package edu.udo.bytifier.protocols;
+
+import static edu.udo.bytifier.protocols.ClassFileWriter.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodHandles.Lookup.ClassOption;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.protocols.ClassFileWriter.Code;
+
+/**<p>
+ * Generates a {@link FieldAccessor} for a single field. The generated
+ * {@link FieldAccessor#write(Bytifier, EncodeData, Object) write} and
+ * {@link FieldAccessor#read(Bytifier, DecodeData, Object) read} methods access the field
+ * with a single {@code getfield} or {@code putfield} instruction and call the matching
+ * method of {@link EncodeData} or {@link DecodeData} directly. There is no handle or
+ * {@link Field} the JIT would have to treat as a constant, so each access compiles down
+ * to a plain field load or store.
+ * <p>
+ * The accessor is defined as a hidden class which is a nestmate of the class declaring
+ * the field. It can therefore access private fields, including private fields declared
+ * by a superclass of a protocol class.
+ * <p>
+ * An accessor can not be generated for static or final fields, for fields of hidden
+ * classes, for fields whose type is not accessible from the declaring class, or if the
+ * declaring class is not open to this library.
+ * 
+ * @see FieldAccessor#of(Field)
+ */
+public class FieldAccessorGenerator {
+	
+	protected static final String SUPER_NAME = internalName(FieldAccessor.class);
+	protected static final String INIT_DESC = "(Ljava/lang/reflect/Field;)V";
+	
+	/**<p>
+	 * Returns a generated accessor for {@code field} or {@code null} if no accessor can be
+	 * generated for it.
+	 */
+	public static FieldAccessor generate(Field field) {
+		if (!canGenerate(field)) {
+			return null;
+		}
+		try {
+			Lookup lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+			byte[] classFile = new FieldAccessorGenerator(field).toClassFile();
+			Class<?> generated = lookup.defineHiddenClass(classFile, true, ClassOption.NESTMATE).lookupClass();
+			return (FieldAccessor) generated
+					.getDeclaredConstructor(Field.class)
+					.newInstance(field);
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	/**<p>
+	 * Returns {@code true} if {@code field} can be accessed by a nestmate of its declaring
+	 * class without reflection.
+	 */
+	public static boolean canGenerate(Field field) {
+		int mod = field.getModifiers();
+		Class<?> declCls = field.getDeclaringClass();
+		return !Modifier.isStatic(mod) && !Modifier.isFinal(mod) && !declCls.isHidden()
+				&& ReflectionProtocolGenerator.isAccessible(field.getType(), declCls);
+	}
+	
+	protected final Field field;
+	protected final ClassFileWriter out;
+	
+	protected FieldAccessorGenerator(Field field) {
+		this.field = field;
+		out = new ClassFileWriter(internalName(field.getDeclaringClass())+"$$BytifierAccessor", SUPER_NAME);
+	}
+	
+	protected byte[] toClassFile() {
+		out.addMethod(ACC_PUBLIC, "<init>", INIT_DESC, 2, 2, initCode());
+		out.addMethod(ACC_PUBLIC, "write", ReflectionProtocolGenerator.WRITE_DESC, 4, 4, writeCode());
+		out.addMethod(ACC_PUBLIC, "read", ReflectionProtocolGenerator.READ_DESC, 4, 4, readCode());
+		return out.toByteArray();
+	}
+	
+	protected Code initCode() {
+		return new Code()
+				.op(ALOAD_0)
+				.op(ALOAD_1)
+				.opWide(INVOKESPECIAL, out.methodConst(SUPER_NAME, "<init>", INIT_DESC))
+				.op(RETURN);
+	}
+	
+	/*
+	 * write(Bytifier bytifier, EncodeData data, Object input)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=input
+	 */
+	protected Code writeCode() {
+		Code code = new Code();
+		String encodeName = internalName(EncodeData.class);
+		String[] accessors = ReflectionProtocolGenerator.PRIMITIVE_ACCESSORS.get(field.getType());
+		if (accessors != null) {
+			loadField(code.op(ALOAD_2))
+				.opWide(INVOKEVIRTUAL, out.methodConst(encodeName, accessors[0], accessors[1]));
+		} else {
+			loadField(code.op(ALOAD_1).op(ALOAD_2))
+				.op(FieldAccessor.isValueType(field) ? ICONST_1 : ICONST_0)
+				.opWide(INVOKEVIRTUAL, out.methodConst(internalName(Bytifier.class), "writeChunk",
+						"(L"+encodeName+";Ljava/lang/Object;Z)V"));
+		}
+		return code.op(RETURN);
+	}
+	
+	/*
+	 * read(Bytifier bytifier, DecodeData data, Object object)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=object
+	 */
+	protected Code readCode() {
+		Class<?> type = field.getType();
+		Code code = castObject(new Code());
+		String decodeName = internalName(DecodeData.class);
+		String[] accessors = ReflectionProtocolGenerator.PRIMITIVE_ACCESSORS.get(type);
+		if (accessors != null) {
+			code.op(ALOAD_2)
+				.opWide(INVOKEVIRTUAL, out.methodConst(decodeName, accessors[2], accessors[3]));
+			if (type == Character.TYPE) {
+				code.op(I2C);
+			}
+		} else {
+			code.op(ALOAD_1)
+				.op(ALOAD_2)
+				.opWide(INVOKEVIRTUAL, out.methodConst(internalName(Bytifier.class), "readChunk",
+						"(L"+decodeName+";)Ljava/lang/Object;"));
+			if (type != Object.class) {
+				code.opWide(CHECKCAST, out.classConst(type.isArray() ? descriptor(type) : internalName(type)));
+			}
+		}
+		return code.opWide(PUTFIELD, fieldConst()).op(RETURN);
+	}
+	
+	protected Code loadField(Code code) {
+		return castObject(code).opWide(GETFIELD, fieldConst());
+	}
+	
+	protected Code castObject(Code code) {
+		return code.op(ALOAD_3)
+				.opWide(CHECKCAST, out.classConst(internalName(field.getDeclaringClass())));
+	}
+	
+	protected int fieldConst() {
+		return out.fieldConst(internalName(field.getDeclaringClass()), field.getName(),
+				descriptor(field.getType()));
+	}
+	
+}
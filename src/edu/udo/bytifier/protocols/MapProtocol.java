@@ -21,7 +21,7 @@ public class MapProtocol implements ClassProtocol {
 	public void write(Bytifier bytifier, EncodeData data, Object object) {
 		Map<?, ?> map = (Map<?, ?>) object;
 		int length = map.size();
-		data.writeInt4(length);
+		bytifier.writeSize(data, length);
 		for (Entry<?, ?> entry : map.entrySet()) {
 			bytifier.writeChunk(data, entry.getKey(), false);
 			bytifier.writeChunk(data, entry.getValue(), false);
@@ -36,7 +36,7 @@ public class MapProtocol implements ClassProtocol {
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Override
 	public void read(Bytifier bytifier, DecodeData data, Object object) {
-		int length = data.readInt4();
+		int length = bytifier.readSize(data);
 		Map map = (Map) object;
 		for (int i = 0; i < length; i++) {
 			Object key = bytifier.readChunk(data);
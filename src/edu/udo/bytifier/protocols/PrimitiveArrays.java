@@ -11,22 +11,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			byte[] arr = (byte[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeInt1(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeBytes(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new byte[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			byte[] arr = (byte[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readInt1();
-			}
+			data.readBytes(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -37,22 +33,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			short[] arr = (short[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeInt2(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeShorts(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new short[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			short[] arr = (short[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readInt2();
-			}
+			data.readShorts(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -63,22 +55,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			int[] arr = (int[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeInt4(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeInts(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new int[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			int[] arr = (int[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readInt4();
-			}
+			data.readInts(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -89,22 +77,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			long[] arr = (long[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeInt8(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeLongs(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new long[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			long[] arr = (long[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readInt8();
-			}
+			data.readLongs(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -115,22 +99,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			float[] arr = (float[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeFloat4(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeFloats(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new float[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			float[] arr = (float[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readFloat4();
-			}
+			data.readFloats(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -141,22 +121,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			double[] arr = (double[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeFloat8(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeDoubles(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new double[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			double[] arr = (double[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readFloat8();
-			}
+			data.readDoubles(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -167,22 +143,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			boolean[] arr = (boolean[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeBoolean(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeBooleans(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new boolean[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			boolean[] arr = (boolean[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = data.readBoolean();
-			}
+			data.readBooleans(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -193,22 +165,18 @@ public class PrimitiveArrays {
 		@Override
 		public void write(Bytifier bytifier, EncodeData data, Object object) {
 			char[] arr = (char[]) object;
-			data.writeInt3(arr.length);
-			for (int i = 0; i < arr.length; i++) {
-				data.writeInt2(arr[i]);
-			}
+			bytifier.writeLength(data, arr.length);
+			data.writeChars(arr, 0, arr.length);
 		}
 		@Override
 		public Object create(Bytifier bytifier, DecodeData data) {
-			int length = data.readInt3();
+			int length = bytifier.readLength(data);
 			return new char[length];
 		}
 		@Override
 		public void read(Bytifier bytifier, DecodeData data, Object object) {
 			char[] arr = (char[]) object;
-			for (int i = 0; i < arr.length; i++) {
-				arr[i] = (char) data.readInt2();
-			}
+			data.readChars(arr, 0, arr.length);
 		}
 		@Override
 		public int getIdentificationNumber() {
@@ -3,66 +3,16 @@ package edu.udo.bytifier.protocols;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 import edu.udo.bytifier.Bytifier;
 import edu.udo.bytifier.ClassProtocol;
 import edu.udo.bytifier.DecodeData;
 import edu.udo.bytifier.EncodeData;
-import edu.udo.bytifier.ValueType;
 
 public class ReflectionClassProtocol implements ClassProtocol {
 	
-	protected static final FieldWriter DEFAULT_FIELD_WRITER =
-			(bytifier, data, input, field) -> {
-				boolean valueType = field.getAnnotation(ValueType.class) != null
-						||field.getType().getAnnotation(ValueType.class) != null;
-				bytifier.writeChunk(data, field.get(input), valueType);
-			};
-	protected static final Map<Class<?>, FieldWriter> FIELD_TYPE_WRITE_ACTIONS = new HashMap<>();
-	static {
-		FIELD_TYPE_WRITE_ACTIONS.put(Character.TYPE,
-				(bytifier, data, input, field) -> data.writeInt2(field.getChar(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Byte.TYPE,
-				(bytifier, data, input, field) -> data.writeInt1(field.getByte(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Short.TYPE,
-				(bytifier, data, input, field) -> data.writeInt2(field.getShort(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Integer.TYPE,
-				(bytifier, data, input, field) -> data.writeInt4(field.getInt(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Long.TYPE,
-				(bytifier, data, input, field) -> data.writeInt8(field.getLong(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Float.TYPE,
-				(bytifier, data, input, field) -> data.writeFloat4(field.getFloat(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Double.TYPE,
-				(bytifier, data, input, field) -> data.writeFloat8(field.getDouble(input)));
-		FIELD_TYPE_WRITE_ACTIONS.put(Boolean.TYPE,
-				(bytifier, data, input, field) -> data.writeBoolean(field.getBoolean(input)));
-	}
-	protected static final FieldReader DEFAULT_FIELD_READER =
-			(bytifier, data, object, field) -> field.set(object, bytifier.readChunk(data));
-	protected static final Map<Class<?>, FieldReader> FIELD_TYPE_READ_ACTIONS = new HashMap<>();
-	static {
-		FIELD_TYPE_READ_ACTIONS.put(Character.TYPE,
-				(bytifier, data, object, field) -> field.setChar(object, (char) data.readInt2()));
-		FIELD_TYPE_READ_ACTIONS.put(Byte.TYPE,
-				(bytifier, data, object, field) -> field.setByte(object, data.readInt1()));
-		FIELD_TYPE_READ_ACTIONS.put(Short.TYPE,
-				(bytifier, data, object, field) -> field.setShort(object, data.readInt2()));
-		FIELD_TYPE_READ_ACTIONS.put(Integer.TYPE,
-				(bytifier, data, object, field) -> field.setInt(object, data.readInt4()));
-		FIELD_TYPE_READ_ACTIONS.put(Long.TYPE,
-				(bytifier, data, object, field) -> field.setLong(object, data.readInt8()));
-		FIELD_TYPE_READ_ACTIONS.put(Float.TYPE,
-				(bytifier, data, object, field) -> field.setFloat(object, data.readFloat4()));
-		FIELD_TYPE_READ_ACTIONS.put(Double.TYPE,
-				(bytifier, data, object, field) -> field.setDouble(object, data.readFloat8()));
-		FIELD_TYPE_READ_ACTIONS.put(Boolean.TYPE,
-				(bytifier, data, object, field) -> field.setBoolean(object, data.readBoolean()));
-	}
-	
 	public static ReflectionClassProtocol allFieldsOf(Class<?> clazz) {
 		List<Field> fields = new ArrayList<>();
 		ReflectionClassProtocol.forEachField(clazz, field -> {
@@ -125,6 +75,7 @@ public class ReflectionClassProtocol implements ClassProtocol {
 	}
 	
 	protected final List<Field> fields;
+	protected final FieldAccessor[] accessors;
 	protected final Class<?> cls;
 	
 	protected ReflectionClassProtocol(Class<?> clazz, Collection<Field> selectedFields) {
@@ -132,19 +83,14 @@ public class ReflectionClassProtocol implements ClassProtocol {
 		fields = new ArrayList<>(selectedFields);
 		fields.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
 		fields.forEach(field -> field.setAccessible(true));
+		accessors = FieldAccessor.ofAll(fields);
 	}
 	
 	@Override
 	public void write(Bytifier bytifier, EncodeData data, Object input) {
-		fields.forEach(field -> {
-			try {
-				Class<?> type = field.getType();
-				FieldWriter writer = FIELD_TYPE_WRITE_ACTIONS.getOrDefault(type, DEFAULT_FIELD_WRITER);
-				writer.write(bytifier, data, input, field);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		});
+		for (FieldAccessor accessor : accessors) {
+			accessor.write(bytifier, data, input);
+		}
 	}
 	
 	@Override
@@ -158,15 +104,9 @@ public class ReflectionClassProtocol implements ClassProtocol {
 	
 	@Override
 	public void read(Bytifier bytifier, DecodeData data, Object object) {
-		fields.forEach(field -> {
-			try {
-				Class<?> type = field.getType();
-				FieldReader reader = FIELD_TYPE_READ_ACTIONS.getOrDefault(type, DEFAULT_FIELD_READER);
-				reader.read(bytifier, data, object, field);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		});
+		for (FieldAccessor accessor : accessors) {
+			accessor.read(bytifier, data, object);
+		}
 	}
 	
 	@Override
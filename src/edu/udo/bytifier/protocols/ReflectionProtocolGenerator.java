@@ -0,0 +1,237 @@
+package edu.udo.bytifier.protocols;
+
+import static edu.udo.bytifier.protocols.ClassFileWriter.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodHandles.Lookup.ClassOption;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ValueType;
+import edu.udo.bytifier.protocols.ClassFileWriter.Code;
+
+/**<p>
+ * Generates a specialized subclass of {@link ReflectionClassProtocol} for a single class.
+ * The generated {@link ReflectionClassProtocol#write(Bytifier, EncodeData, Object) write}
+ * and {@link ReflectionClassProtocol#read(Bytifier, DecodeData, Object) read} methods
+ * consist of straight-line {@code getfield} and {@code putfield} instructions and direct
+ * calls to the matching methods of {@link EncodeData} and {@link DecodeData}, without
+ * any reflection, map lookups or exception handling per field.
+ * <p>
+ * The subclass is defined as a hidden class which is a nestmate of the protocol class.
+ * It can therefore access private fields of the protocol class directly. The generated
+ * protocol writes and reads exactly the same bytes as the ReflectionClassProtocol it was
+ * generated from and has the same identification number.
+ * <p>
+ * A protocol can not be generated if any field is static or final, if a field declared
+ * by a superclass or the type of a field is not accessible from the package of the
+ * protocol class, or if the protocol class is not open to this library. In these cases
+ * the ReflectionClassProtocol is returned unchanged.
+ * 
+ * @see edu.udo.bytifier.ProtocolBuilder#setGenerateReflectionProtocols(boolean)
+ */
+public class ReflectionProtocolGenerator {
+	
+	protected static final String SUPER_NAME = internalName(ReflectionClassProtocol.class);
+	protected static final String WRITE_DESC = "(L"+internalName(Bytifier.class)+";L"
+			+internalName(EncodeData.class)+";Ljava/lang/Object;)V";
+	protected static final String READ_DESC = "(L"+internalName(Bytifier.class)+";L"
+			+internalName(DecodeData.class)+";Ljava/lang/Object;)V";
+	protected static final String INIT_DESC = "(Ljava/lang/Class;Ljava/util/Collection;)V";
+	
+	/** The local variable holding the cast object in the generated write and read methods. */
+	protected static final int OBJ_LOCAL = 4;
+	
+	protected static final Map<Class<?>, String[]> PRIMITIVE_ACCESSORS = new HashMap<>();
+	static {
+		// type -> {EncodeData method, its descriptor, DecodeData method, its descriptor}
+		PRIMITIVE_ACCESSORS.put(Character.TYPE,	new String[] {"writeInt2", "(I)V", "readInt2", "()S"});
+		PRIMITIVE_ACCESSORS.put(Byte.TYPE,		new String[] {"writeInt1", "(I)V", "readInt1", "()B"});
+		PRIMITIVE_ACCESSORS.put(Short.TYPE,		new String[] {"writeInt2", "(I)V", "readInt2", "()S"});
+		PRIMITIVE_ACCESSORS.put(Integer.TYPE,	new String[] {"writeInt4", "(I)V", "readInt4", "()I"});
+		PRIMITIVE_ACCESSORS.put(Long.TYPE,		new String[] {"writeInt8", "(J)V", "readInt8", "()J"});
+		PRIMITIVE_ACCESSORS.put(Float.TYPE,		new String[] {"writeFloat4", "(F)V", "readFloat4", "()F"});
+		PRIMITIVE_ACCESSORS.put(Double.TYPE,	new String[] {"writeFloat8", "(D)V", "readFloat8", "()D"});
+		PRIMITIVE_ACCESSORS.put(Boolean.TYPE,	new String[] {"writeBoolean", "(Z)V", "readBoolean", "()Z"});
+	}
+	
+	/**<p>
+	 * Returns a generated protocol equivalent to {@code protocol} or {@code protocol}
+	 * itself if no protocol can be generated for its class.
+	 * 
+	 * @param protocol	a ReflectionClassProtocol
+	 * @return			a generated ReflectionClassProtocol or {@code protocol}
+	 */
+	public static ReflectionClassProtocol generate(ReflectionClassProtocol protocol) {
+		if (!canGenerate(protocol.cls, protocol.fields)) {
+			return protocol;
+		}
+		try {
+			Lookup lookup = MethodHandles.privateLookupIn(protocol.cls, MethodHandles.lookup());
+			byte[] classFile = new ReflectionProtocolGenerator(protocol.cls, protocol.fields).toClassFile();
+			Class<?> generated = lookup.defineHiddenClass(classFile, true, ClassOption.NESTMATE).lookupClass();
+			return (ReflectionClassProtocol) generated
+					.getDeclaredConstructor(Class.class, Collection.class)
+					.newInstance(protocol.cls, protocol.fields);
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			return protocol;
+		}
+	}
+	
+	/**<p>
+	 * Returns {@code true} if all {@code fields} can be accessed by a nestmate of {@code cls}
+	 * without reflection.
+	 */
+	public static boolean canGenerate(Class<?> cls, List<Field> fields) {
+		if (cls.isInterface() || cls.isArray() || cls.isPrimitive() || cls.isHidden()
+				|| Modifier.isAbstract(cls.getModifiers()))
+		{
+			return false;
+		}
+		for (Field field : fields) {
+			int mod = field.getModifiers();
+			if (Modifier.isStatic(mod) || Modifier.isFinal(mod)) {
+				return false;
+			}
+			Class<?> declCls = field.getDeclaringClass();
+			if (declCls != cls) {
+				boolean accessible = Modifier.isPublic(mod) && isAccessible(declCls, cls)
+						|| !Modifier.isPrivate(mod) && isSamePackage(declCls, cls);
+				if (!accessible) {
+					return false;
+				}
+			}
+			if (!isAccessible(field.getType(), cls)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	protected static boolean isAccessible(Class<?> type, Class<?> fromCls) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive() || isSamePackage(type, fromCls)) {
+			return true;
+		}
+		for (Class<?> cur = type; cur != null; cur = cur.getEnclosingClass()) {
+			if (!Modifier.isPublic(cur.getModifiers())) {
+				return false;
+			}
+		}
+		return type.getModule().isExported(type.getPackageName(), fromCls.getModule());
+	}
+	
+	protected static boolean isSamePackage(Class<?> a, Class<?> b) {
+		return a.getClassLoader() == b.getClassLoader()
+				&& a.getPackageName().equals(b.getPackageName());
+	}
+	
+	protected final Class<?> cls;
+	protected final List<Field> fields;
+	protected final ClassFileWriter out;
+	
+	protected ReflectionProtocolGenerator(Class<?> cls, List<Field> fields) {
+		this.cls = cls;
+		this.fields = fields;
+		out = new ClassFileWriter(internalName(cls)+"$$BytifierProtocol", SUPER_NAME);
+	}
+	
+	protected byte[] toClassFile() {
+		out.addMethod(ACC_PUBLIC, "<init>", INIT_DESC, 3, 3, initCode());
+		out.addMethod(ACC_PUBLIC, "write", WRITE_DESC, 5, OBJ_LOCAL + 1, writeCode());
+		out.addMethod(ACC_PUBLIC, "read", READ_DESC, 4, OBJ_LOCAL + 1, readCode());
+		return out.toByteArray();
+	}
+	
+	protected Code initCode() {
+		return new Code()
+				.op(ALOAD_0)
+				.op(ALOAD_1)
+				.op(ALOAD_2)
+				.opWide(INVOKESPECIAL, out.methodConst(SUPER_NAME, "<init>", INIT_DESC))
+				.op(RETURN);
+	}
+	
+	/*
+	 * write(Bytifier bytifier, EncodeData data, Object input)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=input, 4=input cast to the protocol class
+	 */
+	protected Code writeCode() {
+		Code code = castObject(new Code());
+		String encodeName = internalName(EncodeData.class);
+		for (Field field : fields) {
+			Class<?> type = field.getType();
+			String[] accessors = PRIMITIVE_ACCESSORS.get(type);
+			if (accessors != null) {
+				code.op(ALOAD_2)
+					.op(ALOAD, OBJ_LOCAL)
+					.opWide(GETFIELD, fieldConst(field))
+					.opWide(INVOKEVIRTUAL, out.methodConst(encodeName, accessors[0], accessors[1]));
+			} else {
+				boolean valueType = field.getAnnotation(ValueType.class) != null
+						|| type.getAnnotation(ValueType.class) != null;
+				code.op(ALOAD_1)
+					.op(ALOAD_2)
+					.op(ALOAD, OBJ_LOCAL)
+					.opWide(GETFIELD, fieldConst(field))
+					.op(valueType ? ICONST_1 : ICONST_0)
+					.opWide(INVOKEVIRTUAL, out.methodConst(internalName(Bytifier.class), "writeChunk",
+							"(L"+encodeName+";Ljava/lang/Object;Z)V"));
+			}
+		}
+		return code.op(RETURN);
+	}
+	
+	/*
+	 * read(Bytifier bytifier, DecodeData data, Object object)
+	 * locals: 0=this, 1=bytifier, 2=data, 3=object, 4=object cast to the protocol class
+	 */
+	protected Code readCode() {
+		Code code = castObject(new Code());
+		String decodeName = internalName(DecodeData.class);
+		for (Field field : fields) {
+			Class<?> type = field.getType();
+			String[] accessors = PRIMITIVE_ACCESSORS.get(type);
+			code.op(ALOAD, OBJ_LOCAL);
+			if (accessors != null) {
+				code.op(ALOAD_2)
+					.opWide(INVOKEVIRTUAL, out.methodConst(decodeName, accessors[2], accessors[3]));
+				if (type == Character.TYPE) {
+					code.op(I2C);
+				}
+			} else {
+				code.op(ALOAD_1)
+					.op(ALOAD_2)
+					.opWide(INVOKEVIRTUAL, out.methodConst(internalName(Bytifier.class), "readChunk",
+							"(L"+decodeName+";)Ljava/lang/Object;"));
+				if (type != Object.class) {
+					code.opWide(CHECKCAST, out.classConst(type.isArray() ? descriptor(type) : internalName(type)));
+				}
+			}
+			code.opWide(PUTFIELD, fieldConst(field));
+		}
+		return code.op(RETURN);
+	}
+	
+	protected Code castObject(Code code) {
+		return code.op(ALOAD_3)
+				.opWide(CHECKCAST, out.classConst(internalName(cls)))
+				.op(ASTORE, OBJ_LOCAL);
+	}
+	
+	protected int fieldConst(Field field) {
+		return out.fieldConst(internalName(field.getDeclaringClass()), field.getName(),
+				descriptor(field.getType()));
+	}
+	
+}
@@ -13,27 +13,59 @@ public class StringProtocol implements ClassProtocol {
 	public static final StringProtocol STRING_UTF8_PROTOCOL = new StringProtocol(StandardCharsets.UTF_8);
 	
 	protected final Charset charset;
+	/**
+	 * Strings whose chars are all below this value are encoded with one byte per char
+	 * by {@link EncodeData#writeLatin1(String)}; {@code 0} if the charset does not
+	 * allow this.
+	 */
+	protected final int latin1Limit;
 	
 	public StringProtocol(Charset charset) {
 		this.charset = charset;
+		if (charset.equals(StandardCharsets.ISO_8859_1)) {
+			latin1Limit = 0x100;
+		} else if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+			latin1Limit = 0x80;
+		} else {
+			latin1Limit = 0;
+		}
 	}
 	
+	/**<p>
+	 * Writes the number of encoded bytes followed by the bytes. Strings which the
+	 * charset encodes with one byte per char are copied to the {@link EncodeData} without
+	 * an intermediate array.
+	 */
 	@Override
 	public void write(Bytifier bytifier, EncodeData data, Object input) {
 		String str = (String) input;
-		int length = str.length();
-		data.writeInt3(length);
-		
-		byte[] bytes = str.getBytes(charset);
-		data.writeBytes(bytes);
+		if (isLatin1(str)) {
+			bytifier.writeLength(data, str.length());
+			data.writeLatin1(str);
+		} else {
+			byte[] bytes = str.getBytes(charset);
+			bytifier.writeLength(data, bytes.length);
+			data.writeBytes(bytes);
+		}
+	}
+	
+	protected boolean isLatin1(String str) {
+		int limit = latin1Limit;
+		if (limit == 0) {
+			return false;
+		}
+		for (int i = 0; i < str.length(); i++) {
+			if (str.charAt(i) >= limit) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	@Override
 	public Object create(Bytifier bytifier, DecodeData data) {
-		int length = data.readInt3();
-		byte[] bytes = new byte[length];
-		data.readBytes(bytes);
-		return new String(bytes, charset);
+		int length = bytifier.readLength(data);
+		return data.readString(length, charset);
 	}
 	
 	@Override
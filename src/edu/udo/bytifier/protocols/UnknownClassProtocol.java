@@ -1,130 +1,146 @@
 package edu.udo.bytifier.protocols;
 
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.udo.bytifier.Bytifier;
 import edu.udo.bytifier.ClassProtocol;
 import edu.udo.bytifier.DecodeData;
 import edu.udo.bytifier.EncodeData;
-import edu.udo.bytifier.ValueType;
 
 public class UnknownClassProtocol implements ClassProtocol {
 	
-	private interface ReadFromField {
-		void readFieldData(Bytifier bytifier, DecodeData data, Object obj, Field field) throws IllegalAccessException;
-	}
+	/**<p>
+	 * Caches the {@link ClassMetadata} for every class which has been written or read
+	 * as an unknown object. The metadata does not depend on the {@link Bytifier} and is
+	 * shared by all instances of this protocol.
+	 */
+	protected static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
 	
-	private interface WriteToField {
-		void writeFieldData(Bytifier bytifier, EncodeData data, Object obj, Field field) throws IllegalAccessException;
+	/**<p>
+	 * Returns the cached metadata for {@code cls}.
+	 */
+	public static ClassMetadata getMetadata(Class<?> cls) {
+		return METADATA.get(cls);
 	}
 	
-	private final Map<Class<?>, WriteToField> writeDataMap = new HashMap<>();
-	private final Map<Class<?>, ReadFromField> readDataMap = new HashMap<>();
-	private final WriteToField writeRef = (btf, data, obj, field) -> btf.writeChunk(data, field.get(obj), false);
-	private final WriteToField writeValType = (btf, data, obj, field) -> btf.writeChunk(data, field.get(obj), true);
-	private final ReadFromField defaultRead = (btf, data, obj, field) -> field.set(obj, btf.readChunk(data));
-	{
-		writeDataMap.put(Byte.TYPE, (btf, data, obj, field) -> data.writeInt1(field.getByte(obj)));
-		writeDataMap.put(Short.TYPE, (btf, data, obj, field) -> data.writeInt2(field.getShort(obj)));
-		writeDataMap.put(Integer.TYPE, (btf, data, obj, field) -> data.writeInt4(field.getInt(obj)));
-		writeDataMap.put(Long.TYPE, (btf, data, obj, field) -> data.writeInt8(field.getLong(obj)));
-		writeDataMap.put(Float.TYPE, (btf, data, obj, field) -> data.writeFloat4(field.getFloat(obj)));
-		writeDataMap.put(Double.TYPE, (btf, data, obj, field) -> data.writeFloat8(field.getDouble(obj)));
-		writeDataMap.put(Boolean.TYPE, (btf, data, obj, field) -> data.writeBoolean(field.getBoolean(obj)));
-		writeDataMap.put(Character.TYPE, (btf, data, obj, field) -> data.writeInt2(field.getChar(obj)));
-		
-		readDataMap.put(Byte.TYPE, (btf, data, obj, field) -> field.setByte(obj, data.readInt1()));
-		readDataMap.put(Short.TYPE, (btf, data, obj, field) -> field.setShort(obj, data.readInt2()));
-		readDataMap.put(Integer.TYPE, (btf, data, obj, field) -> field.setInt(obj, data.readInt4()));
-		readDataMap.put(Long.TYPE, (btf, data, obj, field) -> field.setLong(obj, data.readInt8()));
-		readDataMap.put(Float.TYPE, (btf, data, obj, field) -> field.setFloat(obj, data.readFloat4()));
-		readDataMap.put(Double.TYPE, (btf, data, obj, field) -> field.setDouble(obj, data.readFloat8()));
-		readDataMap.put(Boolean.TYPE, (btf, data, obj, field) -> field.setBoolean(obj, data.readBoolean()));
-		readDataMap.put(Character.TYPE, (btf, data, obj, field) -> field.setChar(obj, (char) data.readInt2()));
-	}
+	/** The metadata of all classes read by this protocol by their names. */
+	protected final Map<String, ClassMetadata> metadataByName = new ConcurrentHashMap<>();
 	
 	@Override
 	public void write(Bytifier bytifier, EncodeData data, Object input) {
-		try {
-			Class<?> cls = input.getClass();
-			data.writeJavaIdentifier(cls.getName());
-			
-			Field[] fieldArr = cls.getDeclaredFields();
-			List<Field> fields =
-					Arrays.asList(fieldArr)
-					.stream()
-					.filter(field -> !field.isSynthetic()
-							&& !Modifier.isTransient(field.getModifiers())
-							&& !Modifier.isStatic(field.getModifiers())
-							&& !Modifier.isFinal(field.getModifiers()))
-					.collect(Collectors.toList())
-			;
-			data.writeInt2(fields.size());
-			
-			AccessibleObject.setAccessible(fieldArr, true);
-			for (Field field : fields) {
-				data.writeJavaIdentifier(field.getName());
-				boolean valueType = field.getAnnotation(ValueType.class) != null
-						||field.getType().getAnnotation(ValueType.class) != null;
-				writeFieldData(bytifier, data, input, field, valueType);
-			}
-			AccessibleObject.setAccessible(fieldArr, false);
-		} catch (Exception e) {
-			throw new IllegalArgumentException(e);
+		ClassMetadata meta = METADATA.get(input.getClass());
+		data.writeJavaIdentifier(meta.name);
+		
+		String[] fieldNames = meta.fieldNames;
+		FieldAccessor[] accessors = meta.accessors;
+		data.writeInt2(accessors.length);
+		for (int i = 0; i < accessors.length; i++) {
+			data.writeJavaIdentifier(fieldNames[i]);
+			accessors[i].write(bytifier, data, input);
+		}
+		data.addUnknownClass(meta.cls);
+	}
+	
+	/**<p>
+	 * Writes only the field values of {@code input} for an object whose class has
+	 * already been described in the stream.
+	 * 
+	 * @see edu.udo.bytifier.ChunkType#DESCRIBED_UNKNOWN_OBJ
+	 */
+	public void writeValues(Bytifier bytifier, EncodeData data, Object input) {
+		for (FieldAccessor accessor : METADATA.get(input.getClass()).accessors) {
+			accessor.write(bytifier, data, input);
 		}
 	}
 	
+	/**<p>
+	 * Reads the field values of {@code object} together with the description of its class.
+	 * The fields may be described in any order and fields of the local class which are not
+	 * described keep their default values.
+	 * 
+	 * @throws IllegalArgumentException		if a described field does not exist in the local
+	 * 										class. Its value can not be skipped since the
+	 * 										encoding of a value depends on the type of the field.
+	 */
 	@Override
 	public void read(Bytifier bytifier, DecodeData data, Object object) {
-		try {
-			Class<?> cls = object.getClass();
-			
-			int fieldCount = data.readInt2();
-			for (int i = 0; i < fieldCount; i++) {
-				String fieldName = data.readJavaIdentifier();
-				try {
-					Field field = cls.getDeclaredField(fieldName);
-					field.setAccessible(true);
-					readFieldData(bytifier, data, object, field);
-					field.setAccessible(false);
-				} catch (NoSuchFieldException e) {
-					continue;
-				}
+		ClassMetadata meta = METADATA.get(object.getClass());
+		
+		int fieldCount = data.readInt2();
+		boolean described = data.hasUnknownClass(meta.cls);
+		FieldAccessor[] streamAccessors = described ? null : new FieldAccessor[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			String fieldName = data.readJavaIdentifier();
+			FieldAccessor accessor = meta.accessorsByName.get(fieldName);
+			if (accessor == null) {
+				throw new IllegalArgumentException("The field "+fieldName+" of the unknown class "
+						+meta.name+" does not exist locally and its value can not be skipped");
 			}
-		} catch (Exception e) {
-			throw new IllegalArgumentException(e);
+			accessor.read(bytifier, data, object);
+			if (!described) {
+				streamAccessors[i] = accessor;
+			}
+		}
+		if (!described) {
+			data.addUnknownClass(meta.cls, new StreamSchema(meta, streamAccessors));
+		}
+	}
+	
+	/**<p>
+	 * Reads the stream-local index of an already described unknown class and returns
+	 * its schema.
+	 */
+	public StreamSchema readSchema(DecodeData data) {
+		return (StreamSchema) data.readUnknownClassSchema();
+	}
+	
+	/**<p>
+	 * Reads the field values of {@code object} in the order given by {@code schema}.
+	 */
+	public void readValues(Bytifier bytifier, DecodeData data, Object object, StreamSchema schema) {
+		for (FieldAccessor accessor : schema.accessors) {
+			accessor.read(bytifier, data, object);
 		}
 	}
 	
 	@Override
 	public Object create(Bytifier bytifier, DecodeData data) {
 		String clsName = data.readJavaIdentifier();
-		try {
-			Class<?> objCls = Class.forName(clsName);
-			Constructor<?> constr = objCls.getDeclaredConstructor();
-			boolean wasAccessible = constr.isAccessible();
-			constr.setAccessible(true);
-			Object obj = constr.newInstance();
-			constr.setAccessible(wasAccessible);
-			return obj;
-		} catch (ClassNotFoundException
-				| InstantiationException
-				| IllegalAccessException
-				| NoSuchMethodException
-				| SecurityException
-				| InvocationTargetException e)
-		{
-			return new IllegalArgumentException(e);
+		return getMetadataByName(clsName).newInstance();
+	}
+	
+	/**<p>
+	 * Returns the metadata of the class with the given name. The class is looked up by
+	 * {@link Class#forName(String)} only the first time a name is encountered.
+	 * 
+	 * @throws IllegalArgumentException		if there is no class with that name
+	 */
+	protected ClassMetadata getMetadataByName(String clsName) {
+		ClassMetadata meta = metadataByName.get(clsName);
+		if (meta == null) {
+			try {
+				meta = METADATA.get(Class.forName(clsName));
+			} catch (ClassNotFoundException e) {
+				throw new IllegalArgumentException(e);
+			}
+			metadataByName.put(clsName, meta);
 		}
+		return meta;
 	}
 	
 	@Override
@@ -132,22 +148,114 @@ public class UnknownClassProtocol implements ClassProtocol {
 		throw new UnsupportedOperationException("Unknown Class Protocol must not be part of a Bytifier Protocol");
 	}
 	
-	private void writeFieldData(
-			Bytifier bytifier,
-			EncodeData data,
-			Object obj,
-			Field field,
-			boolean valueType)
+	/**<p>
+	 * Everything the UnknownClassProtocol needs to know about a class to write and read
+	 * its instances. Only the fields declared by the class itself are written. Synthetic,
+	 * transient, static and final fields are ignored.
+	 */
+	public static class ClassMetadata {
+		
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+		
+		protected final Class<?> cls;
+		protected final String name;
+		protected final String[] fieldNames;
+		protected final FieldAccessor[] accessors;
+		protected final Map<String, FieldAccessor> accessorsByName;
+		/** The no-argument constructor or {@code null} if the class does not have one. */
+		protected final MethodHandle constructor;
+		
+		protected ClassMetadata(Class<?> cls) {
+			this.cls = cls;
+			name = cls.getName();
 			
-			throws IllegalAccessException
-	{
-		Class<?> fieldType = field.getType();
-		WriteToField usedDefaultWrite = valueType ? writeValType : writeRef;
-		writeDataMap.getOrDefault(fieldType, usedDefaultWrite).writeFieldData(bytifier, data, obj, field);
+			List<Field> fields = new ArrayList<>();
+			for (Field field : cls.getDeclaredFields()) {
+				int mod = field.getModifiers();
+				if (!field.isSynthetic()
+						&& !Modifier.isTransient(mod)
+						&& !Modifier.isStatic(mod)
+						&& !Modifier.isFinal(mod))
+				{
+					fields.add(field);
+				}
+			}
+			fieldNames = new String[fields.size()];
+			accessors = FieldAccessor.ofAll(fields);
+			Map<String, FieldAccessor> byName = new HashMap<>();
+			for (int i = 0; i < accessors.length; i++) {
+				fieldNames[i] = fields.get(i).getName();
+				byName.put(fieldNames[i], accessors[i]);
+			}
+			accessorsByName = Collections.unmodifiableMap(byName);
+			
+			MethodHandle constr;
+			try {
+				constr = MethodHandles.privateLookupIn(cls, MethodHandles.lookup())
+						.findConstructor(cls, MethodType.methodType(void.class))
+						.asType(CONSTRUCTOR_TYPE);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				constr = null;
+			}
+			constructor = constr;
+		}
+		
+		public Class<?> getType() {
+			return cls;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public int getFieldCount() {
+			return accessors.length;
+		}
+		
+		/**<p>
+		 * Creates a new instance of the class with its no-argument constructor.
+		 * 
+		 * @throws IllegalArgumentException		if the class does not have an accessible
+		 * 										no-argument constructor or the constructor fails
+		 */
+		public Object newInstance() {
+			if (constructor == null) {
+				throw new IllegalArgumentException("No accessible no-argument constructor; cls="+name);
+			}
+			try {
+				return (Object) constructor.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+		
 	}
 	
-	private void readFieldData(Bytifier bytifier, DecodeData data, Object obj, Field field) throws IllegalAccessException {
-		Class<?> fieldType = field.getType();
-		readDataMap.getOrDefault(fieldType, defaultRead).readFieldData(bytifier, data, obj, field);
+	/**<p>
+	 * The fields of an unknown class in the order in which they were described in a
+	 * stream. A stream describing a field which does not exist in the local class can not
+	 * be read, so every field of a schema has a local accessor.
+	 */
+	public static class StreamSchema {
+		
+		protected final ClassMetadata meta;
+		protected final FieldAccessor[] accessors;
+		
+		protected StreamSchema(ClassMetadata meta, FieldAccessor[] accessors) {
+			this.meta = meta;
+			this.accessors = accessors;
+		}
+		
+		public ClassMetadata getMetadata() {
+			return meta;
+		}
+		
+		public Object newInstance() {
+			return meta.newInstance();
+		}
+		
 	}
+	
 }
\ No newline at end of file
@@ -21,7 +21,7 @@ public class ValueTypeArrayProtocol<T> implements ClassProtocol {
 	@Override
 	public void write(Bytifier bytifier, EncodeData data, Object object) {
 		T[] arr = (T[]) object;
-		data.writeInt3(arr.length);
+		bytifier.writeLength(data, arr.length);
 		for (int i = 0; i < arr.length; i++) {
 			bytifier.writeChunk(data, arr[i], valType);
 		}
@@ -29,7 +29,7 @@ public class ValueTypeArrayProtocol<T> implements ClassProtocol {
 	
 	@Override
 	public Object create(Bytifier bytifier, DecodeData data) {
-		int length = data.readInt3();
+		int length = bytifier.readLength(data);
 		return Array.newInstance(elemType, length);
 	}
 	
@@ -15,6 +15,7 @@ import edu.udo.bytifier.ProtocolTuple;
 import edu.udo.bytifier.UnknownObjectTypeReaction;
 import edu.udo.bytifier.debug.DebugBytifier;
 import edu.udo.bytifier.protocols.ObjectProtocol;
+import edu.udo.bytifier.protocols.UnknownClassProtocol;
 import edu.udo.bytifier.tests.data.ClassWithPrimitiveAttributes;
 import edu.udo.bytifier.tests.data.EmptyClass;
 
@@ -483,6 +484,44 @@ class ChunkTest {
 		testClassProtocolIndex(ClassWithPrimitiveAttributes.class, 2);
 	}
 	
+	@Test
+	void testArrayElementProtocolIndices() {
+		Assertions.assertEquals(-1, bytifier.getProtocolIndexFor(String.class));
+		Assertions.assertEquals(-1, bytifier.getProtocolIndexFor((Class<?>) null));
+		Assertions.assertEquals(-1, bytifier.getArrayElementProtocolIndexFor(EmptyClass.class));
+		Assertions.assertEquals(-1, bytifier.getArrayElementProtocolIndexFor(String[].class));
+		Assertions.assertEquals(0, bytifier.getArrayElementProtocolIndexFor(Object[].class));
+		Assertions.assertEquals(1, bytifier.getArrayElementProtocolIndexFor(EmptyClass[][].class));
+		Assertions.assertEquals(2, bytifier.getArrayElementProtocolIndexFor(ClassWithPrimitiveAttributes[].class));
+	}
+	
+	@Test
+	void testGenericArrayComponentTypes() {
+		Assertions.assertEquals(EmptyClass.class, bytifier.getGenericArrayComponentType(1, 1));
+		Assertions.assertEquals(EmptyClass[][].class, bytifier.getGenericArrayComponentType(1, 3));
+		Assertions.assertEquals(EmptyClass[].class, bytifier.getGenericArrayComponentType(1, 2));
+		Assertions.assertSame(bytifier.getGenericArrayComponentType(0, 4), bytifier.getGenericArrayComponentType(0, 4));
+		Assertions.assertEquals(Object[][][].class, bytifier.getGenericArrayComponentType(0, 4));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.getGenericArrayComponentType(0, 0));
+	}
+	
+	@Test
+	void testRoundTripMultiDimensionalArray() {
+		EmptyClass shared = new EmptyClass();
+		EmptyClass[][] arr = {{shared, null}, {}, null, {new EmptyClass(), shared}};
+		
+		EmptyClass[][] result = (EmptyClass[][]) bytifier.decode(bytifier.encode(arr));
+		
+		Assertions.assertEquals(arr.length, result.length);
+		Assertions.assertEquals(2, result[0].length);
+		Assertions.assertNotNull(result[0][0]);
+		Assertions.assertNull(result[0][1]);
+		Assertions.assertEquals(0, result[1].length);
+		Assertions.assertNull(result[2]);
+		Assertions.assertNotNull(result[3][0]);
+		Assertions.assertSame(result[0][0], result[3][1]);
+	}
+	
 	private void testClassProtocolIndex(Class<?> cls, int expectedIndex) {
 		int idx = encoder.getProtocolIndexFor(cls);
 		Assertions.assertTrue(idx >= 0 && idx < bytifier.getProtocols().size());
@@ -624,6 +663,137 @@ class ChunkTest {
 		Assertions.assertEquals(expected, result);
 	}
 	
+	@Test
+	void testReadUnknownObjectWithRemovedField() {
+		int magicNum = bytifier.getProtocolIdentificationNumber();
+		encoder.writeInt4(magicNum);//magic number
+		encoder.writeInt1(1);// number of bytes to encode class index
+		encoder.writeInt4(1);// number of references. Only the one instance of UnknownClass.
+		
+		// chunk for UnknownClass instance written by a version of the class with a field d
+		encoder.writeChunkType(ChunkType.UNKNOWN_OBJ);
+		String clsName = Unknown.class.getName();
+		encoder.writeInt2(clsName.length());
+		for (int i = 0; i < clsName.length(); i++) {
+			encoder.writeInt2(clsName.charAt(i));
+		}
+		encoder.writeInt2(2);
+		encoder.writeInt2(1);
+		encoder.writeInt2('d');
+		encoder.writeInt8(Long.MAX_VALUE);
+		encoder.writeInt2(1);
+		encoder.writeInt2('a');
+		encoder.writeInt4(1984);
+		
+		byte[] bytes = encoder.getBytes(false);
+		IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+				() -> bytifier.decode(bytes));
+		Assertions.assertTrue(e.getMessage().contains(" d "), e.getMessage());
+	}
+	
+	@Test
+	void testWriteDescribedUnknownObject() {
+		Unknown uc1 = new Unknown();
+		Unknown uc2 = new Unknown();
+		uc2.a = 7;
+		Object[] arr = {uc1, uc2};
+		
+		int magicNum = bytifier.getProtocolIdentificationNumber();
+		encoder.writeInt4(magicNum);//magic number
+		encoder.writeInt1(1);// number of bytes to encode class index
+		encoder.writeInt4(3);// number of references. Two instances of UnknownClass and one generic array.
+		
+		// chunk for generic array
+		encoder.writeChunkType(ChunkType.GENERIC_ARRAY);
+		encoder.writeClassIndex(encoder.getProtocolIndexFor(Object.class));
+		encoder.writeInt1(1);// dimension of array (1 dimensional)
+		encoder.writeInt3(arr.length);// array length
+		
+		// chunk for first UnknownClass instance describes the class
+		encoder.writeChunkType(ChunkType.UNKNOWN_OBJ);
+		String clsName = Unknown.class.getName();
+		encoder.writeInt2(clsName.length());
+		for (int i = 0; i < clsName.length(); i++) {
+			encoder.writeInt2(clsName.charAt(i));
+		}
+		encoder.writeInt2(3);
+		encoder.writeInt2(1);
+		encoder.writeInt2('a');
+		encoder.writeInt4(uc1.a);
+		encoder.writeInt2(1);
+		encoder.writeInt2('b');
+		encoder.writeFloat4(uc1.b);
+		encoder.writeInt2(1);
+		encoder.writeInt2('c');
+		encoder.writeBoolean(uc1.c);
+		
+		// chunk for second UnknownClass instance refers to the description
+		encoder.writeChunkType(ChunkType.DESCRIBED_UNKNOWN_OBJ);
+		encoder.writeInt1(0);// stream-local index of the unknown class
+		encoder.writeInt4(uc2.a);
+		encoder.writeFloat4(uc2.b);
+		encoder.writeBoolean(uc2.c);
+		
+		byte[] expected = encoder.getBytes(false);
+		
+		bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.WRITE);
+		byte[] result = bytifier.encode(arr);
+		
+		Assertions.assertArrayEquals(expected, result);
+		Assertions.assertArrayEquals(arr, (Object[]) bytifier.decode(result));
+	}
+	
+	public static class UnknownNode {
+		int value;
+		UnknownNode next;
+		Unknown other;
+	}
+	
+	@Test
+	void testRoundTripNestedUnknownObjects() {
+		Object[] arr = new Object[20];
+		for (int i = 0; i < arr.length; i++) {
+			UnknownNode node = new UnknownNode();
+			node.value = i;
+			node.next = new UnknownNode();
+			node.next.value = -i;
+			node.other = new Unknown();
+			node.other.a = i * 2;
+			arr[i] = node;
+		}
+		
+		bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.WRITE);
+		Object[] result = (Object[]) bytifier.decode(bytifier.encode(arr));
+		
+		for (int i = 0; i < arr.length; i++) {
+			UnknownNode node = (UnknownNode) result[i];
+			Assertions.assertEquals(i, node.value);
+			Assertions.assertEquals(-i, node.next.value);
+			Assertions.assertNull(node.next.next);
+			Assertions.assertEquals(i * 2, node.other.a);
+		}
+	}
+	
+	@Test
+	void testRoundTripManyUnknownObjects() {
+		Object[] arr = new Object[100];
+		for (int i = 0; i < arr.length; i++) {
+			Unknown uc = new Unknown();
+			uc.a = i;
+			uc.b = i * 0.5f;
+			uc.c = i % 2 == 0;
+			arr[i] = uc;
+		}
+		
+		bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.WRITE);
+		Object[] result = (Object[]) bytifier.decode(bytifier.encode(arr));
+		
+		Assertions.assertArrayEquals(arr, result);
+		Assertions.assertSame(UnknownClassProtocol.getMetadata(Unknown.class),
+				UnknownClassProtocol.getMetadata(Unknown.class));
+		Assertions.assertEquals(3, UnknownClassProtocol.getMetadata(Unknown.class).getFieldCount());
+	}
+	
 	public static enum UnknownEnum {
 		A, B, C;
 	}
@@ -0,0 +1,154 @@
+package edu.udo.bytifier.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.UnknownObjectTypeReaction;
+import edu.udo.bytifier.tests.PerClassBuilderTest.Sample;
+
+class ConcurrencyTest {
+	
+	static final int THREAD_COUNT = 16;
+	static final int ITERATIONS = 200;
+	
+	public static class Node {
+		int id;
+		String label;
+		Node next;
+	}
+	
+	/** Not part of the protocol. */
+	public static class Unknown {
+		int value;
+		String text;
+	}
+	
+	Bytifier bytifier;
+	
+	@BeforeEach
+	void setup() {
+		ProtocolBuilder builder = new ProtocolBuilder()
+				.defineViaReflection(Node.class);
+		bytifier = PerClassBuilderTest.createBytifier(builder, true, false);
+		bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.WRITE);
+	}
+	
+	Object[] createGraph(int seed) {
+		Node first = new Node();
+		Node cur = first;
+		for (int i = 0; i < 20; i++) {
+			cur.id = seed + i;
+			cur.label = "node"+(i % 4);
+			cur.next = i == 19 ? first : new Node();
+			cur = cur.next;
+		}
+		Unknown unknown = new Unknown();
+		unknown.value = seed;
+		unknown.text = "unknown"+seed;
+		Sample sample = PerClassBuilderTest.createSample();
+		sample.setTime(seed);
+		Sample[][] samples = {{sample, PerClassBuilderTest.createSample()}, {sample}};
+		return new Object[] {first, unknown, samples, "seed"+seed, "seed"+seed};
+	}
+	
+	void assertGraph(int seed, Object decoded) {
+		Object[] arr = (Object[]) decoded;
+		Node first = (Node) arr[0];
+		Node cur = first;
+		for (int i = 0; i < 20; i++) {
+			Assertions.assertEquals(seed + i, cur.id);
+			Assertions.assertEquals("node"+(i % 4), cur.label);
+			cur = cur.next;
+		}
+		Assertions.assertSame(first, cur);
+		
+		Unknown unknown = (Unknown) arr[1];
+		Assertions.assertEquals(seed, unknown.value);
+		Assertions.assertEquals("unknown"+seed, unknown.text);
+		
+		Sample[][] samples = (Sample[][]) arr[2];
+		Assertions.assertSame(samples[0][0], samples[1][0]);
+		Assertions.assertEquals(seed, samples[0][0].getTime());
+		PerClassBuilderTest.assertSampleEquals(PerClassBuilderTest.createSample(), samples[0][1]);
+		
+		Assertions.assertEquals("seed"+seed, arr[3]);
+		Assertions.assertEquals("seed"+seed, arr[4]);
+	}
+	
+	@Test
+	void testSharedBytifier() throws Exception {
+		AtomicBoolean running = new AtomicBoolean(true);
+		// changing the settings while other threads encode must not break any encoding
+		Thread toggler = new Thread(() -> {
+			while (running.get()) {
+				bytifier.setDeduplicateStrings(!bytifier.isDeduplicateStrings());
+				Thread.yield();
+			}
+		});
+		toggler.start();
+		try {
+			runConcurrently(seed -> {
+				Object[] graph = createGraph(seed);
+				assertGraph(seed, bytifier.decode(bytifier.encode(graph)));
+			});
+		} finally {
+			running.set(false);
+			toggler.join();
+		}
+	}
+	
+	@Test
+	void testExplicitSessionsPerThread() throws Exception {
+		ThreadLocal<EncodeData> encoders = ThreadLocal.withInitial(bytifier::createEncodeData);
+		ThreadLocal<DecodeData> decoders = ThreadLocal.withInitial(bytifier::createDecodeData);
+		runConcurrently(seed -> {
+			Object[] graph = createGraph(seed);
+			byte[] bytes = bytifier.encode(encoders.get(), graph);
+			assertGraph(seed, bytifier.decode(decoders.get(), bytes));
+		});
+	}
+	
+	static interface Task {
+		void run(int seed) throws Exception;
+	}
+	
+	static void runConcurrently(Task task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREAD_COUNT; t++) {
+				int threadSeed = t * ITERATIONS * 100;
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < ITERATIONS; i++) {
+						task.run(threadSeed + i * 100);
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				// rethrows the first assertion error of any thread
+				future.get(1, TimeUnit.MINUTES);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+package edu.udo.bytifier.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.udo.bytifier.ByteBufferPool;
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeBufferData;
+import edu.udo.bytifier.EncodeDirectData;
+import edu.udo.bytifier.ProtocolBuilder;
+
+class DirectBufferTest {
+	
+	@TempDir
+	Path tempDir;
+	
+	Bytifier bytifier;
+	Object[] graph;
+	
+	@BeforeEach
+	void setup() {
+		bytifier = new ProtocolBuilder().build();
+		int[] ints = new int[300];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = i * 7919;
+		}
+		graph = new Object[] {"first", ints, new char[] {'a', 'b', 'c'}, ints, "last"};
+	}
+	
+	byte[] concat(ByteBuffer[] buffers) {
+		int total = 0;
+		for (ByteBuffer buf : buffers) {
+			total += buf.remaining();
+		}
+		ByteBuffer out = ByteBuffer.allocate(total);
+		for (ByteBuffer buf : buffers) {
+			out.put(buf.duplicate());
+		}
+		return out.array();
+	}
+	
+	@Test
+	void testPooledBuffers() {
+		ByteBufferPool pool = new ByteBufferPool(64, 100);
+		EncodeDirectData data = new EncodeDirectData(bytifier, pool);
+		byte[] expected = bytifier.encode(graph);
+		
+		ByteBuffer[] buffers = bytifier.encodeToByteBuffers(data, graph);
+		Assertions.assertTrue(buffers.length > 1);
+		for (ByteBuffer buf : buffers) {
+			Assertions.assertTrue(buf.isDirect());
+		}
+		Assertions.assertArrayEquals(expected, concat(buffers));
+		Assertions.assertArrayEquals(expected, data.getBytes(true));
+		
+		// encoding again returns all buffers but the first to the pool and reuses them
+		int bufferCount = buffers.length;
+		buffers = bytifier.encodeToByteBuffers(data, graph);
+		Assertions.assertEquals(bufferCount, buffers.length);
+		Assertions.assertArrayEquals(expected, concat(buffers));
+		
+		data.release();
+		Assertions.assertEquals(bufferCount, pool.getIdleCount());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(64)));
+	}
+	
+	@Test
+	void testGatheringWriteAndDirectDecode() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(128, 8);
+		EncodeDirectData encodeData = new EncodeDirectData(bytifier, pool);
+		Path file = tempDir.resolve("gathered.bin");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer[] buffers = bytifier.encodeToByteBuffers(encodeData, graph);
+			long remaining = bytifier.encode(graph).length;
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		Assertions.assertArrayEquals(bytifier.encode(graph), bytes);
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		DecodeBufferData decodeData = new DecodeBufferData(direct, false);
+		for (int i = 0; i < 2; i++) {
+			Object[] decoded = (Object[]) bytifier.decode(decodeData, direct);
+			Assertions.assertEquals("first", decoded[0]);
+			Assertions.assertArrayEquals((int[]) graph[1], (int[]) decoded[1]);
+			Assertions.assertArrayEquals((char[]) graph[2], (char[]) decoded[2]);
+			Assertions.assertSame(decoded[1], decoded[3]);
+			Assertions.assertEquals("last", decoded[4]);
+		}
+	}
+	
+}
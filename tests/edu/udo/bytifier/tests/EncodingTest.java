@@ -1,5 +1,9 @@
 package edu.udo.bytifier.tests;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import org.junit.jupiter.api.Assertions;
@@ -8,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import edu.udo.bytifier.Bytifier;
 import edu.udo.bytifier.DecodeData;
 import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
 
 class EncodingTest {
 	
@@ -15,6 +20,9 @@ class EncodingTest {
 		public TestEncoder() {
 			super(new Bytifier(), false);
 		}
+		public TestEncoder(boolean growBuffer) {
+			super(new Bytifier(), MIN_BUFFER_SIZE, false, growBuffer);
+		}
 		int getPos() {
 			return pos;
 		}
@@ -238,6 +246,120 @@ class EncodingTest {
 		Assertions.assertEquals(value, decoder.readInt8());
 	}
 	
+	@Test
+	void testWriteVarInt() {
+		testWriteVarInt(0, 1);
+		testWriteVarInt(1, 1);
+		testWriteVarInt(127, 1);
+		testWriteVarInt(128, 2);
+		testWriteVarInt(16383, 2);
+		testWriteVarInt(16384, 3);
+		testWriteVarInt(Integer.MAX_VALUE, 5);
+		testWriteVarInt(-1, 5);
+		testWriteVarInt(Integer.MIN_VALUE, 5);
+	}
+	
+	void testWriteVarInt(int value, int expectedBytes) {
+		TestEncoder encoder = new TestEncoder();
+		int pos = encoder.getPos();
+		encoder.writeVarInt(value);
+		Assertions.assertEquals(pos + expectedBytes, encoder.getPos());
+		
+		DecodeData decoder = new DecodeData(encoder.getBuf(), false);
+		Assertions.assertEquals(value, decoder.readVarInt());
+	}
+	
+	@Test
+	void testWriteSignedVarInt() {
+		testWriteSignedVarInt(0, 1);
+		testWriteSignedVarInt(-1, 1);
+		testWriteSignedVarInt(63, 1);
+		testWriteSignedVarInt(-64, 1);
+		testWriteSignedVarInt(64, 2);
+		testWriteSignedVarInt(-65, 2);
+		testWriteSignedVarInt(Integer.MAX_VALUE, 5);
+		testWriteSignedVarInt(Integer.MIN_VALUE, 5);
+	}
+	
+	void testWriteSignedVarInt(int value, int expectedBytes) {
+		TestEncoder encoder = new TestEncoder();
+		int pos = encoder.getPos();
+		encoder.writeSignedVarInt(value);
+		Assertions.assertEquals(pos + expectedBytes, encoder.getPos());
+		
+		DecodeData decoder = new DecodeData(encoder.getBuf(), false);
+		Assertions.assertEquals(value, decoder.readSignedVarInt());
+	}
+	
+	@Test
+	void testWriteVarLong() {
+		testWriteVarLong(0, 1, false);
+		testWriteVarLong(127, 1, false);
+		testWriteVarLong(128, 2, false);
+		testWriteVarLong(Long.MAX_VALUE, 9, false);
+		testWriteVarLong(-1, 10, false);
+		testWriteVarLong(Long.MIN_VALUE, 10, false);
+		testWriteVarLong(-1, 1, true);
+		testWriteVarLong(1234567890123L, 6, true);
+		testWriteVarLong(Long.MAX_VALUE, 10, true);
+		testWriteVarLong(Long.MIN_VALUE, 10, true);
+	}
+	
+	void testWriteVarLong(long value, int expectedBytes, boolean signed) {
+		TestEncoder encoder = new TestEncoder(true);
+		int pos = encoder.getPos();
+		if (signed) {
+			encoder.writeSignedVarLong(value);
+		} else {
+			encoder.writeVarLong(value);
+		}
+		Assertions.assertEquals(pos + expectedBytes, encoder.getPos());
+		
+		DecodeData decoder = new DecodeData(encoder.getBuf(), false);
+		Assertions.assertEquals(value, signed ? decoder.readSignedVarLong() : decoder.readVarLong());
+	}
+	
+	@Test
+	void testReadMalformedVarInt() {
+		byte[] bytes = new byte[] {-1, -1, -1, -1, -1, 1};
+		Assertions.assertThrows(IllegalStateException.class, () -> new DecodeData(bytes, false).readVarInt());
+	}
+	
+	@Test
+	void testCompactIntegers() {
+		Bytifier fixed = new ProtocolBuilder()
+				.defineCollection(ArrayList.class, ArrayList::new)
+				.build();
+		Bytifier compact = new ProtocolBuilder()
+				.setCompactIntegers(true)
+				.defineCollection(ArrayList.class, ArrayList::new)
+				.build();
+		Assertions.assertFalse(fixed.isCompactIntegers());
+		Assertions.assertTrue(compact.isCompactIntegers());
+		Assertions.assertNotEquals(fixed.getProtocolIdentificationNumber(), compact.getProtocolIdentificationNumber());
+		
+		ArrayList<Object> list = new ArrayList<>();
+		list.add("text");
+		list.add(new int[] {1, 2, 3});
+		list.add(new Object[] {"a", null, new ArrayList<>()});
+		
+		byte[] fixedBytes = fixed.encode(list);
+		byte[] compactBytes = compact.encode(list);
+		Assertions.assertTrue(compactBytes.length < fixedBytes.length);
+		
+		@SuppressWarnings("unchecked")
+		ArrayList<Object> result = (ArrayList<Object>) compact.decode(compactBytes);
+		Assertions.assertEquals(list.size(), result.size());
+		Assertions.assertEquals("text", result.get(0));
+		Assertions.assertArrayEquals((int[]) list.get(1), (int[]) result.get(1));
+		Object[] arr = (Object[]) result.get(2);
+		Assertions.assertEquals("a", arr[0]);
+		Assertions.assertNull(arr[1]);
+		Assertions.assertEquals(new ArrayList<>(), arr[2]);
+		
+		Assertions.assertThrows(RuntimeException.class, () -> fixed.decode(compactBytes));
+	}
+	
 	@Test
 	void testWriteFloat4() {
 		testWriteFloat4(0f);
@@ -331,4 +453,148 @@ class EncodingTest {
 		Assertions.assertEquals(4.2, decoder.readFloat8());
 	}
 	
+	@Test
+	void testBufferModes() throws IOException {
+		byte[] manyBytes = new byte[EncodeData.MIN_BUFFER_SIZE * 5 + 3];
+		for (int i = 0; i < manyBytes.length; i++) {
+			manyBytes[i] = (byte) (i * 7);
+		}
+		testBufferMode(manyBytes, true);
+		testBufferMode(manyBytes, false);
+	}
+	
+	void testBufferMode(byte[] arr, boolean growBuffer) throws IOException {
+		TestEncoder encoder = new TestEncoder(growBuffer);
+		encoder.writeBytes(arr, 0, 3);
+		for (int i = 3; i < arr.length; i++) {
+			encoder.writeInt1(arr[i]);
+		}
+		Assertions.assertEquals(arr.length, encoder.getByteCount());
+		Assertions.assertArrayEquals(arr, encoder.getBytes(false));
+		
+		ByteBuffer view = encoder.getByteBuffer(false);
+		byte[] viewBytes = new byte[view.remaining()];
+		view.get(viewBytes);
+		Assertions.assertArrayEquals(arr, viewBytes);
+		if (growBuffer) {
+			Assertions.assertSame(encoder.getBuf(), view.array());
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.writeTo(out, false);
+		Assertions.assertArrayEquals(arr, out.toByteArray());
+		
+		int total = 0;
+		for (ByteBuffer buf : encoder.getByteBuffers(false)) {
+			total += buf.remaining();
+		}
+		Assertions.assertEquals(arr.length, total);
+	}
+	
+	@Test
+	void testEncodeToByteBuffer() {
+		Bytifier bytifier = new ProtocolBuilder().build();
+		int[] arr = new int[5000];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = i * i;
+		}
+		ByteBuffer buf = bytifier.encodeToByteBuffer(arr);
+		byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		Assertions.assertArrayEquals(bytifier.encode(arr), bytes);
+		Assertions.assertArrayEquals(arr, (int[]) bytifier.decode(bytes));
+	}
+	
+	@Test
+	void testBulkWrites() {
+		testBulkWrites(true);
+		testBulkWrites(false);
+	}
+	
+	void testBulkWrites(boolean growBuffer) {
+		int len = EncodeData.MIN_BUFFER_SIZE * 3 + 1;
+		boolean[] bools = new boolean[len];
+		short[] shorts = new short[len];
+		char[] chars = new char[len];
+		int[] ints = new int[len];
+		long[] longs = new long[len];
+		float[] floats = new float[len];
+		double[] doubles = new double[len];
+		for (int i = 0; i < len; i++) {
+			bools[i] = i % 3 == 0;
+			shorts[i] = (short) (i * -1013);
+			chars[i] = (char) (i * 997);
+			ints[i] = i * -1_000_003;
+			longs[i] = i * -1_000_000_000_039L;
+			floats[i] = i * -0.37f;
+			doubles[i] = i * -0.0037;
+		}
+		floats[1] = Float.intBitsToFloat(0x7FC0_1234);
+		doubles[1] = Double.longBitsToDouble(0x7FF8_0000_1234_5678L);
+		
+		TestEncoder expected = new TestEncoder(growBuffer);
+		// an odd number of bytes first to make elements straddle buffer boundaries
+		expected.writeInt1(7);
+		for (int i = 1; i < len; i++) {
+			expected.writeBoolean(bools[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeInt2(shorts[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeInt2(chars[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeInt4(ints[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeInt8(longs[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeFloat4(floats[i]);
+		}
+		for (int i = 1; i < len; i++) {
+			expected.writeFloat8(doubles[i]);
+		}
+		
+		TestEncoder encoder = new TestEncoder(growBuffer);
+		encoder.writeInt1(7);
+		encoder.writeBooleans(bools, 1, len - 1);
+		encoder.writeShorts(shorts, 1, len - 1);
+		encoder.writeChars(chars, 1, len - 1);
+		encoder.writeInts(ints, 1, len - 1);
+		encoder.writeLongs(longs, 1, len - 1);
+		encoder.writeFloats(floats, 1, len - 1);
+		encoder.writeDoubles(doubles, 1, len - 1);
+		byte[] bytes = encoder.getBytes(false);
+		Assertions.assertArrayEquals(expected.getBytes(false), bytes);
+		
+		DecodeData decoder = new DecodeData(bytes, false);
+		Assertions.assertEquals(7, decoder.readInt1());
+		boolean[] boolsOut = new boolean[len];
+		decoder.readBooleans(boolsOut, 1, len - 1);
+		short[] shortsOut = new short[len];
+		decoder.readShorts(shortsOut, 1, len - 1);
+		char[] charsOut = new char[len];
+		decoder.readChars(charsOut, 1, len - 1);
+		int[] intsOut = new int[len];
+		decoder.readInts(intsOut, 1, len - 1);
+		long[] longsOut = new long[len];
+		decoder.readLongs(longsOut, 1, len - 1);
+		float[] floatsOut = new float[len];
+		decoder.readFloats(floatsOut, 1, len - 1);
+		double[] doublesOut = new double[len];
+		decoder.readDoubles(doublesOut, 1, len - 1);
+		Assertions.assertFalse(decoder.hasMoreData());
+		for (int i = 1; i < len; i++) {
+			Assertions.assertEquals(bools[i], boolsOut[i]);
+			Assertions.assertEquals(shorts[i], shortsOut[i]);
+			Assertions.assertEquals(chars[i], charsOut[i]);
+			Assertions.assertEquals(ints[i], intsOut[i]);
+			Assertions.assertEquals(longs[i], longsOut[i]);
+			Assertions.assertEquals(Float.floatToRawIntBits(floats[i]), Float.floatToRawIntBits(floatsOut[i]));
+			Assertions.assertEquals(Double.doubleToRawLongBits(doubles[i]), Double.doubleToRawLongBits(doublesOut[i]));
+		}
+	}
+	
 }
@@ -0,0 +1,114 @@
+package edu.udo.bytifier.tests;
+
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.ValueType;
+import edu.udo.bytifier.protocols.FieldAccessor;
+import edu.udo.bytifier.protocols.ReflectionClassProtocol;
+
+class FieldAccessorTest {
+	
+	public static class Base {
+		private int baseValue;
+	}
+	
+	public static class Sample extends Base {
+		private boolean z;
+		private byte b;
+		private short s;
+		private char c;
+		private int i;
+		private long l;
+		private float f;
+		private double d;
+		private String str;
+		private int[] ints;
+		private @ValueType Sample value;
+		private Sample ref;
+		private final int fixed = 5;
+	}
+	
+	static Sample createSample() {
+		Sample sample = new Sample();
+		((Base) sample).baseValue = -7;
+		sample.z = true;
+		sample.b = -3;
+		sample.s = 12345;
+		sample.c = '\u20AC';
+		sample.i = Integer.MIN_VALUE;
+		sample.l = 0x0123456789ABCDEFL;
+		sample.f = 1.5f;
+		sample.d = -2.25;
+		sample.str = "accessor";
+		sample.ints = new int[] {1, 2, 3};
+		sample.value = new Sample();
+		sample.value.i = 99;
+		sample.ref = sample;
+		return sample;
+	}
+	
+	@Test
+	void testAccessorsAreGenerated() throws ReflectiveOperationException {
+		Field baseValue = Base.class.getDeclaredField("baseValue");
+		FieldAccessor accessor = FieldAccessor.of(baseValue);
+		Assertions.assertTrue(accessor.getClass().isHidden());
+		Assertions.assertSame(accessor, FieldAccessor.of(Base.class.getDeclaredField("baseValue")));
+		
+		FieldAccessor fixed = FieldAccessor.of(Sample.class.getDeclaredField("fixed"));
+		Assertions.assertFalse(fixed.getClass().isHidden());
+	}
+	
+	@Test
+	void testGeneratedEqualsReflective() {
+		Bytifier bytifier = new ProtocolBuilder()
+				.defineForClass(Sample.class, ReflectionClassProtocol.withoutFields(Sample.class, "fixed"))
+				.build();
+		Sample sample = createSample();
+		
+		EncodeData generated = bytifier.createEncodeData();
+		EncodeData reflective = bytifier.createEncodeData();
+		ReflectionClassProtocol.forEachField(Sample.class, field -> {
+			if (!field.isSynthetic()) {
+				FieldAccessor.of(field).write(bytifier, generated, sample);
+				FieldAccessor.reflective(field).write(bytifier, reflective, sample);
+			}
+		});
+		Assertions.assertArrayEquals(reflective.getBytes(), generated.getBytes());
+		
+		Sample decoded = (Sample) bytifier.decode(bytifier.encode(sample));
+		Assertions.assertEquals(-7, ((Base) decoded).baseValue);
+		Assertions.assertTrue(decoded.z);
+		Assertions.assertEquals(-3, decoded.b);
+		Assertions.assertEquals(12345, decoded.s);
+		Assertions.assertEquals('\u20AC', decoded.c);
+		Assertions.assertEquals(Integer.MIN_VALUE, decoded.i);
+		Assertions.assertEquals(0x0123456789ABCDEFL, decoded.l);
+		Assertions.assertEquals(1.5f, decoded.f);
+		Assertions.assertEquals(-2.25, decoded.d);
+		Assertions.assertEquals("accessor", decoded.str);
+		Assertions.assertArrayEquals(new int[] {1, 2, 3}, decoded.ints);
+		Assertions.assertEquals(99, decoded.value.i);
+		Assertions.assertSame(decoded, decoded.ref);
+	}
+	
+	@Test
+	void testReadWithGeneratedAccessor() throws ReflectiveOperationException {
+		Bytifier bytifier = new ProtocolBuilder().build();
+		FieldAccessor accessor = FieldAccessor.of(Sample.class.getDeclaredField("l"));
+		Sample sample = createSample();
+		EncodeData data = new EncodeData(bytifier, 64, false);
+		accessor.write(bytifier, data, sample);
+		
+		Sample target = new Sample();
+		accessor.read(bytifier, new DecodeData(data.getBytes(false), false), target);
+		Assertions.assertEquals(sample.l, target.l);
+	}
+	
+}
@@ -0,0 +1,124 @@
+package edu.udo.bytifier.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.ClassProtocol;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.ValueType;
+import edu.udo.bytifier.protocols.ReflectionClassProtocol;
+import edu.udo.bytifier.protocols.ReflectionProtocolGenerator;
+import edu.udo.bytifier.tests.data.LinkedClass;
+
+class GeneratedProtocolTest {
+	
+	public static class Base {
+		int baseValue;
+	}
+	
+	public static class AllTypes extends Base {
+		private boolean z;
+		private byte b;
+		private short s;
+		private char c;
+		private int i;
+		private long l;
+		private float f;
+		private double d;
+		private String str;
+		private int[] ints;
+		private Object obj;
+		private @ValueType AllTypes value;
+		private AllTypes ref;
+		private LinkedClass linked;
+	}
+	
+	static class WithFinalField {
+		final int x;
+		WithFinalField() {
+			x = 0;
+		}
+	}
+	
+	static AllTypes createGraph() {
+		AllTypes a = new AllTypes();
+		a.baseValue = -7;
+		a.z = true;
+		a.b = -3;
+		a.s = 12345;
+		a.c = '\u20AC';
+		a.i = Integer.MIN_VALUE;
+		a.l = 0x0123456789ABCDEFL;
+		a.f = 1.5f;
+		a.d = -2.25;
+		a.str = "generated";
+		a.ints = new int[] {1, 2, 3};
+		a.obj = a.ints;
+		a.value = new AllTypes();
+		a.value.i = 99;
+		a.ref = a;
+		a.linked = new LinkedClass();
+		a.linked.next = new LinkedClass();
+		return a;
+	}
+	
+	static Bytifier build(boolean generate) {
+		return new ProtocolBuilder()
+				.setGenerateReflectionProtocols(generate)
+				.defineViaReflection(AllTypes.class)
+				.defineViaReflection(LinkedClass.class)
+				.build();
+	}
+	
+	@Test
+	void testGeneratedProtocolIsUsed() {
+		ReflectionClassProtocol reflective = ReflectionClassProtocol.allFieldsOf(AllTypes.class);
+		ClassProtocol generated = ReflectionProtocolGenerator.generate(reflective);
+		Assertions.assertNotSame(reflective, generated);
+		Assertions.assertTrue(generated.getClass().isHidden());
+		Assertions.assertEquals(reflective.getIdentificationNumber(), generated.getIdentificationNumber());
+	}
+	
+	@Test
+	void testSameBytesAsReflection() {
+		AllTypes graph = createGraph();
+		byte[] reflective = build(false).encode(graph);
+		byte[] generated = build(true).encode(graph);
+		Assertions.assertArrayEquals(reflective, generated);
+	}
+	
+	@Test
+	void testRoundTrip() {
+		Bytifier bytifier = build(true);
+		AllTypes graph = createGraph();
+		AllTypes result = (AllTypes) bytifier.decode(bytifier.encode(graph));
+		Assertions.assertEquals(graph.baseValue, result.baseValue);
+		Assertions.assertEquals(graph.z, result.z);
+		Assertions.assertEquals(graph.b, result.b);
+		Assertions.assertEquals(graph.s, result.s);
+		Assertions.assertEquals(graph.c, result.c);
+		Assertions.assertEquals(graph.i, result.i);
+		Assertions.assertEquals(graph.l, result.l);
+		Assertions.assertEquals(graph.f, result.f);
+		Assertions.assertEquals(graph.d, result.d);
+		Assertions.assertEquals(graph.str, result.str);
+		Assertions.assertArrayEquals(graph.ints, result.ints);
+		Assertions.assertSame(result.ints, result.obj);
+		Assertions.assertEquals(99, result.value.i);
+		Assertions.assertSame(result, result.ref);
+		Assertions.assertNotNull(result.linked.next);
+		Assertions.assertNull(result.linked.next.next);
+		// decoding bytes written with reflection must give the same result
+		AllTypes fromReflection = (AllTypes) bytifier.decode(build(false).encode(graph));
+		Assertions.assertEquals(graph.l, fromReflection.l);
+		Assertions.assertSame(fromReflection, fromReflection.ref);
+	}
+	
+	@Test
+	void testFallbackToReflection() {
+		ReflectionClassProtocol reflective = ReflectionClassProtocol.allFieldsOf(WithFinalField.class);
+		Assertions.assertSame(reflective, ReflectionProtocolGenerator.generate(reflective));
+	}
+	
+}
@@ -0,0 +1,65 @@
+package edu.udo.bytifier.tests;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.IdentityIntMap;
+
+class IdentityIntMapTest {
+	
+	@Test
+	void testPutAndGet() {
+		IdentityIntMap map = new IdentityIntMap(4);
+		Map<Object, Integer> expected = new IdentityHashMap<>();
+		Object[] keys = new Object[10_000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new Object();
+			map.put(keys[i], i);
+			expected.put(keys[i], i);
+		}
+		Assertions.assertEquals(expected.size(), map.size());
+		for (Object key : keys) {
+			Assertions.assertTrue(map.containsKey(key));
+			Assertions.assertEquals(expected.get(key).intValue(), map.get(key, -1));
+		}
+		Assertions.assertFalse(map.containsKey(new Object()));
+		Assertions.assertEquals(-1, map.get(new Object(), -1));
+	}
+	
+	@Test
+	void testIdentitySemantics() {
+		IdentityIntMap map = new IdentityIntMap();
+		String a = new String("equal");
+		String b = new String("equal");
+		map.put(a, 1);
+		map.put(b, 2);
+		Assertions.assertEquals(2, map.size());
+		Assertions.assertEquals(1, map.get(a, -1));
+		Assertions.assertEquals(2, map.get(b, -1));
+		map.put(a, 3);
+		Assertions.assertEquals(2, map.size());
+		Assertions.assertEquals(3, map.get(a, -1));
+	}
+	
+	@Test
+	void testClear() {
+		IdentityIntMap map = new IdentityIntMap();
+		Object key = new Object();
+		map.put(key, 7);
+		map.clear();
+		Assertions.assertTrue(map.isEmpty());
+		Assertions.assertFalse(map.containsKey(key));
+		map.put(key, 8);
+		Assertions.assertEquals(8, map.get(key, -1));
+	}
+	
+	@Test
+	void testIllegalArguments() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new IdentityIntMap(-1));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new IdentityIntMap().put(null, 0));
+	}
+	
+}
@@ -0,0 +1,166 @@
+package edu.udo.bytifier.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeBufferData;
+import edu.udo.bytifier.DecodeMappedFileData;
+import edu.udo.bytifier.EncodeMappedFileData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.UnknownObjectTypeReaction;
+
+class MappedFileTest {
+	
+	/** Not part of the protocol. */
+	static class Unknown {
+	}
+	
+	@TempDir
+	Path tempDir;
+	
+	Bytifier bytifier;
+	Object[] graph;
+	
+	@BeforeEach
+	void setup() {
+		bytifier = new ProtocolBuilder().build();
+		double[] doubles = new double[777];
+		for (int i = 0; i < doubles.length; i++) {
+			doubles[i] = i / 3.0;
+		}
+		int[] shared = {1, 2, 3};
+		graph = new Object[] {"header", doubles, shared, new long[] {Long.MIN_VALUE, 0, Long.MAX_VALUE}, shared, "trailer"};
+	}
+	
+	void assertGraph(Object decoded) {
+		Object[] arr = (Object[]) decoded;
+		Assertions.assertEquals(graph.length, arr.length);
+		Assertions.assertEquals(graph[0], arr[0]);
+		Assertions.assertArrayEquals((double[]) graph[1], (double[]) arr[1]);
+		Assertions.assertArrayEquals((int[]) graph[2], (int[]) arr[2]);
+		Assertions.assertArrayEquals((long[]) graph[3], (long[]) arr[3]);
+		Assertions.assertSame(arr[2], arr[4]);
+		Assertions.assertEquals(graph[5], arr[5]);
+	}
+	
+	@Test
+	void testEncodeAndDecodeMapped() throws IOException {
+		Path file = tempDir.resolve("graph.bin");
+		bytifier.encodeMapped(graph, file);
+		Assertions.assertArrayEquals(bytifier.encode(graph), Files.readAllBytes(file));
+		assertGraph(bytifier.decodeMapped(file));
+	}
+	
+	@Test
+	void testSmallWindows() throws IOException {
+		Path file = tempDir.resolve("windows.bin");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			EncodeMappedFileData data = new EncodeMappedFileData(bytifier, channel, 0, 37);
+			bytifier.writeChunk(data, graph, false);
+			data.finish();
+		}
+		Assertions.assertArrayEquals(bytifier.encode(graph), Files.readAllBytes(file));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			DecodeMappedFileData data = new DecodeMappedFileData(channel, 0, 29);
+			assertGraph(bytifier.readChunk(data));
+			Assertions.assertFalse(data.hasMoreData());
+		}
+	}
+	
+	@Test
+	void testFailedEncodeLeavesEmptyFile() throws IOException {
+		Path file = tempDir.resolve("failed.bin");
+		Files.write(file, new byte[100]);
+		bytifier.setReactionToUnknownObjectTypes(UnknownObjectTypeReaction.THROW_EXCEPTION);
+		Object[] unknown = {new double[100_000], new Unknown()};
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.encodeMapped(unknown, file));
+		Assertions.assertEquals(0, Files.size(file));
+		
+		// the file can be written again and has exactly the encoded length
+		bytifier.encodeMapped(graph, file);
+		Assertions.assertEquals(bytifier.encode(graph).length, Files.size(file));
+	}
+	
+	@Test
+	void testWindowsAreUnmapped() throws IOException {
+		Path maps = Path.of("/proc/self/maps");
+		Assumptions.assumeTrue(Files.isReadable(maps), "The mappings of the process can not be inspected");
+		Path file = tempDir.toRealPath().resolve("unmapped.bin");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			// a single window which is larger than the graph
+			EncodeMappedFileData data = new EncodeMappedFileData(bytifier, channel);
+			bytifier.writeChunk(data, graph, false);
+			Assertions.assertTrue(Files.readString(maps).contains(file.toString()));
+			data.finish();
+			Assertions.assertFalse(Files.readString(maps).contains(file.toString()));
+			
+			// many small windows
+			data = new EncodeMappedFileData(bytifier, channel, 0, 37);
+			bytifier.writeChunk(data, graph, false);
+			data.abort();
+			Assertions.assertFalse(Files.readString(maps).contains(file.toString()));
+		}
+	}
+	
+	@Test
+	void testUseAfterFinishThrows() throws IOException {
+		Path file = tempDir.resolve("finished.bin");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			EncodeMappedFileData data = new EncodeMappedFileData(bytifier, channel, 0, 37);
+			bytifier.writeChunk(data, graph, false);
+			data.finish();
+			Assertions.assertThrows(IllegalStateException.class, () -> data.getBytes());
+			Assertions.assertThrows(IllegalStateException.class, () -> data.getByteBuffers(false));
+			Assertions.assertThrows(IllegalStateException.class, () -> data.writeTo(new ByteArrayOutputStream(), false));
+			Assertions.assertThrows(IllegalStateException.class, () -> data.writeInt4(1));
+			Assertions.assertThrows(IllegalStateException.class, () -> data.reset());
+			Assertions.assertThrows(IllegalStateException.class, () -> data.abort());
+		}
+		Assertions.assertArrayEquals(bytifier.encode(graph), Files.readAllBytes(file));
+	}
+	
+	@Test
+	void testDecodeByteBuffer() {
+		byte[] bytes = bytifier.encode(graph);
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+		direct.put(new byte[3]).put(bytes).flip().position(3);
+		assertGraph(bytifier.decode(direct));
+		Assertions.assertEquals(3, direct.position());
+		assertGraph(bytifier.decode(ByteBuffer.wrap(bytes)));
+	}
+	
+	@Test
+	void testResetToByteArray() throws IOException {
+		byte[] bytes = bytifier.encode(graph);
+		assertGraph(bytifier.decode(new DecodeBufferData(ByteBuffer.wrap(bytes)), bytes));
+		
+		Path file = tempDir.resolve("reset.bin");
+		bytifier.encodeMapped(new int[] {1, 2, 3}, file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			DecodeMappedFileData data = new DecodeMappedFileData(channel, 0, 16);
+			assertGraph(bytifier.decode(data, bytes));
+			// the file is not read once the data has been reset
+			Assertions.assertFalse(data.hasMoreData());
+			Assertions.assertEquals(0, data.getRemainingByteCount());
+		}
+	}
+	
+}
@@ -8,6 +8,7 @@ import edu.udo.bytifier.Bytifier;
 import edu.udo.bytifier.ClassProtocol;
 import edu.udo.bytifier.DecodeData;
 import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
 import edu.udo.bytifier.ProtocolTuple;
 import edu.udo.bytifier.debug.DebugBytifier;
 import edu.udo.bytifier.protocols.ObjectProtocol;
@@ -101,6 +102,46 @@ class PayloadTest {
 		Assertions.assertSame(result, result[2]);
 	}
 	
+	@Test
+	void testReferenceIndexAboveSignedByte() {
+		Object[] arr = new Object[400];
+		for (int i = 0; i < 200; i++) {
+			arr[i] = new EmptyClass();
+		}
+		for (int i = 200; i < arr.length; i++) {
+			arr[i] = arr[i - 200];
+		}
+		
+		Object[] result = (Object[]) bytifier.decode(bytifier.encode(arr));
+		
+		for (int i = 200; i < arr.length; i++) {
+			Assertions.assertSame(result[i - 200], result[i]);
+		}
+	}
+	
+	@Test
+	void testDeduplicateStrings() {
+		Bytifier plain = new ProtocolBuilder().build();
+		Bytifier dedup = new ProtocolBuilder().setDeduplicateStrings(true).build();
+		
+		String text = "a string which is written more than once";
+		Object[] arr = new Object[] {text, new String(text), "other", new String(text), null};
+		
+		byte[] plainBytes = plain.encode(arr);
+		byte[] dedupBytes = dedup.encode(arr);
+		Assertions.assertTrue(dedupBytes.length + 2 * text.length() < plainBytes.length);
+		
+		Object[] result = (Object[]) plain.decode(dedupBytes);
+		Assertions.assertEquals(text, result[0]);
+		Assertions.assertSame(result[0], result[1]);
+		Assertions.assertSame(result[0], result[3]);
+		Assertions.assertEquals("other", result[2]);
+		Assertions.assertNull(result[4]);
+		
+		Object[] plainResult = (Object[]) plain.decode(plainBytes);
+		Assertions.assertNotSame(plainResult[0], plainResult[1]);
+	}
+	
 	@Test
 	void testStackDepth() {
 		LinkedClass lc = new LinkedClass();
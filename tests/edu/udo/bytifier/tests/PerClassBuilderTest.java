@@ -0,0 +1,208 @@
+package edu.udo.bytifier.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.PerClassBuilder;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.ProtocolTuple;
+
+class PerClassBuilderTest {
+	
+	public static class Sample {
+		final String name;
+		final int i;
+		final long l;
+		final double d;
+		final boolean z;
+		short s;
+		byte b;
+		char c;
+		float f;
+		long time;
+		
+		public Sample(String name, int i, long l, double d, boolean z) {
+			this.name = name;
+			this.i = i;
+			this.l = l;
+			this.d = d;
+			this.z = z;
+		}
+		public String getName() {
+			return name;
+		}
+		public int getI() {
+			return i;
+		}
+		public long getL() {
+			return l;
+		}
+		public double getD() {
+			return d;
+		}
+		public boolean isZ() {
+			return z;
+		}
+		public short getS() {
+			return s;
+		}
+		public void setS(short s) {
+			this.s = s;
+		}
+		public byte getB() {
+			return b;
+		}
+		public void setB(byte b) {
+			this.b = b;
+		}
+		public char getC() {
+			return c;
+		}
+		public void setC(char c) {
+			this.c = c;
+		}
+		public float getF() {
+			return f;
+		}
+		public void setF(float f) {
+			this.f = f;
+		}
+		public long getTime() {
+			return time;
+		}
+		public void setTime(long time) {
+			this.time = time;
+		}
+	}
+	
+	@Test
+	void testPrimitiveFieldsAndConstructor() {
+		Bytifier bytifier = createBytifier(false, false);
+		Sample sample = createSample();
+		Sample result = (Sample) bytifier.decode(bytifier.encode(sample));
+		assertSampleEquals(sample, result);
+	}
+	
+	@Test
+	void testGeneratedProtocol() {
+		Bytifier plain = createBytifier(false, false);
+		Bytifier generated = createBytifier(true, false);
+		Sample sample = createSample();
+		
+		byte[] encoded = generated.encode(sample);
+		Assertions.assertArrayEquals(plain.encode(sample), encoded);
+		assertSampleEquals(sample, (Sample) generated.decode(encoded));
+		assertSampleEquals(sample, (Sample) plain.decode(encoded));
+	}
+	
+	@Test
+	void testGeneratedProtocolWithFieldHash() {
+		Bytifier plain = createBytifier(false, true);
+		Bytifier generated = createBytifier(true, true);
+		Sample sample = createSample();
+		
+		byte[] encoded = generated.encode(sample);
+		Assertions.assertArrayEquals(plain.encode(sample), encoded);
+		assertSampleEquals(sample, (Sample) generated.decode(encoded));
+	}
+	
+	@Test
+	void testGeneratedProtocolCodeSize() {
+		// each field adds a write and a read action
+		Assertions.assertTrue(isGenerated(createBytifierWithFields(2000)));
+		Bytifier tooLarge = createBytifierWithFields(3000);
+		Assertions.assertFalse(isGenerated(tooLarge));
+		
+		Sample sample = createSample();
+		assertSampleEquals(sample, (Sample) tooLarge.decode(tooLarge.encode(sample)));
+	}
+	
+	static Bytifier createBytifierWithFields(int fieldCount) {
+		PerClassBuilder<Sample> builder = new ProtocolBuilder()
+				.defineForClass(Sample.class)
+					.setGenerateProtocol(true)
+					.addConstructorString(Sample::getName)
+					.addConstructorInt(Sample::getI)
+					.addConstructorLong(Sample::getL)
+					.addConstructorDouble(Sample::getD)
+					.addConstructorBool(Sample::isZ)
+					.addFieldShort(Sample::getS, Sample::setS)
+					.addFieldByte(Sample::getB, Sample::setB)
+					.addFieldChar(Sample::getC, Sample::setC)
+					.addFieldFloat(Sample::getF, Sample::setF);
+		for (int i = 0; i < fieldCount; i++) {
+			builder.addFieldLong(Sample::getTime, Sample::setTime);
+		}
+		return builder.endDefinition().build();
+	}
+	
+	static boolean isGenerated(Bytifier bytifier) {
+		for (ProtocolTuple tuple : bytifier.getProtocols()) {
+			if (tuple.cls == Sample.class) {
+				return tuple.proto.getClass().isHidden();
+			}
+		}
+		throw new AssertionError("No protocol for Sample");
+	}
+	
+	@Test
+	void testCompactIntegers() {
+		Bytifier bytifier = createBytifier(new ProtocolBuilder().setCompactIntegers(true), false, false);
+		Sample sample = createSample();
+		byte[] encoded = bytifier.encode(sample);
+		assertSampleEquals(sample, (Sample) bytifier.decode(encoded));
+		
+		sample.time = -3;
+		byte[] smaller = bytifier.encode(sample);
+		Assertions.assertTrue(smaller.length < encoded.length);
+		assertSampleEquals(sample, (Sample) bytifier.decode(smaller));
+	}
+	
+	static Bytifier createBytifier(boolean generate, boolean fieldHash) {
+		return createBytifier(new ProtocolBuilder(), generate, fieldHash);
+	}
+	
+	static Bytifier createBytifier(ProtocolBuilder builder, boolean generate, boolean fieldHash) {
+		return builder
+				.defineForClass(Sample.class)
+					.setGenerateProtocol(generate)
+					.useFieldHashing(fieldHash)
+					.addConstructorString(Sample::getName)
+					.addConstructorInt(Sample::getI)
+					.addConstructorLong(Sample::getL)
+					.addConstructorDouble(Sample::getD)
+					.addConstructorBool(Sample::isZ)
+					.addFieldShort(Sample::getS, Sample::setS)
+					.addFieldByte(Sample::getB, Sample::setB)
+					.addFieldChar(Sample::getC, Sample::setC)
+					.addFieldFloat(Sample::getF, Sample::setF)
+					.addFieldLong(Sample::getTime, Sample::setTime)
+					.endDefinition()
+				.build();
+	}
+	
+	static Sample createSample() {
+		Sample sample = new Sample("sample", -42, Long.MAX_VALUE, 0.125, true);
+		sample.s = Short.MIN_VALUE;
+		sample.b = -1;
+		sample.c = '\u20AC';
+		sample.f = 2.5f;
+		sample.time = 1234567890123L;
+		return sample;
+	}
+	
+	static void assertSampleEquals(Sample sample, Sample result) {
+		Assertions.assertEquals(sample.name, result.name);
+		Assertions.assertEquals(sample.i, result.i);
+		Assertions.assertEquals(sample.l, result.l);
+		Assertions.assertEquals(sample.d, result.d);
+		Assertions.assertEquals(sample.z, result.z);
+		Assertions.assertEquals(sample.s, result.s);
+		Assertions.assertEquals(sample.b, result.b);
+		Assertions.assertEquals(sample.c, result.c);
+		Assertions.assertEquals(sample.f, result.f);
+		Assertions.assertEquals(sample.time, result.time);
+	}
+	
+}
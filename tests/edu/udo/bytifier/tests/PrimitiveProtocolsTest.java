@@ -1,10 +1,17 @@
 package edu.udo.bytifier.tests;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeStreamData;
+import edu.udo.bytifier.EncodeStreamData;
 import edu.udo.bytifier.ProtocolBuilder;
 
 class PrimitiveProtocolsTest {
@@ -151,4 +158,33 @@ class PrimitiveProtocolsTest {
 		Assertions.assertArrayEquals(arr, resArr);
 	}
 	
-}
\ No newline at end of file
+	@Test
+	void testStrings() throws IOException {
+		String[] arr = {"", "ascii", "M\u00FCller", "\u20AC \u6F22\u5B57", "a somewhat longer string which spans more than one small buffer"};
+		
+		Object[] result = (Object[]) bytifier.decode(bytifier.encode(arr));
+		Assertions.assertArrayEquals(arr, result);
+		
+		byte[] bytes = bytifier.encode(arr);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(new EncodeStreamData(bytifier, 16, out), arr);
+		Assertions.assertArrayEquals(arr, (Object[]) bytifier.decode(out.toByteArray()));
+		
+		result = (Object[]) bytifier.decode(new DecodeStreamData(new ByteArrayInputStream(bytes), 16, true));
+		Assertions.assertArrayEquals(arr, result);
+		result = (Object[]) bytifier.decode(bytifier.encodeToByteBuffer(arr));
+		Assertions.assertArrayEquals(arr, result);
+	}
+	
+	@Test
+	void testLatin1Strings() {
+		Bytifier latin1 = new ProtocolBuilder().setStringEncodingCharset(StandardCharsets.ISO_8859_1).build();
+		String str = "M\u00FCller";
+		byte[] utf8Bytes = bytifier.encode(str);
+		byte[] latin1Bytes = latin1.encode(str);
+		Assertions.assertEquals(utf8Bytes.length - 1, latin1Bytes.length);
+		Assertions.assertEquals(str, latin1.decode(latin1Bytes));
+		Assertions.assertEquals(str, bytifier.decode(utf8Bytes));
+	}
+	
+}
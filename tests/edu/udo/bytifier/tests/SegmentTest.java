@@ -0,0 +1,271 @@
+package edu.udo.bytifier.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.ChunkType;
+import edu.udo.bytifier.ClassProtocol;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.protocols.ArrayListProtocol;
+
+class SegmentTest {
+	
+	/** The position of the root chunk type after the header. */
+	static final int ROOT_POS = 4 + 1 + 4;
+	
+	public static class Item {
+		int id;
+		String name;
+		int[] values;
+	}
+	
+	Bytifier bytifier;
+	ForkJoinPool pool;
+	
+	@BeforeEach
+	void setup() {
+		bytifier = new ProtocolBuilder()
+				.defineViaReflection(Item.class)
+				.defineForClass(ArrayList.class, new ArrayListProtocol())
+				.build();
+		bytifier.setSegmentLength(100);
+		pool = new ForkJoinPool(4);
+	}
+	
+	@AfterEach
+	void shutdown() {
+		pool.shutdownNow();
+	}
+	
+	Item[] createItems(int count) {
+		Item[] items = new Item[count];
+		for (int i = 0; i < count; i++) {
+			items[i] = new Item();
+			items[i].id = i;
+			items[i].name = "item";
+			items[i].values = new int[] {i, -i};
+		}
+		return items;
+	}
+	
+	void assertItems(int count, Object[] decoded) {
+		Assertions.assertEquals(count, decoded.length);
+		for (int i = 0; i < count; i++) {
+			Item item = (Item) decoded[i];
+			Assertions.assertEquals(i, item.id);
+			Assertions.assertEquals("item", item.name);
+			Assertions.assertArrayEquals(new int[] {i, -i}, item.values);
+		}
+	}
+	
+	@Test
+	void testSegmentedArray() {
+		bytifier.setEncodePool(pool);
+		byte[] bytes = bytifier.encode(createItems(1050));
+		Assertions.assertEquals(ChunkType.SEGMENTED.IDX, bytes[ROOT_POS]);
+		
+		Object decoded = bytifier.decode(bytes);
+		Assertions.assertEquals(Item[].class, decoded.getClass());
+		assertItems(1050, (Object[]) decoded);
+	}
+	
+	@Test
+	void testSegmentedCollection() {
+		bytifier.setEncodePool(pool);
+		List<Item> list = new ArrayList<>(List.of(createItems(250)));
+		byte[] bytes = bytifier.encode(list);
+		Assertions.assertEquals(ChunkType.SEGMENTED.IDX, bytes[ROOT_POS]);
+		
+		Object decoded = bytifier.decode(bytes);
+		Assertions.assertEquals(ArrayList.class, decoded.getClass());
+		assertItems(250, ((List<?>) decoded).toArray());
+	}
+	
+	@Test
+	void testParallelEqualsSequential() {
+		Item[] items = createItems(1000);
+		byte[] sequential = bytifier.encode(items);
+		bytifier.setEncodePool(pool);
+		Assertions.assertArrayEquals(sequential, bytifier.encode(items));
+	}
+	
+	@Test
+	void testParallelDecode() throws IOException {
+		byte[] arrayBytes = bytifier.encode(createItems(1050));
+		byte[] listBytes = bytifier.encode(new ArrayList<>(List.of(createItems(250))));
+		bytifier.setDecodePool(pool);
+		
+		assertItems(1050, (Object[]) bytifier.decode(arrayBytes));
+		assertItems(250, ((List<?>) bytifier.decode(listBytes)).toArray());
+		assertItems(1050, (Object[]) bytifier.decode(new ByteArrayInputStream(arrayBytes)));
+	}
+	
+	@Test
+	void testParallelDecodeFromBuffer() {
+		byte[] bytes = bytifier.encode(createItems(1050));
+		bytifier.setDecodePool(pool);
+		
+		assertItems(1050, (Object[]) bytifier.decode(ByteBuffer.wrap(bytes)));
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		assertItems(1050, (Object[]) bytifier.decode(direct));
+	}
+	
+	@Test
+	void testSegmentIndexPrecedesSegments() {
+		byte[] bytes = bytifier.encode(createItems(1050));
+		// chunk type, kind, class index, dimension and element count
+		DecodeData data = new DecodeData(bytes);
+		Assertions.assertEquals(ChunkType.SEGMENTED.IDX, data.readInt1());
+		data.readInt1();
+		data.readClassIndex();
+		Assertions.assertEquals(1, data.readInt1());
+		Assertions.assertEquals(1050, data.readInt4());
+		int segCount = data.readInt4();
+		Assertions.assertEquals(11, segCount);
+		
+		int byteCount = 0;
+		for (int i = 0; i < segCount; i++) {
+			Assertions.assertEquals(i < 10 ? 100 : 50, data.readInt4());
+			byteCount += data.readInt4();
+		}
+		Assertions.assertEquals(byteCount, data.getRemainingByteCount());
+	}
+	
+	@Test
+	void testMisSizedSegmentIsRejected() {
+		byte[] bytes = bytifier.encode(createItems(1050));
+		DecodeData data = new DecodeData(bytes);
+		data.readInt1();
+		data.readInt1();
+		data.readClassIndex();
+		data.readInt1();
+		data.readInt4();
+		data.readInt4();
+		int indexPos = bytes.length - data.getRemainingByteCount();
+		// the first segment claims the first byte of the second segment
+		ByteBuffer index = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		index.putInt(indexPos + 4, index.getInt(indexPos + 4) + 1);
+		index.putInt(indexPos + 12, index.getInt(indexPos + 12) - 1);
+		
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.decode(bytes));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.decode(ByteBuffer.wrap(bytes)));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.decode(new ByteArrayInputStream(bytes)));
+		bytifier.setDecodePool(pool);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.decode(bytes));
+	}
+	
+	@Test
+	void testSharedReferencesAreNotSegmented() {
+		Item[] items = createItems(300);
+		items[250].values = items[10].values;
+		byte[] bytes = bytifier.encode(items);
+		Assertions.assertEquals(ChunkType.GENERIC_ARRAY.IDX, bytes[ROOT_POS]);
+		
+		Item[] decoded = (Item[]) bytifier.decode(bytes);
+		Assertions.assertSame(decoded[10].values, decoded[250].values);
+	}
+	
+	@Test
+	void testSharedReferencesAreFoundEarly() {
+		AtomicInteger writes = new AtomicInteger();
+		Bytifier counting = new ProtocolBuilder()
+				.defineForClass(Item.class, new ClassProtocol() {
+					@Override
+					public void write(Bytifier bytifier, EncodeData data, Object input) {
+						writes.incrementAndGet();
+						Item item = (Item) input;
+						data.writeInt4(item.id);
+						bytifier.writeChunk(data, item.values, false);
+					}
+					@Override
+					public Object create(Bytifier bytifier, DecodeData data) {
+						return new Item();
+					}
+					@Override
+					public void read(Bytifier bytifier, DecodeData data, Object object) {
+						Item item = (Item) object;
+						item.id = data.readInt4();
+						item.values = (int[]) bytifier.readChunk(data);
+					}
+				})
+				.build();
+		Item[] items = createItems(1000);
+		counting.setSegmentLength(100);
+		
+		// an element which occurs twice is found before any segment is encoded
+		Item[] duplicates = items.clone();
+		duplicates[150] = duplicates[10];
+		writes.set(0);
+		byte[] bytes = counting.encode(duplicates);
+		Assertions.assertEquals(duplicates.length - 1, writes.get());
+		counting.setSegmentLength(0);
+		Assertions.assertArrayEquals(counting.encode(duplicates), bytes);
+		
+		// a shared nested object is found right after the second segment
+		items[150].values = items[10].values;
+		counting.setSegmentLength(100);
+		writes.set(0);
+		bytes = counting.encode(items);
+		Assertions.assertEquals(items.length + 200, writes.get());
+		counting.setSegmentLength(0);
+		Assertions.assertArrayEquals(counting.encode(items), bytes);
+	}
+	
+	/** Writes the capacity hint of the list in front of the elements. */
+	static class SizedListProtocol extends ArrayListProtocol {
+		@Override
+		public void write(Bytifier bytifier, EncodeData data, Object object) {
+			data.writeInt4(((ArrayList<?>) object).size() * 2);
+			super.write(bytifier, data, object);
+		}
+		@Override
+		public Object create(Bytifier bytifier, DecodeData data) {
+			return new ArrayList<>(data.readInt4());
+		}
+	}
+	
+	@Test
+	void testCustomCollectionProtocolIsNotSegmented() {
+		Bytifier custom = new ProtocolBuilder()
+				.defineViaReflection(Item.class)
+				.defineForClass(ArrayList.class, new SizedListProtocol())
+				.build();
+		custom.setSegmentLength(100);
+		List<Item> list = new ArrayList<>(List.of(createItems(250)));
+		byte[] bytes = custom.encode(list);
+		Assertions.assertNotEquals(ChunkType.SEGMENTED.IDX, bytes[ROOT_POS]);
+		assertItems(250, ((List<?>) custom.decode(bytes)).toArray());
+	}
+	
+	@Test
+	void testSmallRootIsNotSegmented() {
+		byte[] bytes = bytifier.encode(createItems(100));
+		Assertions.assertEquals(ChunkType.GENERIC_ARRAY.IDX, bytes[ROOT_POS]);
+		assertItems(100, (Object[]) bytifier.decode(bytes));
+	}
+	
+	@Test
+	void testStreams() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(createItems(500), out);
+		Object decoded = bytifier.decode(new ByteArrayInputStream(out.toByteArray()));
+		assertItems(500, (Object[]) decoded);
+	}
+	
+}
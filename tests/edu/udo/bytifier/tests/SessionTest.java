@@ -0,0 +1,124 @@
+package edu.udo.bytifier.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.ClassProtocol;
+import edu.udo.bytifier.DecodeData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.IdentityIntMap;
+import edu.udo.bytifier.ProtocolBuilder;
+import edu.udo.bytifier.tests.data.LinkedClass;
+
+class SessionTest {
+	
+	Bytifier bytifier;
+	
+	@BeforeEach
+	void setup() {
+		bytifier = new ProtocolBuilder()
+				.defineForClass(LinkedClass.class, new ClassProtocol() {
+					@Override
+					public void write(Bytifier bytifier, EncodeData data, Object input) {
+						LinkedClass lc = (LinkedClass) input;
+						// encoding a nested graph must not disturb the outer encoding
+						byte[] nested = bytifier.encode(new int[] {1, 2, 3});
+						data.writeInt4(nested.length);
+						data.writeBytes(nested);
+						bytifier.writeChunk(data, lc.next, false);
+					}
+					@Override
+					public Object create(Bytifier bytifier, DecodeData data) {
+						return new LinkedClass();
+					}
+					@Override
+					public void read(Bytifier bytifier, DecodeData data, Object object) {
+						byte[] nested = new byte[data.readInt4()];
+						data.readBytes(nested);
+						Assertions.assertArrayEquals(new int[] {1, 2, 3}, (int[]) bytifier.decode(nested));
+						((LinkedClass) object).next = (LinkedClass) bytifier.readChunk(data);
+					}
+				})
+				.build();
+	}
+	
+	LinkedClass createChain(int length) {
+		LinkedClass first = new LinkedClass();
+		LinkedClass cur = first;
+		for (int i = 1; i < length; i++) {
+			cur.next = new LinkedClass();
+			cur = cur.next;
+		}
+		cur.next = first;
+		return first;
+	}
+	
+	void assertChain(int length, Object decoded) {
+		LinkedClass first = (LinkedClass) decoded;
+		LinkedClass cur = first;
+		for (int i = 1; i < length; i++) {
+			cur = cur.next;
+			Assertions.assertNotSame(first, cur);
+		}
+		Assertions.assertSame(first, cur.next);
+	}
+	
+	@Test
+	void testRepeatedEncodeIsIdentical() {
+		LinkedClass chain = createChain(300);
+		byte[] first = bytifier.encode(chain);
+		byte[] second = bytifier.encode(chain);
+		Assertions.assertArrayEquals(first, second);
+		assertChain(300, bytifier.decode(first));
+		assertChain(300, bytifier.decode(second));
+	}
+	
+	@Test
+	void testExplicitSessions() {
+		EncodeData encoder = bytifier.createEncodeData();
+		DecodeData decoder = bytifier.createDecodeData();
+		for (int length = 1; length < 500; length += 97) {
+			LinkedClass chain = createChain(length);
+			byte[] bytes = bytifier.encode(encoder, chain);
+			Assertions.assertArrayEquals(bytifier.encode(chain), bytes);
+			assertChain(length, bytifier.decode(decoder, bytes));
+		}
+	}
+	
+	@Test
+	void testLargeGraphDoesNotInflateLaterSessions() {
+		class InspectableEncodeData extends EncodeData {
+			InspectableEncodeData(Bytifier bytifier) {
+				super(bytifier, 1024, true, true);
+			}
+			int capacity() {
+				return refMap.capacity() + byteBuf.length;
+			}
+		}
+		InspectableEncodeData encoder = new InspectableEncodeData(bytifier);
+		DecodeData decoder = bytifier.createDecodeData();
+		bytifier.encode(encoder, createChain(10));
+		int smallCapacity = encoder.capacity();
+		
+		Object[] large = new Object[100_000];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = new int[] {i};
+		}
+		byte[] largeBytes = bytifier.encode(encoder, large);
+		Assertions.assertEquals(large.length, ((Object[]) bytifier.decode(decoder, largeBytes)).length);
+		// resetting for the next graph must only cost as much as a small graph needs
+		byte[] small = bytifier.encode(encoder, createChain(10));
+		Assertions.assertEquals(smallCapacity, encoder.capacity());
+		assertChain(10, bytifier.decode(decoder, small));
+		
+		IdentityIntMap map = new IdentityIntMap();
+		for (int i = 0; i < 100_000; i++) {
+			map.put(new Object(), i);
+		}
+		map.clear();
+		Assertions.assertEquals(new IdentityIntMap().capacity(), map.capacity());
+	}
+	
+}
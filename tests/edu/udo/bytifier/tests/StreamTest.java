@@ -0,0 +1,237 @@
+package edu.udo.bytifier.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.udo.bytifier.Bytifier;
+import edu.udo.bytifier.DecodeStreamData;
+import edu.udo.bytifier.EncodeData;
+import edu.udo.bytifier.EncodeStreamData;
+import edu.udo.bytifier.ProtocolBuilder;
+
+class StreamTest {
+	
+	Bytifier bytifier;
+	Object[] graph;
+	int[] shared;
+	
+	@BeforeEach
+	void setup() {
+		bytifier = new ProtocolBuilder().build();
+		shared = new int[] {-1, -2, -3};
+		graph = new Object[5000];
+		for (int i = 0; i < graph.length; i++) {
+			if (i % 3 == 0) {
+				graph[i] = shared;
+			} else {
+				graph[i] = new int[] {i, i * i};
+			}
+		}
+	}
+	
+	void assertGraph(Object decoded) {
+		Object[] arr = (Object[]) decoded;
+		Assertions.assertEquals(graph.length, arr.length);
+		int[] decodedShared = (int[]) arr[0];
+		Assertions.assertArrayEquals(shared, decodedShared);
+		for (int i = 0; i < graph.length; i++) {
+			if (i % 3 == 0) {
+				Assertions.assertSame(decodedShared, arr[i]);
+			} else {
+				Assertions.assertArrayEquals((int[]) graph[i], (int[]) arr[i]);
+			}
+		}
+	}
+	
+	@Test
+	void testEncodeToOutputStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(graph, out);
+		byte[] streamed = out.toByteArray();
+		byte[] expected = bytifier.encode(graph);
+		Assertions.assertTrue(streamed.length > 8 * 1024);
+		// the reference count in the header is not known when the header is written
+		Assertions.assertEquals(expected.length, streamed.length);
+		Assertions.assertArrayEquals(
+				Arrays.copyOfRange(expected, EncodeData.REF_COUNT_HEADER_POS + 4, expected.length),
+				Arrays.copyOfRange(streamed, EncodeData.REF_COUNT_HEADER_POS + 4, streamed.length));
+		assertGraph(bytifier.decode(streamed));
+	}
+	
+	@Test
+	void testEncodeToChannel() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(graph, Channels.newChannel(out));
+		assertGraph(bytifier.decode(out.toByteArray()));
+	}
+	
+	@Test
+	void testSmallGraphKeepsReferenceCount() throws IOException {
+		int[] small = new int[] {1, 2, 3};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(small, out);
+		Assertions.assertArrayEquals(bytifier.encode(small), out.toByteArray());
+	}
+	
+	@Test
+	void testExceptionsAreUnwrapped() {
+		IOException cause = new IOException("sink failure");
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw cause;
+			}
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				throw cause;
+			}
+		};
+		IOException thrown = Assertions.assertThrows(IOException.class, () -> bytifier.encode(graph, failing));
+		Assertions.assertSame(cause, thrown);
+	}
+	
+	/**<p>
+	 * An InputStream which returns at most a few bytes per read.
+	 */
+	static class TricklingInputStream extends FilterInputStream {
+		TricklingInputStream(byte[] bytes) {
+			super(new ByteArrayInputStream(bytes));
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 5));
+		}
+	}
+	
+	@Test
+	void testStreamDataAsEncodeDataIsRejected() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EncodeData data = new EncodeStreamData(bytifier, out);
+		Assertions.assertFalse(data.isRetainingBytes());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.encode(data, graph));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bytifier.encodeToByteBuffers(data, graph));
+		// nothing is written to the sink before the call fails
+		Assertions.assertEquals(0, out.size());
+		Assertions.assertTrue(bytifier.createEncodeData().isRetainingBytes());
+	}
+	
+	@Test
+	void testDecodeFromInputStream() throws IOException {
+		byte[] bytes = bytifier.encode(graph);
+		assertGraph(bytifier.decode(new ByteArrayInputStream(bytes)));
+		assertGraph(bytifier.decode(new TricklingInputStream(bytes)));
+		assertGraph(bytifier.decode(new DecodeStreamData(new TricklingInputStream(bytes), 16, true)));
+	}
+	
+	@Test
+	void testDecodeFromChannel() throws IOException {
+		byte[] bytes = bytifier.encode(graph);
+		assertGraph(bytifier.decode(Channels.newChannel(new TricklingInputStream(bytes))));
+	}
+	
+	@Test
+	void testDecodeMixedContent() throws IOException {
+		double[] doubles = new double[1000];
+		for (int i = 0; i < doubles.length; i++) {
+			doubles[i] = i / 7.0;
+		}
+		byte[] manyBytes = new byte[100];
+		Arrays.fill(manyBytes, (byte) 42);
+		boolean[] bools = new boolean[33];
+		bools[7] = true;
+		Object[] mixed = {"text", doubles, manyBytes, bools, "more text"};
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(mixed, out);
+		DecodeStreamData data = new DecodeStreamData(new TricklingInputStream(out.toByteArray()), 16, true);
+		Object[] decoded = (Object[]) bytifier.decode(data);
+		Assertions.assertEquals("text", decoded[0]);
+		Assertions.assertArrayEquals(doubles, (double[]) decoded[1]);
+		Assertions.assertArrayEquals(manyBytes, (byte[]) decoded[2]);
+		Assertions.assertArrayEquals(bools, (boolean[]) decoded[3]);
+		Assertions.assertEquals("more text", decoded[4]);
+		Assertions.assertFalse(data.hasMoreData());
+	}
+	
+	@Test
+	void testTruncatedInput() {
+		byte[] bytes = bytifier.encode(graph);
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+		Assertions.assertThrows(EOFException.class, () -> bytifier.decode(new ByteArrayInputStream(truncated)));
+		Assertions.assertThrows(EOFException.class, () -> bytifier.decode(new ByteArrayInputStream(new byte[3])));
+	}
+	
+	@Test
+	void testConsecutiveGraphsOnOneStream() throws IOException {
+		int[] second = {4, 5, 6};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bytifier.encode(graph, out);
+		bytifier.encode(second, out);
+		byte[] bytes = out.toByteArray();
+		
+		// one DecodeStreamData keeps the bytes it has read ahead for the next graph
+		DecodeStreamData data = new DecodeStreamData(new TricklingInputStream(bytes), 64, true);
+		assertGraph(bytifier.decode(data));
+		data.readNextHeader();
+		Assertions.assertArrayEquals(second, (int[]) bytifier.decode(data));
+		Assertions.assertFalse(data.hasMoreData());
+		
+		// decode(InputStream) never reads past the end of a graph
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+		assertGraph(bytifier.decode(in));
+		Assertions.assertArrayEquals(second, (int[]) bytifier.decode(in));
+		Assertions.assertEquals(0, in.available());
+	}
+	
+	@Test
+	void testResetToByteArray() throws IOException {
+		byte[] bytes = bytifier.encode(graph);
+		byte[] streamed = bytifier.encode(new int[] {4, 5, 6});
+		ByteArrayInputStream in = new ByteArrayInputStream(streamed);
+		DecodeStreamData data = new DecodeStreamData(in, 64, false);
+		
+		// the array is decoded instead of the stream which is never read again
+		assertGraph(bytifier.decode(data, bytes));
+		Assertions.assertFalse(data.hasMoreData());
+		Assertions.assertEquals(streamed.length, in.available());
+		
+		// a truncated array does not fall back to the stream and is not modified
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+		byte[] copy = truncated.clone();
+		Assertions.assertThrows(RuntimeException.class, () -> bytifier.decode(data, truncated));
+		Assertions.assertArrayEquals(copy, truncated);
+		Assertions.assertEquals(streamed.length, in.available());
+	}
+	
+	@Test
+	void testOpenPipeDoesNotBlock() throws IOException {
+		PipedInputStream in = new PipedInputStream(64 * 1024);
+		try (PipedOutputStream out = new PipedOutputStream(in)) {
+			bytifier.encode(new int[] {1, 2, 3}, out);
+			bytifier.encode(graph, out);
+			// the pipe stays open, so any read past the written bytes would block forever
+			Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				Assertions.assertArrayEquals(new int[] {1, 2, 3}, (int[]) bytifier.decode(in));
+				assertGraph(bytifier.decode(in));
+				
+				bytifier.encode(graph, out);
+				DecodeStreamData data = new DecodeStreamData(in);
+				assertGraph(bytifier.decode(data));
+			});
+		}
+	}
+	
+}